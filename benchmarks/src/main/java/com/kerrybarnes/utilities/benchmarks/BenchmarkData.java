@@ -0,0 +1,58 @@
+package com.kerrybarnes.utilities.benchmarks;
+
+import com.kerrybarnes.utilities.UserProperty;
+import com.kerrybarnes.utilities.UserPropertyCodec;
+import com.kerrybarnes.utilities.UserPropertyFactory;
+import com.kerrybarnes.utilities.json.JsonUserPropertyCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Generates the property stores used by the benchmarks, an even mix of
+ * Integer, Double and String properties spread over 100 key prefixes.
+ */
+public final class BenchmarkData {
+    private BenchmarkData() {
+    }
+
+    public static String key(final int index) {
+        return String.format("bench.group%02d.key%d", index % 100, index);
+    }
+
+    public static Map<String, UserProperty> properties(final int size) {
+        final Map<String, UserProperty> properties = new TreeMap<>();
+        for (int i = 0; i < size; i++) {
+            final String key = key(i);
+            switch (i % 3) {
+                case 0:
+                    properties.put(key, UserPropertyFactory.createInt(key, i));
+                    break;
+                case 1:
+                    properties.put(key, UserPropertyFactory.createDouble(key, i + 0.5));
+                    break;
+                default:
+                    properties.put(key, UserPropertyFactory.createString(key, "value-" + i));
+                    break;
+            }
+        }
+        return properties;
+    }
+
+    public static byte[] encode(final int size) {
+        return encode(new JsonUserPropertyCodec(), properties(size));
+    }
+
+    public static byte[] encode(final UserPropertyCodec codec, final Map<String, UserProperty> properties) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            codec.write(out, properties);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,94 @@
+package com.kerrybarnes.utilities.benchmarks;
+
+import com.kerrybarnes.utilities.UserProperty;
+import com.kerrybarnes.utilities.UserPropertyCodec;
+import com.kerrybarnes.utilities.binary.BinaryUserPropertyCodec;
+import com.kerrybarnes.utilities.json.JsonUserPropertyCodec;
+import com.kerrybarnes.utilities.json.UserPropertyDeSerializer;
+import com.kerrybarnes.utilities.json.UserPropertySerializer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link UserPropertySerializer} and {@link UserPropertyDeSerializer}
+ * through the streaming {@link JsonUserPropertyCodec}, compared with the data
+ * binding {@link TreeUserPropertyCodec} it replaced, the compact JSON and the
+ * {@link BinaryUserPropertyCodec}.  The size of each encoding is reported as the
+ * <code>encodedBytes</code> secondary result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CodecBenchmark {
+    @Param({"10", "10000", "100000"})
+    public int size;
+
+    @Param({"streaming", "tree", "compact", "binary"})
+    public String codecType;
+
+    private UserPropertyCodec codec;
+    private Map<String, UserProperty> properties;
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        switch (codecType) {
+            case "tree":
+                codec = new TreeUserPropertyCodec();
+                break;
+            case "compact":
+                codec = JsonUserPropertyCodec.compact();
+                break;
+            case "binary":
+                codec = new BinaryUserPropertyCodec();
+                break;
+            default:
+                codec = new JsonUserPropertyCodec();
+                break;
+        }
+        properties = BenchmarkData.properties(size);
+        data = BenchmarkData.encode(codec, properties);
+    }
+
+    /**
+     * The size of the encoding, reported alongside the timings rather than printed
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class EncodedSize {
+        public long encodedBytes;
+    }
+
+    @Benchmark
+    public int serialize(final EncodedSize size) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+        codec.write(out, properties);
+        size.encodedBytes = out.size();
+        return out.size();
+    }
+
+    @Benchmark
+    public Map<String, UserProperty> deserialize(final EncodedSize size) throws IOException {
+        size.encodedBytes = data.length;
+        return codec.read(new ByteArrayInputStream(data));
+    }
+}
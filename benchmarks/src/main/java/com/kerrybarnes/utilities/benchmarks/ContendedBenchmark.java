@@ -0,0 +1,75 @@
+package com.kerrybarnes.utilities.benchmarks;
+
+import com.kerrybarnes.utilities.UserProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Readers and writers sharing a concurrent instance, with synchronous
+ * persistence and with write behind
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContendedBenchmark {
+    @Param({"1000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean writeBehind;
+
+    private UserProperties props;
+
+    @Setup
+    public void setup() {
+        final UserProperties.Builder builder = UserProperties.builder()
+                .persistence(new InMemoryPersistence(BenchmarkData.encode(size)))
+                .concurrent(true);
+        if (writeBehind) {
+            builder.writeBehind(50, 500, TimeUnit.MILLISECONDS);
+        }
+        props = builder.build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        props.shutdown();
+    }
+
+    private String intKey() {
+        final int index = ThreadLocalRandom.current().nextInt(size / 3) * 3;
+        return BenchmarkData.key(index);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public int reader() {
+        return props.getIntProperty(intKey());
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public int writer() {
+        return props.setIntProperty(intKey(), ThreadLocalRandom.current().nextInt());
+    }
+}
@@ -0,0 +1,66 @@
+package com.kerrybarnes.utilities.benchmarks;
+
+import com.kerrybarnes.utilities.UserProperties;
+import com.kerrybarnes.utilities.UserPropertyCounter;
+import com.kerrybarnes.utilities.UserPropertyKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threads incrementing one shared counter property, atomically through a {@link UserPropertyKey} and striped
+ * through a {@link UserPropertyCounter}.  Run with <code>-t 1</code> and <code>-t</code> the number of cores to
+ * compare how each scales, both use write behind so the writes are coalesced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class CounterBenchmark {
+    @Param({"1000"})
+    public int size;
+
+    private UserProperties props;
+    private UserPropertyKey.OfLong key;
+    private UserPropertyCounter.OfLong counter;
+
+    @Setup
+    public void setup() {
+        props = UserProperties.builder()
+                .persistence(new InMemoryPersistence(BenchmarkData.encode(size)))
+                .writeBehind(50, 500, TimeUnit.MILLISECONDS)
+                .build();
+        key = props.longKey("stats.atomic", 0L);
+        counter = props.longCounter("stats.striped");
+    }
+
+    @TearDown
+    public void tearDown() {
+        props.shutdown();
+    }
+
+    @Benchmark
+    public long atomicKey() {
+        return key.incrementAndGet();
+    }
+
+    @Benchmark
+    public void stripedCounter() {
+        counter.increment();
+    }
+}
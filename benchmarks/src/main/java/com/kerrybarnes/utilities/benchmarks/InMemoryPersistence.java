@@ -0,0 +1,49 @@
+package com.kerrybarnes.utilities.benchmarks;
+
+import com.kerrybarnes.utilities.UserPropertyPersistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Keeps the persisted properties in memory so the benchmarks measure the
+ * properties and codec rather than the disk.
+ */
+public class InMemoryPersistence implements UserPropertyPersistence {
+    private byte[] data;
+    private ByteArrayOutputStream baos;
+
+    public InMemoryPersistence() {
+        this(null);
+    }
+
+    public InMemoryPersistence(final byte[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(getBytes());
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        data = null;
+        baos = new ByteArrayOutputStream();
+        return baos;
+    }
+
+    @Override
+    public boolean exists() {
+        return data != null || baos != null;
+    }
+
+    public byte[] getBytes() {
+        if (data == null && baos != null) {
+            data = baos.toByteArray();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,73 @@
+package com.kerrybarnes.utilities.benchmarks;
+
+import com.kerrybarnes.utilities.UserProperties;
+import com.kerrybarnes.utilities.UserPropertyKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads of the same 50 Integer properties, as a render loop would make them, by name and through
+ * {@link UserPropertyKey} handles
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyBenchmark {
+    private final static int KEYS = 50;
+
+    @Param({"10000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean concurrent;
+
+    private UserProperties props;
+    private String[] names;
+    private UserPropertyKey.OfInt[] keys;
+
+    @Setup
+    public void setup() {
+        props = UserProperties.builder()
+                .persistence(new InMemoryPersistence(BenchmarkData.encode(size)))
+                .concurrent(concurrent)
+                .build();
+        names = new String[KEYS];
+        keys = new UserPropertyKey.OfInt[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            names[i] = BenchmarkData.key(i * 3);
+            keys[i] = props.intKey(names[i], 0);
+        }
+    }
+
+    @Benchmark
+    public int byName() {
+        int sum = 0;
+        for (String name : names) {
+            sum += props.getIntProperty(name);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int byKey() {
+        int sum = 0;
+        for (UserPropertyKey.OfInt key : keys) {
+            sum += key.get();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,58 @@
+package com.kerrybarnes.utilities.benchmarks;
+
+import com.kerrybarnes.utilities.UserProperties;
+import com.kerrybarnes.utilities.UserPropertyCodec;
+import com.kerrybarnes.utilities.binary.BinaryUserPropertyCodec;
+import com.kerrybarnes.utilities.json.JsonUserPropertyCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold construction of a {@link UserProperties}, dominated by <code>load()</code>, eagerly
+ * and lazily from the indented JSON and the {@link BinaryUserPropertyCodec}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LoadBenchmark {
+    @Param({"10", "10000", "1000000"})
+    public int size;
+
+    @Param({"json", "binary"})
+    public String codecType;
+
+    @Param({"false", "true"})
+    public boolean lazy;
+
+    private UserPropertyCodec codec;
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        codec = "binary".equals(codecType) ? new BinaryUserPropertyCodec() : new JsonUserPropertyCodec();
+        data = BenchmarkData.encode(codec, BenchmarkData.properties(size));
+    }
+
+    @Benchmark
+    public UserProperties load() {
+        return UserProperties.builder()
+                .persistence(new InMemoryPersistence(data))
+                .codec(codec)
+                .lazy(lazy)
+                .build();
+    }
+}
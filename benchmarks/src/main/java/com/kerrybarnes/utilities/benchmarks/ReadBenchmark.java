@@ -0,0 +1,57 @@
+package com.kerrybarnes.utilities.benchmarks;
+
+import com.kerrybarnes.utilities.UserProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot reads of existing properties
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadBenchmark {
+    @Param({"10000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean concurrent;
+
+    private UserProperties props;
+    private String intKey;
+    private String stringKey;
+
+    @Setup
+    public void setup() {
+        props = UserProperties.builder()
+                .persistence(new InMemoryPersistence(BenchmarkData.encode(size)))
+                .concurrent(concurrent)
+                .build();
+        intKey = BenchmarkData.key(size / 2 - (size / 2) % 3);
+        stringKey = BenchmarkData.key(size / 2 - (size / 2) % 3 + 2);
+    }
+
+    @Benchmark
+    public int getIntProperty() {
+        return props.getIntProperty(intKey);
+    }
+
+    @Benchmark
+    public String getProperty() {
+        return props.getProperty(stringKey);
+    }
+}
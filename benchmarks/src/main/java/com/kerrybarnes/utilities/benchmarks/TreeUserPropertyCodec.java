@@ -0,0 +1,76 @@
+package com.kerrybarnes.utilities.benchmarks;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.kerrybarnes.utilities.UserProperty;
+import com.kerrybarnes.utilities.UserPropertyCodec;
+import com.kerrybarnes.utilities.UserPropertyFactory;
+import com.kerrybarnes.utilities.json.UserPropertySerializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The data binding codec with the {@link JsonNode} tree deserializer the library used before
+ * the streaming parser, kept as the baseline for {@link CodecBenchmark}
+ */
+public class TreeUserPropertyCodec implements UserPropertyCodec {
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+
+    public TreeUserPropertyCodec() {
+        final ObjectMapper mapper = new ObjectMapper();
+        final SimpleModule module = new SimpleModule("TreeUserPropertyModule");
+        module.addDeserializer(UserProperty.class, new TreeDeSerializer());
+        module.addSerializer(UserProperty.class, new UserPropertySerializer());
+        mapper.registerModule(module);
+        this.reader = mapper.readerFor(new TypeReference<TreeMap<String, UserProperty>>() {})
+                .without(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        this.writer = mapper.writerFor(new TypeReference<Map<String, UserProperty>>() {})
+                .with(SerializationFeature.INDENT_OUTPUT)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public Map<String, UserProperty> read(final InputStream in) throws IOException {
+        return reader.readValue(in);
+    }
+
+    @Override
+    public void write(final OutputStream out, final Map<String, UserProperty> properties) throws IOException {
+        writer.writeValue(out, properties);
+    }
+
+    private static class TreeDeSerializer extends JsonDeserializer<UserProperty> {
+        @Override
+        public UserProperty deserialize(JsonParser jp, DeserializationContext ctxt) throws IOException {
+            final JsonNode node = jp.getCodec().readTree(jp);
+            final String key = node.get("key").asText();
+            final String type = node.get("type").asText();
+            final String value = node.get("value").asText();
+
+            switch (type) {
+                case "Double":
+                    return UserPropertyFactory.createDouble(key, Double.parseDouble(value));
+                case "Integer":
+                    return UserPropertyFactory.createInt(key, Integer.parseInt(value));
+                case "String":
+                    return UserPropertyFactory.createString(key, value);
+                default:
+                    throw new RuntimeException("Found Unexpected Data Type: " + type);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.kerrybarnes.utilities.benchmarks;
+
+import com.kerrybarnes.utilities.UserProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Setting a property with synchronous persistence, the cost grows with the size of the store
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int size;
+
+    private UserProperties props;
+    private String stringKey;
+    private int counter;
+
+    @Setup
+    public void setup() {
+        props = UserProperties.builder()
+                .persistence(new InMemoryPersistence(BenchmarkData.encode(size)))
+                .build();
+        stringKey = BenchmarkData.key(2);
+    }
+
+    @Benchmark
+    public String setProperty() {
+        return props.setProperty(stringKey, (counter++ & 1) == 0 ? "even" : "odd");
+    }
+}
@@ -0,0 +1,174 @@
+package com.kerrybarnes.utilities.fx;
+
+import com.kerrybarnes.utilities.UserProperties;
+import com.kerrybarnes.utilities.UserPropertiesChange;
+import com.kerrybarnes.utilities.UserPropertiesEvents;
+import com.kerrybarnes.utilities.UserProperty;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.Property;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleFloatProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleLongProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Connects a {@link UserProperties} to JavaFX.  The properties themselves do not depend on JavaFX, so they are
+ * usable on a headless server, this class is for the applications that display them.
+ *
+ * {@link #property(UserProperties, String, Class)} gives the JavaFX {@link Property} of a {@link UserProperty},
+ * which mirrors it in both directions so it can be bound to the properties of controls.  A change of the mirror is
+ * copied to the user property straight away.  A change of the user property is copied to the mirror on the JavaFX
+ * application thread, directly when it is made there, otherwise through {@link Platform#runLater(Runnable)}, so a
+ * refresh or an asynchronous write never changes a control from another thread.  The changes handed over are
+ * coalesced, a property has at most one pending and it applies the latest value.
+ *
+ * Changes are delivered to the JavaFX application thread through {@link UserPropertiesEvents}, which coalesces
+ * them, so however many properties change, such as when another process saves the properties, the application
+ * thread is handed one {@link Platform#runLater(Runnable)} per subscription at a time.
+ */
+public final class UserPropertiesFx {
+    /**
+     * The mirror of each user property, which holds the mirror through its listener.  The mirror only holds the
+     * user property weakly, so both are collected once the user properties are.
+     */
+    private static final Map<UserProperty<?>, Property<?>> mirrors = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private UserPropertiesFx() {
+    }
+
+    /**
+     * An executor running each task on the JavaFX application thread, the toolkit must have been started
+     *
+     * @return an {@link Executor} calling {@link Platform#runLater(Runnable)}
+     */
+    public static Executor applicationThread() {
+        return Platform::runLater;
+    }
+
+    /**
+     * Subscribes to the changes of the properties whose names start with a prefix, notified on the JavaFX
+     * application thread.  The properties should be changed on the application thread too, unless they are
+     * concurrent, see {@link UserProperties.Builder#concurrent(boolean)}.
+     *
+     * @param properties the properties to subscribe to
+     * @param prefix the start of the property names, for example <code>ui.window.</code>, empty for every property
+     * @param subscriber is notified of the changed properties
+     * @return the {@link UserPropertiesEvents.Subscription}
+     */
+    public static UserPropertiesEvents.Subscription subscribe(final UserProperties properties, final String prefix,
+                                                              final Consumer<UserPropertiesChange> subscriber) {
+        return properties.events().subscribe(prefix, applicationThread(), subscriber);
+    }
+
+    /**
+     * The JavaFX {@link Property} mirroring a user property, the same one is returned for every call.  Numeric
+     * and Boolean properties are mirrored by the primitive JavaFX properties, so an Integer property is an
+     * {@link javafx.beans.property.IntegerProperty}, a <code>Property&lt;Number&gt;</code>.  The user property is
+     * never evicted by a cache, see {@link UserProperties#property(String, Class)}.
+     *
+     * @param properties the properties holding the user property
+     * @param key the property name, or key
+     * @param clazz the {@link Class} of the value
+     * @param <T> the type of the value
+     * @return the {@link Property} or <code>null</code> if the user property does not exist
+     * @throws ClassCastException if the user property is not of the given class
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Property<T> property(final UserProperties properties, final String key, final Class<T> clazz) {
+        final UserProperty<Object> property = properties.property(key, Object.class);
+        if (property == null) {
+            return null;
+        }
+        final Object value = property.getValue();
+        if (value != null && !clazz.isInstance(value)) {
+            throw new ClassCastException(String.format("User Property %s is a %s not a %s", key,
+                    value.getClass().getSimpleName(), clazz.getSimpleName()));
+        }
+        synchronized (mirrors) {
+            return (Property<T>) mirrors.computeIfAbsent(property, UserPropertiesFx::mirror);
+        }
+    }
+
+    /**
+     * Creates the JavaFX property mirroring a user property, a set of either is copied to the other and stops
+     * there as setting the value it already has is not a change.  The mirror is only set on the application
+     * thread, a change made on another thread schedules one update unless one is already pending.
+     */
+    @SuppressWarnings("unchecked")
+    private static Property<?> mirror(final UserProperty<?> property) {
+        final String key = property.getName();
+        final Property<Object> mirror;
+        if (property instanceof UserProperty.OfInt) {
+            mirror = (Property) new SimpleIntegerProperty(null, key, ((UserProperty.OfInt) property).get());
+        } else if (property instanceof UserProperty.OfDouble) {
+            mirror = (Property) new SimpleDoubleProperty(null, key, ((UserProperty.OfDouble) property).get());
+        } else if (property instanceof UserProperty.OfLong) {
+            mirror = (Property) new SimpleLongProperty(null, key, ((UserProperty.OfLong) property).get());
+        } else if (property instanceof UserProperty.OfFloat) {
+            mirror = (Property) new SimpleFloatProperty(null, key, ((UserProperty.OfFloat) property).get());
+        } else if (property instanceof UserProperty.OfBoolean) {
+            mirror = (Property) new SimpleBooleanProperty(null, key, ((UserProperty.OfBoolean) property).get());
+        } else if (property.getValue() instanceof String) {
+            mirror = (Property) new SimpleStringProperty(null, key, (String) property.getValue());
+        } else {
+            mirror = new SimpleObjectProperty<>(null, key, property.getValue());
+        }
+
+        final WeakReference<UserProperty<Object>> source = new WeakReference<>((UserProperty<Object>) property);
+        mirror.addListener((InvalidationListener) observable -> {
+            // reading the value revalidates the mirror so it reports the next change
+            final Object value = mirror.getValue();
+            final UserProperty<Object> target = source.get();
+            if (target != null) {
+                target.setValue(value);
+            }
+        });
+        final AtomicBoolean pending = new AtomicBoolean(false);
+        property.addListener(changed -> {
+            if (Platform.isFxApplicationThread()) {
+                mirror.setValue(changed.getValue());
+            } else if (pending.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    // cleared before reading, a later change schedules another update
+                    pending.set(false);
+                    mirror.setValue(changed.getValue());
+                });
+            }
+        });
+        return mirror;
+    }
+
+    /**
+     * Binds a JavaFX property, of a control for example, to a user property in both directions, so the control
+     * shows the persisted value and changes made with it are persisted.  The target is bound to the
+     * {@link #property(UserProperties, String, Class) mirror} of the user property.
+     *
+     * @param properties the properties holding the user property
+     * @param key the property name, or key
+     * @param clazz the {@link Class} of the value
+     * @param target the property to bind
+     * @param <T> the type of the value
+     * @throws IllegalArgumentException if the user property does not exist
+     * @throws ClassCastException if the user property is not of the given class
+     */
+    public static <T> void bindBidirectional(final UserProperties properties, final String key, final Class<T> clazz,
+                                             final Property<T> target) {
+        final Property<T> property = property(properties, key, clazz);
+        if (property == null) {
+            throw new IllegalArgumentException(String.format("User Property %s does not exist", key));
+        }
+        target.bindBidirectional(property);
+    }
+}
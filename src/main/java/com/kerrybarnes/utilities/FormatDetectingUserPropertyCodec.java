@@ -0,0 +1,138 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.binary.BinaryUserPropertyCodec;
+import com.kerrybarnes.utilities.json.JsonUserPropertyCodec;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the properties with a single {@link UserPropertyCodec} but reads whichever of the known formats the
+ * persisted copy is in, so switching codecs does not lose the existing properties.  The format is chosen from
+ * the first bytes of the stream, see {@link UserPropertyCodec#recognizes(byte[], int)}, trying the write codec
+ * before the others.  When a read needs one of the other codecs {@link #isMigrationRequired()} is set and
+ * {@link UserProperties} rewrites the properties in the current format once they are loaded.
+ */
+public class FormatDetectingUserPropertyCodec implements IndexedUserPropertyCodec {
+    private static Logger log = LogManager.getLogger(FormatDetectingUserPropertyCodec.class);
+
+    static final int HEADER_LENGTH = 16;
+
+    private final UserPropertyCodec codec;
+    private final List<UserPropertyCodec> readers;
+    private volatile boolean migrationRequired = false;
+
+    /**
+     * Creates a codec that writes with the supplied codec and also reads the
+     * {@link JsonUserPropertyCodec} and {@link BinaryUserPropertyCodec} formats
+     *
+     * @param codec the {@link UserPropertyCodec} used to write the properties
+     */
+    public FormatDetectingUserPropertyCodec(final UserPropertyCodec codec) {
+        this(codec, new JsonUserPropertyCodec(), new BinaryUserPropertyCodec());
+    }
+
+    /**
+     * @param codec the {@link UserPropertyCodec} used to write the properties
+     * @param readers the other {@link UserPropertyCodec}s able to read a persisted copy, in the
+     *                order they are tried
+     */
+    public FormatDetectingUserPropertyCodec(final UserPropertyCodec codec, final UserPropertyCodec... readers) {
+        this.codec = codec;
+        this.readers = Collections.unmodifiableList(Arrays.asList(readers));
+    }
+
+    /**
+     * @return the {@link UserPropertyCodec} used to write the properties
+     */
+    public UserPropertyCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return <code>true</code> once any read has found the properties in a format other
+     *         than the one they are written in
+     */
+    public boolean isMigrationRequired() {
+        return migrationRequired;
+    }
+
+    @Override
+    public Map<String, UserProperty> read(final InputStream in) throws IOException {
+        final InputStream source = in.markSupported() ? in : new BufferedInputStream(in);
+        final byte[] header = new byte[HEADER_LENGTH];
+        source.mark(HEADER_LENGTH);
+        int length = 0;
+        for (int count; length < HEADER_LENGTH && (count = source.read(header, length, HEADER_LENGTH - length)) > 0; ) {
+            length += count;
+        }
+        source.reset();
+
+        return select(header, length).read(source);
+    }
+
+    /**
+     * Indexes the data with the codec for its format, see {@link IndexedUserPropertyCodec}
+     *
+     * @param data the complete persisted copy of the properties
+     * @return the {@link UserPropertiesIndex}, or <code>null</code> if the codec for the
+     *         format cannot index it
+     * @throws IOException if the format is not recognized or the data is malformed
+     */
+    @Override
+    public UserPropertiesIndex index(final byte[] data) throws IOException {
+        final UserPropertyCodec selected = select(data, Math.min(HEADER_LENGTH, data.length));
+        return selected instanceof IndexedUserPropertyCodec
+                ? ((IndexedUserPropertyCodec) selected).index(data)
+                : null;
+    }
+
+    /**
+     * Picks the codec for a header, trying the write codec first
+     */
+    private UserPropertyCodec select(final byte[] header, final int length) throws IOException {
+        if (codec.recognizes(header, length)) {
+            return codec;
+        }
+
+        for (UserPropertyCodec reader : readers) {
+            if (reader.recognizes(header, length)) {
+                if (!migrationRequired) {
+                    log.info(String.format("Reading User Properties with %s, they will be rewritten with %s",
+                            reader.getClass().getSimpleName(), codec.getClass().getSimpleName()));
+                }
+                migrationRequired = true;
+                return reader;
+            }
+        }
+
+        throw new IOException(String.format("Unrecognized User Properties format, %d byte header: %s",
+                length, Arrays.toString(Arrays.copyOf(header, length))));
+    }
+
+    @Override
+    public void write(final OutputStream out, final Map<String, UserProperty> properties) throws IOException {
+        codec.write(out, properties);
+    }
+
+    @Override
+    public boolean recognizes(final byte[] header, final int length) {
+        if (codec.recognizes(header, length)) {
+            return true;
+        }
+        for (UserPropertyCodec reader : readers) {
+            if (reader.recognizes(header, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
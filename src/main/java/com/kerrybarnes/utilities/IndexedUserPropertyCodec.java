@@ -0,0 +1,19 @@
+package com.kerrybarnes.utilities;
+
+import java.io.IOException;
+
+/**
+ * A {@link UserPropertyCodec} able to index a persisted copy of the properties without decoding them,
+ * used by a lazy {@link UserProperties}, see {@link UserProperties.Builder#lazy(boolean)}
+ */
+public interface IndexedUserPropertyCodec extends UserPropertyCodec {
+    /**
+     * Index the properties in the supplied data
+     *
+     * @param data the complete persisted copy of the properties
+     * @return the {@link UserPropertiesIndex}, or <code>null</code> if this data cannot be indexed
+     *         and must be read in full
+     * @throws IOException if the data is malformed
+     */
+    UserPropertiesIndex index(byte[] data) throws IOException;
+}
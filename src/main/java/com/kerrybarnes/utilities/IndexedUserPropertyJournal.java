@@ -0,0 +1,19 @@
+package com.kerrybarnes.utilities;
+
+import java.io.IOException;
+
+/**
+ * A {@link UserPropertyJournal} able to index the persisted properties without decoding them,
+ * used by a lazy {@link UserProperties}, see {@link UserProperties.Builder#lazy(boolean)}
+ */
+public interface IndexedUserPropertyJournal extends UserPropertyJournal {
+    /**
+     * Index the persisted properties, called instead of {@link #replay(UserPropertyCodec)}
+     *
+     * @param codec the {@link UserPropertyCodec} used to decode the properties
+     * @return the {@link UserPropertiesIndex}, or <code>null</code> if the properties cannot be
+     *         indexed and must be replayed in full
+     * @throws IOException if an I/O error occurs
+     */
+    UserPropertiesIndex index(UserPropertyCodec codec) throws IOException;
+}
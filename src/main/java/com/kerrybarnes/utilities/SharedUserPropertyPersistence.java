@@ -0,0 +1,30 @@
+package com.kerrybarnes.utilities;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A {@link UserPropertyPersistence} that several processes may use at the same time.  {@link UserProperties}
+ * holds the {@link #lock()} while it reads the persisted copy, merges it and writes it back, so no process
+ * overwrites the changes of another, and compares the {@link #stamp()} with the one it last saw to find out,
+ * cheaply, whether another process has changed the persisted copy.
+ */
+public interface SharedUserPropertyPersistence extends UserPropertyPersistence {
+    /**
+     * Takes an exclusive lock on the persisted copy, waiting until no other process or
+     * instance holds it
+     *
+     * @return closing it releases the lock
+     * @throws IOException if an I/O error occurs
+     */
+    Closeable lock() throws IOException;
+
+    /**
+     * A value that changes whenever the persisted copy is written, it is read often so it
+     * should be cheap and not require the whole copy to be read
+     *
+     * @return the current stamp, compared only for equality
+     * @throws IOException if an I/O error occurs
+     */
+    long stamp() throws IOException;
+}
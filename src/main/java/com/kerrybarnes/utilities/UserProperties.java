@@ -1,100 +1,229 @@
 package com.kerrybarnes.utilities;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.JsonSerializer;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.databind.module.SimpleModule;
-import com.kerrybarnes.utilities.json.UserPropertyDeSerializer;
-import com.kerrybarnes.utilities.json.UserPropertySerializer;
+import com.kerrybarnes.utilities.json.JsonUserPropertyCodec;
 import com.kerrybarnes.utilities.persistence.UserPropertiesFileBasedPersistence;
-import javafx.beans.property.Property;
-import javafx.beans.property.SimpleObjectProperty;
-import javafx.beans.value.ChangeListener;
-import javafx.beans.value.ObservableValue;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * Maintains a {@link Map} of properties similar to the original {@link java.util.Properties} class.  The differences
- * in this implementation is that the values are automatically persisted when modified, setters and accessors are available
- * for String, Integer, and Double values, and the values are stored as {@link Property} objects so they can be bound
- * to JavaFX properties.
+ * in this implementation is that the values are automatically persisted when modified, setters and accessors are
+ * available for String, Integer, Long, Double, Float, Boolean and binary values, and the values are stored as
+ * {@link UserProperty} objects that can be observed, or bound to JavaFX properties with the separate
+ * <code>utilities-fx</code> module.
  *
- * This is an initial release and there are already things I am not find of.  In my next iteration I believe this
- * will be instantiated with a Builder to customize the persistence file name and location.  Plus I htink I want to take
- * the persistence into a background thread, currently this is all synchronous. I should probably go ahead and add Long
- * and Float types as well.
+ * The shared instance returned by {@link #getInstance()} is configured from System properties, for example
+ * <code>-Duser.props.persistence=${Your ClassName}</code> names the {@link UserPropertyPersistence} to use.
+ * Independent instances are created with {@link #builder()}, whose methods describe each option: the
+ * {@link UserPropertyCodec}, write behind, concurrency, lazy loading, a cache, read only defaults, metrics and
+ * sharing the persisted copy between processes.
  *
- * In the meantime if you want to customize the persistence you will need to create a class implementing the
- * {@link UserPropertyPersistence} interface and then specify it as a Systems property (see why I am not fond of this
- * yet?) <code>-Duser.props.persistence=${Your ClassName}</code>
+ * Only real changes are persisted, setting a property to the value it already has does nothing.  Related changes
+ * should be made through {@link #batch(Batch)}, which persists them once, and {@link #async()} gives setters that do
+ * not wait for the disk.  The names are kept sorted, so {@link #propertyNames(String)} and {@link #subtree(String)}
+ * address a branch of dotted names, {@link #snapshot()} gives an immutable copy and {@link #events()} coalesced
+ * change notifications.  Keys used in hot loops can be given a {@link UserPropertyKey} handle, and counters updated
+ * by many threads a {@link UserPropertyCounter}.
  */
 public class UserProperties {
     private static Logger log = LogManager.getLogger(UserProperties.class);
 
     public final static String PERSISTENCE_KEY = "user.props.persistence";
     public final static String DEFAULT_PERSISTENCE_CLASS = UserPropertiesFileBasedPersistence.class.getName();
+    public final static String WRITE_BEHIND_DEBOUNCE_KEY = "user.props.write.behind.debounce";
+    public final static String WRITE_BEHIND_MAX_STALENESS_KEY = "user.props.write.behind.max.staleness";
+    public final static long DEFAULT_MAX_STALENESS_MILLIS = 5000;
+    private final static byte[] EMPTY_BYTES = new byte[0];
+    public final static String REFRESH_KEY = "user.props.refresh";
+    public final static long DEFAULT_CHECKPOINT_MILLIS = 1000;
 
-    private final static UserProperties instance = new UserProperties(false);
-    private final Map<String, Property> properties;
+    private final Map<String, UserProperty> properties;
+    private final NavigableSet<String> names;
 
     private final UserPropertyPersistence persistence;
+    private final FormatDetectingUserPropertyCodec codec;
+    private final Supplier<Map<String, UserProperty>> mapSupplier;
+    private final UserPropertiesWriteBehind writeBehind;
+    private final Object persistLock = new Object();
 
-    private final JsonSerializer<Property> serializer = new UserPropertySerializer();
-    private final JsonDeserializer<Property> deSerializer = new UserPropertyDeSerializer();
-    private final ObjectMapper mapper;
-    private final TypeReference<TreeMap<String, Property>> typeRef = new TypeReference<TreeMap<String, Property>>() {};
+    private final UserPropertyJournal journal;
+    private final SharedUserPropertyPersistence shared;
+    private final UserPropertiesRefresher refresher;
+    private volatile long stamp;
+    private volatile Thread mergeThread;
+    private final Set<String> changedKeys = ConcurrentHashMap.newKeySet();
+    private final Set<String> defaultedKeys = ConcurrentHashMap.newKeySet();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicInteger generation = new AtomicInteger();
+    private final DefaultsPolicy defaultsPolicy;
+    private final UserPropertiesDefaults layer;
+    private final AtomicBoolean snapshotRequired = new AtomicBoolean(false);
 
-    private final ChangeListener<Object> propertyChangeListener = new ChangeListener<Object>() {
-        @Override
-        public void changed(ObservableValue<?> observable, Object oldValue, Object newValue) {
-            update();
-        }
-    };
+    private final Object snapshotLock = new Object();
+    private final AtomicLong batchSequence = new AtomicLong();
+    private final Set<String> unsnapshotted = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean snapshotReset = new AtomicBoolean(true);
+    private volatile UserPropertiesSnapshot snapshot;
+    private final UserPropertiesEvents events = new UserPropertiesEvents(this);
+
+    private final boolean lazy;
+    private volatile UserPropertiesIndex index;
+    private final UserPropertiesCache cache;
+    private volatile boolean evictionDeferred = false;
+    private final UserPropertiesMetrics metrics;
+    private final boolean instrumented;
+
+    private final Object batchLock = new Object();
+    private volatile Thread batchThread;
+    private final ThreadLocal<Boolean> deferring = new ThreadLocal<>();
+    private final Executor asyncExecutor;
+    private volatile UserPropertiesAsync async;
+
+    private final ConcurrentMap<String, UserPropertyCounter> counters = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService writeExecutor;
+    private final long checkpointMillis;
+    private volatile UserPropertiesCheckpoint checkpoint;
+
+    /**
+     * Persists the properties when one is modified.  A {@link UserProperty.Listener} is only handed the
+     * property, so the old and new values are not boxed.
+     */
+    private final UserProperty.Listener propertyChangeListener = property -> update(property.getName());
 
     /**
      * Protected constructor for use in unit testing.  Normally you would obtain an instance
-     * using the {@link #getInstance()}
+     * using the {@link #getInstance()} or {@link #builder()}
      *
-     * @param isSyncronized will wrap the underlying {@link TreeMap} so it is synchronized
-     *                      if set to true. (future implementaion, right now this value
-     *                      is always false)
+     * @param isSyncronized will store the properties in a {@link ConcurrentHashMap} so
+     *                      they can be safely shared between threads if set to true
      */
     protected UserProperties(final boolean isSyncronized)
     {
-        mapper = new ObjectMapper();
-        final SimpleModule module = new SimpleModule();
+        this(isSyncronized,
+                Long.getLong(WRITE_BEHIND_DEBOUNCE_KEY, 0),
+                Long.getLong(WRITE_BEHIND_MAX_STALENESS_KEY, DEFAULT_MAX_STALENESS_MILLIS));
+    }
+
+    /**
+     * Protected constructor for use in unit testing the write behind mode.
+     *
+     * @param isSyncronized will store the properties in a {@link ConcurrentHashMap} so
+     *                      they can be safely shared between threads if set to true.  Always
+     *                      true when write behind is enabled as the properties are written
+     *                      from a background thread.
+     * @param debounceMillis how long the properties must be quiet before a background write,
+     *                       0 or less keeps persistence synchronous
+     * @param maxStalenessMillis the longest a change may wait before a background write
+     */
+    protected UserProperties(final boolean isSyncronized, final long debounceMillis, final long maxStalenessMillis)
+    {
+        this((debounceMillis > 0
+                ? builder().concurrent(isSyncronized).writeBehind(debounceMillis, maxStalenessMillis, TimeUnit.MILLISECONDS)
+                : builder().concurrent(isSyncronized))
+                .refresh(Long.getLong(REFRESH_KEY, 0), TimeUnit.MILLISECONDS));
+    }
+
+    private UserProperties(final Builder builder)
+    {
+        persistence = builder.persistence != null ? builder.persistence : createPersistence();
+        codec = new FormatDetectingUserPropertyCodec(builder.codec != null ? builder.codec : new JsonUserPropertyCodec());
+        journal = persistence instanceof UserPropertyJournal ? (UserPropertyJournal) persistence : null;
+        shared = journal == null && persistence instanceof SharedUserPropertyPersistence
+                ? (SharedUserPropertyPersistence) persistence : null;
+        if (builder.mapSupplier == null && (builder.concurrent || builder.writeBehind || builder.cacheSize > 0)) {
+            mapSupplier = ConcurrentHashMap::new;
+        } else {
+            mapSupplier = builder.mapSupplier;
+        }
+
+        lazy = builder.lazy;
+        asyncExecutor = builder.asyncExecutor;
+        writeExecutor = builder.writeExecutor;
+        checkpointMillis = builder.checkpointMillis;
+        defaultsPolicy = builder.defaultsPolicy;
+        layer = builder.layer;
+        metrics = builder.metrics != null ? builder.metrics : UserPropertiesMetrics.NONE;
+        instrumented = metrics != UserPropertiesMetrics.NONE;
+        cache = builder.cacheSize > 0 ? new UserPropertiesCache(builder.cacheSize) : null;
+        properties = load();
+        names = sortedNames(properties, index);
+        if (layer != null) {
+            names.addAll(layer.propertyNames());
+        }
+        if (cache != null) {
+            if (!(properties instanceof ConcurrentMap)) {
+                throw new IllegalStateException("A cache requires a ConcurrentMap to hold the properties");
+            }
+            cache.evictIfNeeded(properties, propertyChangeListener, changedKeys);
+        }
 
-        module.addDeserializer(Property.class, deSerializer);
-        module.addSerializer(Property.class, serializer);
-        mapper.registerModule(module);
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        if (builder.writeBehind) {
+            writeBehind = new UserPropertiesWriteBehind(this::persistAfterBatch, builder.writeExecutor,
+                    builder.debounceMillis, builder.maxStalenessMillis);
+        } else {
+            writeBehind = null;
+        }
+
+        if (shared != null && builder.refreshMillis > 0) {
+            refresher = new UserPropertiesRefresher(this::refresh, builder.writeExecutor, builder.refreshMillis);
+        } else {
+            refresher = null;
+        }
+
+        if (codec.isMigrationRequired()) {
+            snapshotRequired.set(true);
+            update();
+        }
+    }
 
+    /**
+     * Creates the {@link UserPropertyPersistence} named by the <code>user.props.persistence</code>
+     * System property, used when a {@link Builder} was not given a persistence layer
+     *
+     * @return a new instance of the configured {@link UserPropertyPersistence}
+     */
+    private static UserPropertyPersistence createPersistence() {
         final String clazzName = System.getProperty(PERSISTENCE_KEY, DEFAULT_PERSISTENCE_CLASS);
         try {
             final Class<?> persistenceClass = Class.forName(clazzName);
-            persistence = (UserPropertyPersistence)persistenceClass.newInstance();
+            return (UserPropertyPersistence)persistenceClass.newInstance();
         } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
             final String msg = String.format("Unable to create persistence layer, reason: %s", e.toString());
             log.error(msg, e);
             throw new RuntimeException(msg, e);
         }
-
-        final Map<String,Property> propertyMap = load();
-        if (isSyncronized) {
-            properties = Collections.synchronizedMap(propertyMap);
-        } else {
-            properties = propertyMap;
-        }
     }
 
     /**
@@ -103,301 +232,2151 @@ public class UserProperties {
      * @return a new {@link Map} if there is no persisted copy.  If the persisted data
      *         was found a {@link Map} containing the properties
      */
-    protected Map<String, Property> load() {
-        final Map<String, Property> properties;
-        if (persistence.exists()) {
+    protected Map<String, UserProperty> load() {
+        final long start = instrumented ? System.nanoTime() : 0;
+        final Map<String, UserProperty> properties;
+        try {
+            final Closeable lock = shared != null ? shared.lock() : null;
             try {
-                properties = mapper.readValue(persistence.getInputStream(), typeRef);
-                properties.values().stream().forEach(p -> {
-                    p.addListener(propertyChangeListener);
-                } );
-            } catch (IOException e) {
-                final String msg = String.format("Error Loading User Properties File, reason: %s", e.toString());
-                log.error(msg, e);
-                throw new RuntimeException(msg, e);
+                if (lock != null) {
+                    stamp = shared.stamp();
+                }
+                properties = loadPersisted();
+            } finally {
+                if (lock != null) {
+                    lock.close();
+                }
             }
-        } else {
-            properties = new HashMap<>();
+        } catch (IOException e) {
+            final String msg = String.format("Error Loading User Properties File, reason: %s", e.toString());
+            log.error(msg, e);
+            throw new RuntimeException(msg, e);
         }
 
+        if (instrumented) {
+            final UserPropertiesIndex current = index;
+            metrics.loaded(System.nanoTime() - start, current != null ? current.size() : properties.size());
+        }
         return properties;
     }
 
     /**
-     * Updates the persisted copy of the properties.
+     * Reads the persisted copy, while holding the lock of a {@link SharedUserPropertyPersistence}
      */
-    protected void update() {
-        try {
-            mapper.writeValue(persistence.getOutputStream(), properties);
-        } catch (IOException e) {
-            log.error("Error Updating User Properties File", e);
+    private Map<String, UserProperty> loadPersisted() throws IOException {
+        final Map<String, UserProperty> properties;
+        if (persistence.exists()) {
+            final Map<String, UserProperty> loaded;
+            if (journal != null) {
+                index = lazy && journal instanceof IndexedUserPropertyJournal
+                        ? ((IndexedUserPropertyJournal) journal).index(codec) : null;
+                loaded = index != null ? new TreeMap<>() : journal.replay(codec);
+            } else if (lazy) {
+                final byte[] data;
+                try (InputStream in = persistence.getInputStream()) {
+                    data = readFully(in);
+                }
+                index = codec.index(data);
+                loaded = index != null ? new TreeMap<>() : codec.read(new ByteArrayInputStream(data));
+            } else {
+                try (InputStream in = persistence.getInputStream()) {
+                    loaded = codec.read(in);
+                }
+            }
+            if (mapSupplier != null) {
+                properties = mapSupplier.get();
+                properties.putAll(loaded);
+            } else {
+                properties = loaded;
+            }
+            properties.values().stream().forEach(p -> {
+                p.addListener(propertyChangeListener);
+            } );
+        } else if (mapSupplier != null) {
+            properties = mapSupplier.get();
+        } else {
+            properties = new HashMap<>();
         }
+        return properties;
     }
 
     /**
-     * Added for unit testing to retrieve the persistence implementation
-     *
-     * @return the implementation of {@link UserPropertyPersistence} used
-     *         to retrieve and persist the properties
+     * The names of the loaded properties, copied in order when they are already sorted
      */
-    protected UserPropertyPersistence getPersistence() {
-        return persistence;
+    private static NavigableSet<String> sortedNames(final Map<String, UserProperty> properties,
+                                                    final UserPropertiesIndex index) {
+        final NavigableSet<String> names = properties instanceof SortedMap && ((SortedMap) properties).comparator() == null
+                ? new ConcurrentSkipListSet<>(((SortedMap<String, UserProperty>) properties).keySet())
+                : new ConcurrentSkipListSet<>(properties.keySet());
+        if (index != null) {
+            names.addAll(index.keys());
+        }
+        return names;
     }
 
-    /**
-     * Added for Unit testing, might consider making this public in the future
-     * but I feel it is pretty dangerous.  If you accidentally call it your
-     * properties will be lost forever.
-     */
-    protected void clear() {
-        this.properties.clear();
-        update();
+    private static byte[] readFully(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[64 * 1024];
+        for (int count; (count = in.read(buffer)) > 0; ) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
     }
 
     /**
-     * Retrieve the {@link Integer int} value of the supplied property
-     * name, or key.  Will return 0 and create a property with a value of
-     * 0 if the property does not exist.
+     * Finds a property, decoding it from the {@link UserPropertiesIndex} of a lazy
+     * instance the first time it is used
      *
      * @param key the property name, or key
-     * @return an {@link Integer int} value, 0 if the property does not exist
+     * @return the {@link UserProperty} or <code>null</code> if it does not exist
      */
-    public int getIntProperty(final String key) {
-        return getIntProperty(key, 0);
+    private UserProperty lookup(final String key) {
+        if (cache != null && evictionDeferred) {
+            evictIfNeeded();
+        }
+        final UserProperty property = properties.get(key);
+        if (property != null) {
+            if (cache != null) {
+                cache.touch(key);
+            }
+            return property;
+        }
+        return index == null && cache == null ? null : materialize(key);
+    }
+
+    private UserProperty materialize(final String key) {
+        if (cache != null && cache.isEvicted(key)) {
+            final UserProperty property = putIfAbsent(key, null);
+            if (property != null) {
+                return property;
+            }
+        }
+
+        final UserPropertiesIndex current = index;
+        if (current == null) {
+            return properties.get(key);
+        }
+        final int position = current.find(key);
+        if (position < 0) {
+            return properties.get(key);
+        }
+        final UserProperty property = properties.computeIfAbsent(key, k -> {
+            try {
+                return attach(current.decode(position));
+            } catch (IOException e) {
+                final String msg = String.format("Error Loading User Property %s, reason: %s", key, e.toString());
+                log.error(msg, e);
+                throw new RuntimeException(msg, e);
+            }
+        });
+        inserted(key);
+        return property;
     }
 
     /**
-     * Retrieve the {@link Integer int} value of the supplied property name, or key.
-     * If the property does not exist a new property supplied default value will be
-     * created a the default value will be returned
+     * Adds a property unless the key has a live property, as {@link Map#putIfAbsent(Object, Object)} does.  With a
+     * cache the value of an evicted key is revived instead, taken while the map holds the key locked.  An eviction
+     * sets the value aside before it removes the property, so a key looked up by one thread while another revived
+     * and evicted it is never taken to be missing and given a default.
      *
      * @param key the property name, or key
-     * @param defaultValue the value to use of the requested property does not exist
-     * @return the {@link Integer int} value if the property or the supplied default
-     *         value if the property does not exist
+     * @param created the property to add, or <code>null</code> to only revive an evicted value
+     * @return the live or revived property held for the key, <code>null</code> if the created property was added
      */
-    public int getIntProperty(final String key, final int defaultValue) {
-        final Property<Object> property;
-        if (properties.containsKey(key)) {
-            property = properties.get(key);
-        } else {
-            final Integer intValue = Integer.valueOf(defaultValue);
-            property = new SimpleObjectProperty<>(null, key, intValue);
-            property.addListener(propertyChangeListener);
-            properties.put(key, property);
+    private UserProperty putIfAbsent(final String key, final UserProperty created) {
+        if (cache == null) {
+            return properties.putIfAbsent(key, created);
         }
 
-        return (Integer) property.getValue();
+        final UserProperty[] revived = new UserProperty[1];
+        final UserProperty property = properties.compute(key, (k, existing) -> {
+            if (existing != null) {
+                return existing;
+            }
+            final UserProperty evicted = cache.revive(k);
+            if (evicted == null) {
+                return created;
+            }
+            revived[0] = attach(evicted);
+            return revived[0];
+        });
+        if (property == created) {
+            return null;
+        }
+        if (property == revived[0]) {
+            inserted(key);
+        }
+        return property;
     }
 
     /**
-     * Creates or Updates an Integer property using the supplied property name, or key,
-     * and integer value.  The new or updated value is also persisted to the backend
-     * store as well
-     *
-     * @param key the property name, or key
-     * @param newValue the new value the property will contain
-     * @return the previous value of this property or 0 if the property
-     *         is new
+     * Called after a property is added to the live properties, records the name and evicts others if the cache is full
      */
-    public int setIntProperty(final String key, final int newValue) {
-        final int oldValue;
-        final Property<Object> property;
-        if (properties.containsKey(key)) {
-            property = properties.get(key);
-            oldValue = (Integer) property.getValue();
-            property.setValue(newValue);
-        } else {
-            final Integer intValue = Integer.valueOf(newValue);
-            property = new SimpleObjectProperty<>(null, key, intValue);
-            property.addListener(propertyChangeListener);
-            properties.put(key, property);
-            oldValue = 0;
+    private void inserted(final String key) {
+        names.add(key);
+        unsnapshotted.add(key);
+        if (cache != null) {
+            cache.touch(key);
+            evictIfNeeded();
         }
+    }
 
-        update();
-        return oldValue;
+    /**
+     * Evicts the properties above the size of the cache, which takes the monitor of each evicted property.  A setter
+     * may hold one of those monitors while it waits to persist, so eviction is deferred while this thread holds the
+     * persist lock, applies a batch or merges, and is made by the next lookup outside of them.
+     */
+    private void evictIfNeeded() {
+        final Thread current = Thread.currentThread();
+        if (Thread.holdsLock(persistLock) || batchThread == current || mergeThread == current) {
+            evictionDeferred = true;
+            return;
+        }
+        evictionDeferred = false;
+        cache.evictIfNeeded(properties, propertyChangeListener, changedKeys);
     }
 
     /**
-     * Retrieve the {@link Double double} value of the supplied property
-     * name, or key.  Will return 0.0 and create a property with a value of
-     * 0.0 if the property does not exist.
-     *
-     * @param key the property name, or key
-     * @return a {@link Double double} value, 0.0 if the property does not exist
+     * Checks, while holding the monitor of a property, whether it was evicted after it was looked up.
+     * A change made to an evicted property would be lost, so it must be retried.
      */
-    public double getDoubleProperty(final String key) {
-        return getDoubleProperty(key, 0.0);
+    private boolean evicted(final String key, final UserProperty property) {
+        return cache != null && properties.get(key) != property;
     }
 
     /**
-     * Retrieve the {@link Double double} value of the supplied property name, or key.
-     * If the property does not exist a new property supplied default value will be
-     * created a the default value will be returned
+     * Every property, including the evicted and lazily loaded properties, for writing in full.  The properties
+     * of a concurrent instance are written from the {@link #snapshot()}, so the write neither blocks the changes
+     * made meanwhile nor sees a batch half applied.  A plain map is only changed by the thread writing it, so
+     * when it holds every property it is written directly, in its own order.  Defaults that are never persisted
+     * are left out, as are the properties with the value they have in the {@link UserPropertiesDefaults}.
      *
-     * @param key the property name, or key
-     * @param defaultValue the value to use if the requested property does not exist
-     * @return the {@link Double double} value of the property or the supplied default
-     *         value if the property does not exist
+     * @return the live properties, or a read only, sorted {@link Map} of the properties, <code>null</code> while
+     *         a batch is being applied
+     * @throws IOException if a lazily loaded property cannot be decoded
      */
-    public double getDoubleProperty(final String key, final double defaultValue) {
-        final Property<Object> property;
-        if (properties.containsKey(key)) {
-            property = properties.get(key);
-        } else {
-            property = new SimpleObjectProperty<>(null, key, Double.valueOf(defaultValue));
-            property.addListener(propertyChangeListener);
-            properties.put(key, property);
+    private Map<String, UserProperty> writable() throws IOException {
+        if (!(properties instanceof ConcurrentMap) && index == null && defaultedKeys.isEmpty() && layer == null) {
+            return properties;
         }
-
-        return (Double) property.getValue();
+        final Set<String> excluded = defaultedKeys.isEmpty() ? Collections.emptySet() : new HashSet<>(defaultedKeys);
+        final UserPropertiesSnapshot current = currentSnapshot();
+        return current != null ? current.properties(excluded, layer) : null;
     }
 
     /**
-     * Creates or Updates an Double property using the supplied property name, or key,
-     * and double value.  The new or updated value is also persisted to the backend
-     * store as well
-     *
-     * @param key the property name, or key
-     * @param newValue the new value the property will contain
-     * @return the previous value of this property or 0.0 if the property
-     *         is new
+     * Updates the persisted copy of the properties, or schedules the update
+     * when write behind is enabled.
      */
-    public double setDoubleProperty(final String key, final double newValue) {
-        final double oldValue;
-        final Property<Object> property;
-        if (properties.containsKey(key)) {
-            property = properties.get(key);
-            oldValue = (Double) property.getValue();
-            property.setValue(newValue);
-        } else {
-            final Double dblValue = new Double(newValue);
-            property = new SimpleObjectProperty<>(null, key, dblValue);
-            property.addListener(propertyChangeListener);
-            properties.put(key, property);
-            oldValue = 0;
+    protected void update() {
+        metrics.changed();
+        if (writeBehind != null) {
+            writeBehind.changed();
+            return;
         }
 
-        update();
-        return oldValue;
+        try {
+            persist();
+        } catch (IOException e) {
+            log.error("Error Updating User Properties File", e);
+        }
     }
 
     /**
-     * Retrieve the {@link String} value of the supplied property
-     * name, or key.  Will return an empty {@link String} and create a property
-     * with a value of the empty {@link String} if the property does not exist.
+     * Records a property created by a get method with its default value according to the {@link DefaultsPolicy}
      *
-     * @param key the property name, or key
-     * @return a {@link String} value, or an empty {@link String} if the property
-     *         does not exist
+     * @param key the property name, or key, that was created
      */
-    public String getProperty(String key) {
-        return getProperty(key, "");
+    private void defaulted(final String key) {
+        switch (defaultsPolicy) {
+            case IMMEDIATE:
+                update(key);
+                break;
+            case NEVER:
+                defaultedKeys.add(key);
+                break;
+            default:
+                changedKeys.add(key);
+                break;
+        }
     }
 
     /**
-     * Retrieve the {@link String} value of the supplied property name, or key.
-     * If the property does not exist a new property with the supplied default
-     * value will be created a the default value will be returned
+     * Records that a property was modified before updating the persisted copy
      *
-     * @param key the property name, or key
-     * @param defaultValue the value to use if the requested property does not exist
-     * @return the {@link String} value of the property or the supplied default
-     *         value if the property does not exist
+     * @param key the property name, or key, that was modified
      */
-    public String getProperty(String key, String defaultValue) {
-        final Property<Object> property;
-        if (properties.containsKey(key)) {
-            property = properties.get(key);
-        } else {
-            property = new SimpleObjectProperty<>(null, key, defaultValue);
-            property.addListener(propertyChangeListener);
-            properties.put(key, property);
+    private void update(final String key) {
+        version.incrementAndGet();
+        unsnapshotted.add(key);
+        events.changed(key);
+        if (mergeThread == Thread.currentThread()) {
+            return;
+        }
+        changedKeys.add(key);
+        if (defaultsPolicy == DefaultsPolicy.NEVER) {
+            defaultedKeys.remove(key);
+        }
+        if (batchThread == Thread.currentThread()) {
+            return;
+        }
+        if (deferring.get() != null) {
+            metrics.changed();
+            return;
         }
+        update();
+    }
 
-        return (String)property.getValue();
+    /**
+     * Writes the properties to the persistence layer if any have changed since they were last written.  Writes
+     * are serialized with each other, but not with the readers and writers of a concurrent instance which continue
+     * against the weakly consistent view of the {@link ConcurrentHashMap}.  The changed keys are taken before the
+     * write, a key changed while writing remains dirty and causes another write.
+     *
+     * With a {@link UserPropertyJournal} the changed properties are appended and a snapshot
+     * is only written when the journal needs compacting, or after the properties were cleared.
+     *
+     * With a {@link SharedUserPropertyPersistence} the lock is held from before the changes of other
+     * processes are merged until the write is complete.
+     *
+     * While a batch is being applied by another thread the changes are left for the batch to write once it has
+     * been applied, so a write never holds part of a batch and never waits for one.
+     *
+     * @return <code>true</code> if the changes were written, <code>false</code> if they were left to a batch
+     * @throws IOException if an I/O error occurs
+     */
+    private boolean persist() throws IOException {
+        synchronized (persistLock) {
+            if (shared == null) {
+                return persistChanged();
+            }
+            if (changedKeys.isEmpty() && !snapshotRequired.get()) {
+                return true;
+            }
+
+            final Closeable lock = shared.lock();
+            try {
+                mergeIfChanged();
+                final boolean written = persistChanged();
+                stamp = shared.stamp();
+                return written;
+            } finally {
+                lock.close();
+            }
+        }
     }
 
     /**
-     * Creates or Updates a String property using the supplied property name, or key,
-     * and double value.  The new or updated value is also persisted to the backend
-     * store as well
+     * Persists the changes from a thread that holds no property monitor, when they are left to a batch it waits
+     * for the batch, so they have been written once this returns
      *
-     * @param key the property name, or key
-     * @param value the new value the property will contain
-     * @return the previous value of this property or an empty {@link String} if the
-     *         property is new
+     * @throws IOException if an I/O error occurs
      */
-    public String setProperty(final String key, final String value) {
-        final String oldValue;
-        final Property<Object> property;
-        if (properties.containsKey(key)) {
-            property = properties.get(key);
-            oldValue = (String) property.getValue();
-            property.setValue(value);
-        } else {
-            property = new SimpleObjectProperty<>(null, key, value);
-            property.addListener(propertyChangeListener);
-            properties.put(key, property);
-            oldValue = null;
+    private void persistAfterBatch() throws IOException {
+        while (!persist()) {
+            synchronized (batchLock) {
+                // the batch has written the changes by the time it releases the lock
+            }
+        }
+        if (cache != null && evictionDeferred) {
+            evictIfNeeded();
         }
+    }
 
-        update();
-        return oldValue;
+    private boolean persistChanged() throws IOException {
+        if ((batchSequence.get() & 1) != 0) {
+            return false;
+        }
+        final boolean snapshot = snapshotRequired.get();
+        final List<String> keys = drainChanged();
+        if (keys.isEmpty() && !snapshot) {
+            return true;
+        }
+
+        metrics.flushed();
+        try {
+            if (journal == null) {
+                if (!write()) {
+                    changedKeys.addAll(keys);
+                    return false;
+                }
+            } else if (snapshot || append(keys)) {
+                final long start = instrumented ? System.nanoTime() : 0;
+                final Map<String, UserProperty> writable = writable();
+                if (writable == null) {
+                    // the appended changes are kept, the batch writes the snapshot
+                    return false;
+                }
+                journal.snapshot(writable, codec);
+                if (instrumented) {
+                    metrics.serialized(System.nanoTime() - start, -1);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            changedKeys.addAll(keys);
+            throw e;
+        }
+        if (snapshot) {
+            snapshotRequired.set(false);
+        }
+        return true;
     }
 
     /**
-     * A {@link Set} containing the property name, or key, values
+     * Merges the changes other processes have made to the persisted copy of a {@link SharedUserPropertyPersistence}.
+     * Checking the stamp is all it costs when nothing has changed, so it is cheap enough to poll, see
+     * {@link Builder#refresh(long, TimeUnit)}.  The values of the properties that changed are set, notifying their
+     * listeners on the calling thread, unless the property has been changed locally and not yet written.
      *
-     * @return {@link Set Set&lt;String&gt;} of property names
+     * @return <code>true</code> if the persisted copy had changed, <code>false</code> if it had not or the
+     *         persistence is not shared
      */
-    public Set<String> propertyNames() {
-        return Collections.unmodifiableSet(properties.keySet());
+    public boolean refresh() {
+        if (shared == null) {
+            return false;
+        }
+        try {
+            if (shared.stamp() == stamp) {
+                return false;
+            }
+            synchronized (persistLock) {
+                final Closeable lock = shared.lock();
+                try {
+                    return mergeIfChanged();
+                } finally {
+                    lock.close();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Error Refreshing User Properties File", e);
+            return false;
+        }
     }
 
     /**
-     * Will return the {@link Class} of the proeprty defined by the
-     * supplied Key
+     * Merges the persisted copy if its stamp has changed since it was last read or written, called
+     * while holding the lock of the {@link SharedUserPropertyPersistence}
      *
-     * @param key the property name, or key, indicating the property
-     * @return returns the {@link Class} of the requested property or
-     *         <code>null</code> if it is not defined.
+     * @return <code>true</code> if the persisted copy had changed
+     * @throws IOException if an I/O error occurs
      */
-    public Class<?> getType(final String key) {
-        if (!properties.containsKey(key)) {
-            return null;
+    private boolean mergeIfChanged() throws IOException {
+        final long current = shared.stamp();
+        if (current == stamp) {
+            return false;
         }
-        final Property<Object> property = properties.get(key);
-        return property.getValue().getClass();
+
+        if (persistence.exists()) {
+            mergeThread = Thread.currentThread();
+            try {
+                final byte[] data;
+                try (InputStream in = persistence.getInputStream()) {
+                    data = readFully(in);
+                }
+                final UserPropertiesIndex fresh = index != null ? codec.index(data) : null;
+                if (fresh != null) {
+                    mergeIndexed(fresh);
+                } else {
+                    final Map<String, UserProperty> persisted = codec.read(new ByteArrayInputStream(data));
+                    for (Map.Entry<String, UserProperty> entry : persisted.entrySet()) {
+                        merge(entry.getKey(), entry.getValue());
+                    }
+                }
+            } finally {
+                mergeThread = null;
+            }
+        }
+        stamp = current;
+        return true;
     }
 
     /**
-     * Will return the {@link Property} wrapper of the underlying property
-     *
-     * @param key the property name, or key value
-     * @param clazz the {@link Class} of the property for use in casting
-     * @param <T> the {@link Class} of the underlying property
-     * @return the {@link Property} for the supplied property name or
-     *         <code>null</code> if the property does not exist
-     * @throws ClassCastException if you request the wrong {@link Class}
-     *         of the property, for example you request a
-     *         {@link Integer Integer.class} for a {@link String String.class}
-     *         property.
+     * Merges into a lazy instance, only the properties that are live or evicted are decoded and compared, the
+     * others are read from the new index when they are first used
      */
-    public <T> Property<T> property(final String key, Class<T> clazz) {
-        if (!properties.containsKey(key)) {
-            return null;
+    private void mergeIndexed(final UserPropertiesIndex fresh) throws IOException {
+        final UserPropertiesIndex previous = index;
+        for (int i = 0; i < previous.size(); i++) {
+            if (fresh.find(previous.key(i)) < 0) {
+                materialize(previous.key(i));
+            }
+        }
+        index = fresh;
+        snapshotReset.set(true);
+
+        for (int i = 0; i < fresh.size(); i++) {
+            final String key = fresh.key(i);
+            names.add(key);
+            if (properties.containsKey(key) || (cache != null && cache.isEvicted(key))) {
+                merge(key, fresh.decode(i));
+            }
         }
-        return (Property<T>) properties.get(key);
     }
 
     /**
-     * Return the instance of the User Properties
+     * Sets a property to the value read from the persisted copy if it differs, or adds the property.  A change
+     * made locally, which is recorded while holding the monitor of the property, is kept.
      *
-     * @return the singleton instance
+     * @param key the property name, or key
+     * @param persisted the {@link UserProperty} as it was read
+     */
+    private void merge(final String key, final UserProperty persisted) {
+        if (changedKeys.contains(key)) {
+            return;
+        }
+        defaultedKeys.remove(key);
+
+        final UserProperty<Object> property = lookup(key);
+        if (property == null) {
+            if (putIfAbsent(key, attach(persisted)) == null) {
+                inserted(key);
+                version.incrementAndGet();
+                events.changed(key);
+            } else {
+                persisted.removeListener(propertyChangeListener);
+                merge(key, persisted);
+            }
+            return;
+        }
+
+        final Object value = persisted.getValue();
+        final boolean evicted;
+        synchronized (property) {
+            evicted = evicted(key, property);
+            final Object current = property.getValue();
+            if (!evicted && !changedKeys.contains(key) && !Objects.deepEquals(current, value)) {
+                if (current != null && !current.getClass().isInstance(value)) {
+                    log.warn(String.format("Not merging User Property %s, a %s can not be set to a %s", key,
+                            current.getClass().getSimpleName(), value.getClass().getSimpleName()));
+                    return;
+                }
+                property.setValue(value);
+            }
+        }
+        if (evicted) {
+            merge(key, persisted);
+        }
+    }
+
+    /**
+     * Appends the changed properties to the journal
+     *
+     * @param keys the changed property names, or keys
+     * @return <code>true</code> if the journal now needs compacting
+     * @throws IOException if an I/O error occurs
+     */
+    private boolean append(final List<String> keys) throws IOException {
+        final List<UserProperty> changed = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            final UserProperty property = lookup(key);
+            if (property != null && !defaultedKeys.contains(key)) {
+                changed.add(property);
+            }
+        }
+        if (!changed.isEmpty()) {
+            final long start = instrumented ? System.nanoTime() : 0;
+            journal.append(changed, codec);
+            if (instrumented) {
+                metrics.serialized(System.nanoTime() - start, -1);
+            }
+        }
+        return journal.needsCompaction();
+    }
+
+    /**
+     * Writes every property through the {@link UserPropertyPersistence#getOutputStream()}.  The
+     * stream is closed once the properties are written, or handed back to the persistence to be
+     * discarded if writing fails.
+     *
+     * @return <code>false</code> if nothing was written as a batch is being applied
+     * @throws IOException if an I/O error occurs
+     */
+    private boolean write() throws IOException {
+        final long start = instrumented ? System.nanoTime() : 0;
+        final Map<String, UserProperty> writable = writable();
+        if (writable == null) {
+            return false;
+        }
+        if (instrumented) {
+            writeMeasured(start, writable);
+            return true;
+        }
+
+        final OutputStream out = persistence.getOutputStream();
+        try {
+            codec.write(out, writable);
+        } catch (IOException | RuntimeException e) {
+            persistence.discard(out);
+            throw e;
+        }
+        out.close();
+        return true;
+    }
+
+    /**
+     * The same as {@link #write()} while timing the encoding and closing of the stream, and
+     * counting the bytes written
+     */
+    private void writeMeasured(final long start, final Map<String, UserProperty> writable) throws IOException {
+        final OutputStream out = persistence.getOutputStream();
+        final CountingOutputStream counted = new CountingOutputStream(out);
+        try {
+            codec.write(counted, writable);
+        } catch (IOException | RuntimeException e) {
+            persistence.discard(out);
+            throw e;
+        }
+        final long written = System.nanoTime();
+        metrics.serialized(written - start, counted.count);
+        out.close();
+        metrics.streamClosed(System.nanoTime() - written);
+    }
+
+    /**
+     * Counts the bytes passed to the persistence stream, it is closed directly rather than through this
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private List<String> drainChanged() {
+        final List<String> changed = new ArrayList<>();
+        for (Iterator<String> keys = changedKeys.iterator(); keys.hasNext(); ) {
+            changed.add(keys.next());
+            keys.remove();
+        }
+        return changed;
+    }
+
+    /**
+     * The asynchronous setters of these properties, the calling thread changes the value and the write is
+     * made by an executor, see {@link UserPropertiesAsync}.  The executor is given by
+     * {@link Builder#async(Executor)}, otherwise the shared default executor is used.
+     *
+     * @return the {@link UserPropertiesAsync} of these properties
+     * @throws IllegalStateException if the properties are not held in a {@link ConcurrentMap}, as they
+     *         would be written while being changed, see {@link Builder#concurrent(boolean)}
+     */
+    public UserPropertiesAsync async() {
+        UserPropertiesAsync current = async;
+        if (current == null) {
+            if (!(properties instanceof ConcurrentMap)) {
+                throw new IllegalStateException("Asynchronous User Properties require a concurrent instance");
+            }
+            synchronized (this) {
+                current = async;
+                if (current == null) {
+                    current = new UserPropertiesAsync(this, asyncExecutor);
+                    async = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Makes a change without persisting it, unless write behind is enabled when the change is scheduled as usual
+     *
+     * @param change the change to make on the calling thread
+     * @return the result of the change
+     */
+    <T> T deferred(final Supplier<T> change) {
+        if (writeBehind != null) {
+            return change.get();
+        }
+        deferring.set(Boolean.TRUE);
+        try {
+            return change.get();
+        } finally {
+            deferring.remove();
+        }
+    }
+
+    /**
+     * Persists the changes made by {@link #deferred(Supplier)}, on the thread of the {@link UserPropertiesAsync}
+     *
+     * @throws IOException if an I/O error occurs, the changes remain unpersisted
+     */
+    void persistDeferred() throws IOException {
+        persistAfterBatch();
+    }
+
+    /**
+     * @return a future completed once the background writer has written the changes made so far,
+     *         or <code>null</code> if write behind is not enabled
+     */
+    CompletableFuture<Void> writeBehindPersisted() {
+        return writeBehind != null ? writeBehind.persisted() : null;
+    }
+
+    /**
+     * Writes any pending changes immediately, including the amounts added to the {@link UserPropertyCounter
+     * counters} since their last checkpoint.  Otherwise does nothing when persistence is synchronous as every
+     * change has already been written.
+     */
+    public void flush() {
+        checkpointCounters();
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+    }
+
+    /**
+     * Waits until every change made before this call has been persisted.  Always
+     * returns <code>true</code> immediately when persistence is synchronous.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the {@link TimeUnit} of the timeout
+     * @return <code>true</code> if the changes were persisted, <code>false</code>
+     *         if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitPersisted(final long timeout, final TimeUnit unit) throws InterruptedException {
+        if (writeBehind == null) {
+            return true;
+        }
+        return writeBehind.awaitPersisted(timeout, unit);
+    }
+
+    /**
+     * Writes any pending changes and stops the background writer, refresh and counter
+     * checkpoints.  Changes made afterwards are persisted synchronously, the counters are
+     * then only checkpointed by {@link #flush()}.  Pending changes are also written by
+     * a shutdown hook, so calling this is only needed to release the writer early.
+     */
+    public void shutdown() {
+        final UserPropertiesCheckpoint current = checkpoint;
+        if (current != null) {
+            current.close();
+        } else {
+            checkpointCounters();
+        }
+        if (refresher != null) {
+            refresher.close();
+        }
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+    }
+
+    /**
+     * Added for unit testing to retrieve the persistence implementation
+     *
+     * @return the implementation of {@link UserPropertyPersistence} used
+     *         to retrieve and persist the properties
+     */
+    protected UserPropertyPersistence getPersistence() {
+        return persistence;
+    }
+
+    /**
+     * Added for unit testing the cache
+     *
+     * @return the number of properties held as live {@link UserProperty} objects
+     */
+    int livePropertyCount() {
+        return properties.size();
+    }
+
+    /**
+     * Added for Unit testing, might consider making this public in the future
+     * but I feel it is pretty dangerous.  If you accidentally call it your
+     * properties will be lost forever.
+     */
+    protected void clear() {
+        this.properties.clear();
+        names.clear();
+        if (layer != null) {
+            names.addAll(layer.propertyNames());
+        }
+        defaultedKeys.clear();
+        index = null;
+        if (cache != null) {
+            cache.clear();
+        }
+        snapshotReset.set(true);
+        generation.incrementAndGet();
+        snapshotRequired.set(true);
+        update();
+    }
+
+    /**
+     * Retrieve the {@link Integer int} value of the supplied property
+     * name, or key.  Will return 0 and create a property with a value of
+     * 0 if the property does not exist.
+     *
+     * @param key the property name, or key
+     * @return an {@link Integer int} value, 0 if the property does not exist
+     */
+    public int getIntProperty(final String key) {
+        return getIntProperty(key, 0);
+    }
+
+    /**
+     * Retrieve the {@link Integer int} value of the supplied property name, or key.
+     * If the property does not exist a new property supplied default value will be
+     * created a the default value will be returned
+     *
+     * @param key the property name, or key
+     * @param defaultValue the value to use of the requested property does not exist
+     * @return the {@link Integer int} value if the property or the supplied default
+     *         value if the property does not exist
+     */
+    public int getIntProperty(final String key, final int defaultValue) {
+        metrics.read(UserPropertiesMetrics.Type.INTEGER);
+        UserProperty property = lookup(key);
+        if (property == null) {
+            final Object layered = layered(key);
+            if (layered != null) {
+                return (Integer) layered;
+            }
+            property = createDefault(key, UserPropertyFactory.createInt(key, defaultValue), UserPropertiesMetrics.Type.INTEGER);
+        }
+
+        if (property instanceof UserProperty.OfInt) {
+            return ((UserProperty.OfInt) property).get();
+        }
+        return (Integer) property.getValue();
+    }
+
+    /**
+     * Creates or Updates an Integer property using the supplied property name, or key,
+     * and integer value.  The new or updated value is also persisted to the backend
+     * store as well
+     *
+     * @param key the property name, or key
+     * @param newValue the new value the property will contain
+     * @return the previous value of this property or 0 if the property
+     *         is new
+     */
+    public int setIntProperty(final String key, final int newValue) {
+        metrics.written(UserPropertiesMetrics.Type.INTEGER);
+        final UserProperty property = lookup(key);
+        if (property instanceof UserProperty.OfInt) {
+            final UserProperty.OfInt intProperty = (UserProperty.OfInt) property;
+            int oldValue = 0;
+            final boolean evicted;
+            synchronized (intProperty) {
+                evicted = evicted(key, intProperty);
+                if (!evicted) {
+                    oldValue = intProperty.get();
+                    intProperty.set(newValue);
+                }
+            }
+            if (evicted) {
+                return setIntProperty(key, newValue);
+            }
+            return oldValue;
+        }
+
+        return swap(key, Integer.valueOf(newValue), Integer.class, 0);
+    }
+
+    /**
+     * Retrieve the {@link Double double} value of the supplied property
+     * name, or key.  Will return 0.0 and create a property with a value of
+     * 0.0 if the property does not exist.
+     *
+     * @param key the property name, or key
+     * @return a {@link Double double} value, 0.0 if the property does not exist
+     */
+    public double getDoubleProperty(final String key) {
+        return getDoubleProperty(key, 0.0);
+    }
+
+    /**
+     * Retrieve the {@link Double double} value of the supplied property name, or key.
+     * If the property does not exist a new property supplied default value will be
+     * created a the default value will be returned
+     *
+     * @param key the property name, or key
+     * @param defaultValue the value to use if the requested property does not exist
+     * @return the {@link Double double} value of the property or the supplied default
+     *         value if the property does not exist
+     */
+    public double getDoubleProperty(final String key, final double defaultValue) {
+        metrics.read(UserPropertiesMetrics.Type.DOUBLE);
+        UserProperty property = lookup(key);
+        if (property == null) {
+            final Object layered = layered(key);
+            if (layered != null) {
+                return (Double) layered;
+            }
+            property = createDefault(key, UserPropertyFactory.createDouble(key, defaultValue), UserPropertiesMetrics.Type.DOUBLE);
+        }
+
+        if (property instanceof UserProperty.OfDouble) {
+            return ((UserProperty.OfDouble) property).get();
+        }
+        return (Double) property.getValue();
+    }
+
+    /**
+     * Creates or Updates an Double property using the supplied property name, or key,
+     * and double value.  The new or updated value is also persisted to the backend
+     * store as well
+     *
+     * @param key the property name, or key
+     * @param newValue the new value the property will contain
+     * @return the previous value of this property or 0.0 if the property
+     *         is new
+     */
+    public double setDoubleProperty(final String key, final double newValue) {
+        metrics.written(UserPropertiesMetrics.Type.DOUBLE);
+        final UserProperty property = lookup(key);
+        if (property instanceof UserProperty.OfDouble) {
+            final UserProperty.OfDouble dblProperty = (UserProperty.OfDouble) property;
+            double oldValue = 0;
+            final boolean evicted;
+            synchronized (dblProperty) {
+                evicted = evicted(key, dblProperty);
+                if (!evicted) {
+                    oldValue = dblProperty.get();
+                    dblProperty.set(newValue);
+                }
+            }
+            if (evicted) {
+                return setDoubleProperty(key, newValue);
+            }
+            return oldValue;
+        }
+
+        return swap(key, Double.valueOf(newValue), Double.class, 0.0);
+    }
+
+    /**
+     * Retrieve the {@link String} value of the supplied property
+     * name, or key.  Will return an empty {@link String} and create a property
+     * with a value of the empty {@link String} if the property does not exist.
+     *
+     * @param key the property name, or key
+     * @return a {@link String} value, or an empty {@link String} if the property
+     *         does not exist
+     */
+    public String getProperty(String key) {
+        return getProperty(key, "");
+    }
+
+    /**
+     * Retrieve the {@link String} value of the supplied property name, or key.
+     * If the property does not exist a new property with the supplied default
+     * value will be created a the default value will be returned
+     *
+     * @param key the property name, or key
+     * @param defaultValue the value to use if the requested property does not exist
+     * @return the {@link String} value of the property or the supplied default
+     *         value if the property does not exist
+     */
+    public String getProperty(String key, String defaultValue) {
+        metrics.read(UserPropertiesMetrics.Type.STRING);
+        UserProperty property = lookup(key);
+        if (property == null) {
+            final Object layered = layered(key);
+            if (layered != null) {
+                return (String) layered;
+            }
+            property = createDefault(key, UserPropertyFactory.createString(key, defaultValue), UserPropertiesMetrics.Type.STRING);
+        }
+
+        return (String)property.getValue();
+    }
+
+    /**
+     * Creates or Updates a String property using the supplied property name, or key,
+     * and double value.  The new or updated value is also persisted to the backend
+     * store as well
+     *
+     * @param key the property name, or key
+     * @param value the new value the property will contain
+     * @return the previous value of this property or an empty {@link String} if the
+     *         property is new
+     */
+    public String setProperty(final String key, final String value) {
+        metrics.written(UserPropertiesMetrics.Type.STRING);
+        return swap(key, value, String.class, null);
+    }
+
+    /**
+     * Retrieve the {@link Long long} value of the supplied property
+     * name, or key.  Will return 0 and create a property with a value of
+     * 0 if the property does not exist.
+     *
+     * @param key the property name, or key
+     * @return a {@link Long long} value, 0 if the property does not exist
+     */
+    public long getLongProperty(final String key) {
+        return getLongProperty(key, 0L);
+    }
+
+    /**
+     * Retrieve the {@link Long long} value of the supplied property name, or key.
+     * If the property does not exist a new property with the supplied default value will
+     * be created and the default value will be returned
+     *
+     * @param key the property name, or key
+     * @param defaultValue the value to use if the requested property does not exist
+     * @return the {@link Long long} value of the property or the supplied default
+     *         value if the property does not exist
+     */
+    public long getLongProperty(final String key, final long defaultValue) {
+        metrics.read(UserPropertiesMetrics.Type.LONG);
+        UserProperty property = lookup(key);
+        if (property == null) {
+            final Object layered = layered(key);
+            if (layered != null) {
+                return (Long) layered;
+            }
+            property = createDefault(key, UserPropertyFactory.createLong(key, defaultValue), UserPropertiesMetrics.Type.LONG);
+        }
+
+        if (property instanceof UserProperty.OfLong) {
+            return ((UserProperty.OfLong) property).get();
+        }
+        return (Long) property.getValue();
+    }
+
+    /**
+     * Creates or Updates a Long property using the supplied property name, or key,
+     * and long value.  The new or updated value is also persisted to the backend
+     * store as well
+     *
+     * @param key the property name, or key
+     * @param newValue the new value the property will contain
+     * @return the previous value of this property or 0 if the property
+     *         is new
+     */
+    public long setLongProperty(final String key, final long newValue) {
+        metrics.written(UserPropertiesMetrics.Type.LONG);
+        final UserProperty property = lookup(key);
+        if (property instanceof UserProperty.OfLong) {
+            final UserProperty.OfLong longProperty = (UserProperty.OfLong) property;
+            long oldValue = 0L;
+            final boolean evicted;
+            synchronized (longProperty) {
+                evicted = evicted(key, longProperty);
+                if (!evicted) {
+                    oldValue = longProperty.get();
+                    longProperty.set(newValue);
+                }
+            }
+            if (evicted) {
+                return setLongProperty(key, newValue);
+            }
+            return oldValue;
+        }
+
+        return swap(key, Long.valueOf(newValue), Long.class, 0L);
+    }
+
+    /**
+     * Retrieve the {@link Float float} value of the supplied property
+     * name, or key.  Will return 0.0 and create a property with a value of
+     * 0.0 if the property does not exist.
+     *
+     * @param key the property name, or key
+     * @return a {@link Float float} value, 0.0 if the property does not exist
+     */
+    public float getFloatProperty(final String key) {
+        return getFloatProperty(key, 0.0f);
+    }
+
+    /**
+     * Retrieve the {@link Float float} value of the supplied property name, or key.
+     * If the property does not exist a new property with the supplied default value will
+     * be created and the default value will be returned
+     *
+     * @param key the property name, or key
+     * @param defaultValue the value to use if the requested property does not exist
+     * @return the {@link Float float} value of the property or the supplied default
+     *         value if the property does not exist
+     */
+    public float getFloatProperty(final String key, final float defaultValue) {
+        metrics.read(UserPropertiesMetrics.Type.FLOAT);
+        UserProperty property = lookup(key);
+        if (property == null) {
+            final Object layered = layered(key);
+            if (layered != null) {
+                return (Float) layered;
+            }
+            property = createDefault(key, UserPropertyFactory.createFloat(key, defaultValue), UserPropertiesMetrics.Type.FLOAT);
+        }
+
+        if (property instanceof UserProperty.OfFloat) {
+            return ((UserProperty.OfFloat) property).get();
+        }
+        return (Float) property.getValue();
+    }
+
+    /**
+     * Creates or Updates a Float property using the supplied property name, or key,
+     * and float value.  The new or updated value is also persisted to the backend
+     * store as well
+     *
+     * @param key the property name, or key
+     * @param newValue the new value the property will contain
+     * @return the previous value of this property or 0.0 if the property
+     *         is new
+     */
+    public float setFloatProperty(final String key, final float newValue) {
+        metrics.written(UserPropertiesMetrics.Type.FLOAT);
+        final UserProperty property = lookup(key);
+        if (property instanceof UserProperty.OfFloat) {
+            final UserProperty.OfFloat floatProperty = (UserProperty.OfFloat) property;
+            float oldValue = 0.0f;
+            final boolean evicted;
+            synchronized (floatProperty) {
+                evicted = evicted(key, floatProperty);
+                if (!evicted) {
+                    oldValue = floatProperty.get();
+                    floatProperty.set(newValue);
+                }
+            }
+            if (evicted) {
+                return setFloatProperty(key, newValue);
+            }
+            return oldValue;
+        }
+
+        return swap(key, Float.valueOf(newValue), Float.class, 0.0f);
+    }
+
+    /**
+     * Retrieve the {@link Boolean boolean} value of the supplied property
+     * name, or key.  Will return false and create a property with a value of
+     * false if the property does not exist.
+     *
+     * @param key the property name, or key
+     * @return a {@link Boolean boolean} value, false if the property does not exist
+     */
+    public boolean getBooleanProperty(final String key) {
+        return getBooleanProperty(key, false);
+    }
+
+    /**
+     * Retrieve the {@link Boolean boolean} value of the supplied property name, or key.
+     * If the property does not exist a new property with the supplied default value will
+     * be created and the default value will be returned
+     *
+     * @param key the property name, or key
+     * @param defaultValue the value to use if the requested property does not exist
+     * @return the {@link Boolean boolean} value of the property or the supplied default
+     *         value if the property does not exist
+     */
+    public boolean getBooleanProperty(final String key, final boolean defaultValue) {
+        metrics.read(UserPropertiesMetrics.Type.BOOLEAN);
+        UserProperty property = lookup(key);
+        if (property == null) {
+            final Object layered = layered(key);
+            if (layered != null) {
+                return (Boolean) layered;
+            }
+            property = createDefault(key, UserPropertyFactory.createBoolean(key, defaultValue), UserPropertiesMetrics.Type.BOOLEAN);
+        }
+
+        if (property instanceof UserProperty.OfBoolean) {
+            return ((UserProperty.OfBoolean) property).get();
+        }
+        return (Boolean) property.getValue();
+    }
+
+    /**
+     * Creates or Updates a Boolean property using the supplied property name, or key,
+     * and boolean value.  The new or updated value is also persisted to the backend
+     * store as well
+     *
+     * @param key the property name, or key
+     * @param newValue the new value the property will contain
+     * @return the previous value of this property or false if the property
+     *         is new
+     */
+    public boolean setBooleanProperty(final String key, final boolean newValue) {
+        metrics.written(UserPropertiesMetrics.Type.BOOLEAN);
+        final UserProperty property = lookup(key);
+        if (property instanceof UserProperty.OfBoolean) {
+            final UserProperty.OfBoolean boolProperty = (UserProperty.OfBoolean) property;
+            boolean oldValue = false;
+            final boolean evicted;
+            synchronized (boolProperty) {
+                evicted = evicted(key, boolProperty);
+                if (!evicted) {
+                    oldValue = boolProperty.get();
+                    boolProperty.set(newValue);
+                }
+            }
+            if (evicted) {
+                return setBooleanProperty(key, newValue);
+            }
+            return oldValue;
+        }
+
+        return swap(key, Boolean.valueOf(newValue), Boolean.class, false);
+    }
+
+    /**
+     * Retrieve the binary value of the supplied property name, or key.  Will return
+     * an empty array and create a property with an empty value if the property does
+     * not exist.
+     *
+     * @param key the property name, or key
+     * @return the <code>byte[]</code> value, empty if the property does not exist
+     */
+    public byte[] getBytesProperty(final String key) {
+        return getBytesProperty(key, EMPTY_BYTES);
+    }
+
+    /**
+     * Retrieve the binary value of the supplied property name, or key.  If the property
+     * does not exist a new property with a copy of the supplied default value will be
+     * created and the default value will be returned.  The array held by the property is
+     * returned without being copied, so it must not be modified, set a new value instead.
+     *
+     * @param key the property name, or key
+     * @param defaultValue the value to use if the requested property does not exist
+     * @return the <code>byte[]</code> value of the property or the supplied default
+     *         value if the property does not exist
+     */
+    public byte[] getBytesProperty(final String key, final byte[] defaultValue) {
+        metrics.read(UserPropertiesMetrics.Type.BYTES);
+        UserProperty property = lookup(key);
+        if (property == null) {
+            final Object layered = layered(key);
+            if (layered != null) {
+                return (byte[]) layered;
+            }
+            property = createDefault(key, UserPropertyFactory.createBytes(key, defaultValue.clone()), UserPropertiesMetrics.Type.BYTES);
+        }
+
+        return (byte[]) property.getValue();
+    }
+
+    /**
+     * Creates or Updates a binary property using the supplied property name, or key, and
+     * a copy of the supplied value.  The new or updated value is also persisted to the
+     * backend store as well
+     *
+     * @param key the property name, or key
+     * @param value the new value the property will contain
+     * @return the previous value of this property or <code>null</code> if the
+     *         property is new
+     */
+    public byte[] setBytesProperty(final String key, final byte[] value) {
+        metrics.written(UserPropertiesMetrics.Type.BYTES);
+        if (value == null) {
+            throw new NullPointerException(String.format("Null value for User Property %s", key));
+        }
+        return swap(key, value.clone(), byte[].class, null);
+    }
+
+    /**
+     * A {@link Set} containing the property name, or key, values
+     *
+     * @return {@link Set Set&lt;String&gt;} of property names, a sorted, read only view
+     */
+    public Set<String> propertyNames() {
+        return Collections.unmodifiableNavigableSet(names);
+    }
+
+    /**
+     * The property names, or keys, starting with a prefix.  The names are kept sorted so this is a range of
+     * them, found by a search, rather than a copy.
+     *
+     * @param prefix the start of the property names, for example <code>ui.window.</code>
+     * @return a sorted, read only view of the matching property names which reflects later changes
+     */
+    public NavigableSet<String> propertyNames(final String prefix) {
+        return Collections.unmodifiableNavigableSet(names.subSet(prefix, true, prefix + Character.MAX_VALUE, false));
+    }
+
+    /**
+     * A view of the properties below a dotted path, the view addresses them by the rest of their names so
+     * <code>subtree("ui.window").getIntProperty("width")</code> reads <code>ui.window.width</code>
+     *
+     * @param path the dotted path of the branch, with or without the trailing dot
+     * @return a {@link UserPropertiesView} of the branch
+     * @throws IllegalArgumentException if the path is empty
+     */
+    public UserPropertiesView subtree(final String path) {
+        return new UserPropertiesView(this, path);
+    }
+
+    /**
+     * The changes of these properties, subscribers are notified of the changes of the properties under a prefix,
+     * coalesced, on an executor of their choosing, see {@link UserPropertiesEvents}
+     *
+     * @return the {@link UserPropertiesEvents} of these properties
+     */
+    public UserPropertiesEvents events() {
+        return events;
+    }
+
+    /**
+     * An immutable copy of every property as it is now, which can be read and iterated from any thread while the
+     * properties continue to change.  Taking a snapshot when nothing has changed since the last one returns that
+     * one, otherwise the last one is copied with the values of the keys changed since replaced, see
+     * {@link UserPropertiesSnapshot}.  Evicted and lazily loaded properties are included without being made live.
+     * While a batch is being applied the snapshot made as it started is returned.
+     *
+     * @return a {@link UserPropertiesSnapshot} of the properties
+     * @throws RuntimeException if a lazily loaded property cannot be decoded
+     */
+    public UserPropertiesSnapshot snapshot() {
+        try {
+            final UserPropertiesSnapshot current = currentSnapshot();
+            return current != null ? current : snapshot;
+        } catch (IOException e) {
+            final String msg = String.format("Error Loading User Properties snapshot, reason: %s", e.toString());
+            log.error(msg, e);
+            throw new RuntimeException(msg, e);
+        }
+    }
+
+    /**
+     * Returns the last snapshot if nothing has changed since, without locking, or makes the next one.  The keys
+     * changed since the last snapshot are taken before their values are read, so a key changed while the
+     * snapshot is made is read again by the next one.  The whole snapshot is made again after the properties
+     * are cleared or a new index is merged.
+     *
+     * No property monitor is taken, so a setter holding one may wait here.  Rather than waiting for a batch,
+     * whose changes take those monitors, a snapshot that would include part of a batch is not made, checked by
+     * the batch sequence as a seqlock is.
+     *
+     * @return the snapshot, or <code>null</code> while a batch is being applied
+     */
+    private UserPropertiesSnapshot currentSnapshot() throws IOException {
+        final UserPropertiesSnapshot last = snapshot;
+        if (last != null && unsnapshotted.isEmpty() && !snapshotReset.get()) {
+            return last;
+        }
+
+        synchronized (snapshotLock) {
+            while (true) {
+                final long sequence = batchSequence.get();
+                if ((sequence & 1) != 0) {
+                    return null;
+                }
+
+                final long at = version.get();
+                final boolean reset = snapshotReset.getAndSet(false) || snapshot == null;
+                final UserPropertiesSnapshot previous;
+                final List<String> keys;
+                if (reset) {
+                    unsnapshotted.clear();
+                    previous = new UserPropertiesSnapshot(new String[0], new Object[0], at);
+                    keys = new ArrayList<>(names);
+                } else {
+                    previous = snapshot;
+                    keys = new ArrayList<>(unsnapshotted);
+                    unsnapshotted.removeAll(keys);
+                    Collections.sort(keys);
+                }
+
+                UserPropertiesSnapshot next;
+                long moves;
+                do {
+                    moves = cache != null ? cache.moves() : 0;
+                    final Object[] values = new Object[keys.size()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = currentValue(keys.get(i));
+                    }
+                    next = previous.with(keys, values, at);
+                } while (cache != null && moves != cache.moves());
+
+                if (batchSequence.get() == sequence) {
+                    snapshot = next;
+                    return next;
+                }
+
+                // a batch started while the values were read, they are read again
+                if (reset) {
+                    snapshotReset.set(true);
+                } else {
+                    unsnapshotted.addAll(keys);
+                }
+            }
+        }
+    }
+
+    /**
+     * The value of a property wherever it is held, without making it live
+     *
+     * @return the value or <code>null</code> if the property does not exist
+     */
+    private Object currentValue(final String key) throws IOException {
+        final UserProperty property = properties.get(key);
+        if (property != null) {
+            return property.getValue();
+        }
+        if (cache != null) {
+            final Object value = cache.evicted(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        final UserPropertiesIndex current = index;
+        if (current != null) {
+            final int position = current.find(key);
+            if (position >= 0) {
+                return current.decode(position).getValue();
+            }
+        }
+        return layered(key);
+    }
+
+    /**
+     * Will return the {@link Class} of the proeprty defined by the
+     * supplied Key
+     *
+     * @param key the property name, or key, indicating the property
+     * @return returns the {@link Class} of the requested property or
+     *         <code>null</code> if it is not defined.
+     */
+    public Class<?> getType(final String key) {
+        final UserProperty<Object> property = lookup(key);
+        if (property == null) {
+            final Object layered = layered(key);
+            return layered != null ? layered.getClass() : null;
+        }
+        return property.getValue().getClass();
+    }
+
+    /**
+     * Will return the {@link UserProperty} wrapper of the underlying property, to add a
+     * {@link UserProperty.Listener} to or to bind a JavaFX property to through the
+     * <code>utilities-fx</code> module.  The property is never evicted by a cache.
+     *
+     * @param key the property name, or key value
+     * @param clazz the {@link Class} of the property for use in casting
+     * @param <T> the {@link Class} of the underlying property
+     * @return the {@link UserProperty} for the supplied property name or
+     *         <code>null</code> if the property does not exist
+     * @throws ClassCastException if you request the wrong {@link Class}
+     *         of the property, for example you request a
+     *         {@link Integer Integer.class} for a {@link String String.class}
+     *         property.
+     */
+    public <T> UserProperty<T> property(final String key, Class<T> clazz) {
+        UserProperty<T> property = lookup(key);
+        if (property == null && layered(key) != null) {
+            property = liveDefault(key);
+        }
+        if (cache != null && property != null) {
+            cache.pin(key);
+        }
+        return property;
+    }
+
+    /**
+     * A handle to an {@link Integer} property that gets and sets it without looking it up, see
+     * {@link UserPropertyKey}.  The property is created with the default value if it does not exist.
+     *
+     * @param key the property name, or key
+     * @param defaultValue the value of the property if it does not exist
+     * @return a {@link UserPropertyKey.OfInt} for the property
+     * @throws ClassCastException if the property exists and is not an {@link Integer}
+     */
+    public UserPropertyKey.OfInt intKey(final String key, final int defaultValue) {
+        return new UserPropertyKey.OfInt(this, key, defaultValue);
+    }
+
+    /**
+     * A handle to a {@link Long} property, see {@link #intKey(String, int)}
+     *
+     * @param key the property name, or key
+     * @param defaultValue the value of the property if it does not exist
+     * @return a {@link UserPropertyKey.OfLong} for the property
+     * @throws ClassCastException if the property exists and is not a {@link Long}
+     */
+    public UserPropertyKey.OfLong longKey(final String key, final long defaultValue) {
+        return new UserPropertyKey.OfLong(this, key, defaultValue);
+    }
+
+    /**
+     * A handle to a {@link Double} property, see {@link #intKey(String, int)}
+     *
+     * @param key the property name, or key
+     * @param defaultValue the value of the property if it does not exist
+     * @return a {@link UserPropertyKey.OfDouble} for the property
+     * @throws ClassCastException if the property exists and is not a {@link Double}
+     */
+    public UserPropertyKey.OfDouble doubleKey(final String key, final double defaultValue) {
+        return new UserPropertyKey.OfDouble(this, key, defaultValue);
+    }
+
+    /**
+     * A handle to a {@link Float} property, see {@link #intKey(String, int)}
+     *
+     * @param key the property name, or key
+     * @param defaultValue the value of the property if it does not exist
+     * @return a {@link UserPropertyKey.OfFloat} for the property
+     * @throws ClassCastException if the property exists and is not a {@link Float}
+     */
+    public UserPropertyKey.OfFloat floatKey(final String key, final float defaultValue) {
+        return new UserPropertyKey.OfFloat(this, key, defaultValue);
+    }
+
+    /**
+     * A handle to a {@link Boolean} property, see {@link #intKey(String, int)}
+     *
+     * @param key the property name, or key
+     * @param defaultValue the value of the property if it does not exist
+     * @return a {@link UserPropertyKey.OfBoolean} for the property
+     * @throws ClassCastException if the property exists and is not a {@link Boolean}
+     */
+    public UserPropertyKey.OfBoolean booleanKey(final String key, final boolean defaultValue) {
+        return new UserPropertyKey.OfBoolean(this, key, defaultValue);
+    }
+
+    /**
+     * A handle to a {@link String} property, see {@link #intKey(String, int)}
+     *
+     * @param key the property name, or key
+     * @param defaultValue the value of the property if it does not exist
+     * @return a {@link UserPropertyKey.OfString} for the property
+     * @throws ClassCastException if the property exists and is not a {@link String}
+     */
+    public UserPropertyKey.OfString stringKey(final String key, final String defaultValue) {
+        return new UserPropertyKey.OfString(this, key, defaultValue);
+    }
+
+    /**
+     * A counter kept in an {@link Integer} property that many threads can add to without contending, see
+     * {@link UserPropertyCounter}.  The property is created with a value of 0 if it does not exist, and the same
+     * counter is returned for every call with the key.
+     *
+     * @param key the property name, or key
+     * @return the {@link UserPropertyCounter.OfInt} of the property
+     * @throws ClassCastException if the property exists and is not an {@link Integer}, or has another counter
+     * @throws IllegalStateException if the properties are not held in a {@link ConcurrentMap}, as the counters
+     *         are checkpointed by another thread, see {@link Builder#concurrent(boolean)}
+     */
+    public UserPropertyCounter.OfInt intCounter(final String key) {
+        return counter(key, UserPropertyCounter.OfInt.class, () -> new UserPropertyCounter.OfInt(intKey(key, 0)));
+    }
+
+    /**
+     * A counter kept in a {@link Long} property, see {@link #intCounter(String)}
+     *
+     * @param key the property name, or key
+     * @return the {@link UserPropertyCounter.OfLong} of the property
+     * @throws ClassCastException if the property exists and is not a {@link Long}, or has another counter
+     * @throws IllegalStateException if the properties are not held in a {@link ConcurrentMap}
+     */
+    public UserPropertyCounter.OfLong longCounter(final String key) {
+        return counter(key, UserPropertyCounter.OfLong.class, () -> new UserPropertyCounter.OfLong(longKey(key, 0)));
+    }
+
+    /**
+     * An accumulator kept in a {@link Double} property, see {@link #intCounter(String)}
+     *
+     * @param key the property name, or key
+     * @return the {@link UserPropertyCounter.OfDouble} of the property
+     * @throws ClassCastException if the property exists and is not a {@link Double}, or has another counter
+     * @throws IllegalStateException if the properties are not held in a {@link ConcurrentMap}
+     */
+    public UserPropertyCounter.OfDouble doubleCounter(final String key) {
+        return counter(key, UserPropertyCounter.OfDouble.class,
+                () -> new UserPropertyCounter.OfDouble(doubleKey(key, 0.0)));
+    }
+
+    /**
+     * Finds or creates the counter of a property, starting the checkpoints with the first counter
+     */
+    private <T extends UserPropertyCounter> T counter(final String key, final Class<T> type,
+                                                      final Supplier<T> created) {
+        if (!(properties instanceof ConcurrentMap)) {
+            throw new IllegalStateException("User Property counters require a concurrent instance");
+        }
+        UserPropertyCounter counter = counters.get(key);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(key, k -> created.get());
+        }
+        if (!type.isInstance(counter)) {
+            throw new ClassCastException(String.format("User Property %s has a %s not a %s", key,
+                    counter.getClass().getSimpleName(), type.getSimpleName()));
+        }
+
+        if (checkpoint == null && checkpointMillis > 0) {
+            synchronized (counters) {
+                if (checkpoint == null) {
+                    checkpoint = new UserPropertiesCheckpoint(this::checkpointCounters, writeExecutor,
+                            checkpointMillis);
+                }
+            }
+        }
+        return type.cast(counter);
+    }
+
+    /**
+     * Adds the amounts summed by every counter to their properties and persists them in one write, unless write
+     * behind is enabled when the write is scheduled as usual
+     */
+    private void checkpointCounters() {
+        if (counters.isEmpty()) {
+            return;
+        }
+        final boolean changed = deferred(() -> {
+            boolean any = false;
+            for (UserPropertyCounter counter : counters.values()) {
+                any |= counter.checkpoint();
+            }
+            return any;
+        });
+        if (changed && writeBehind == null) {
+            try {
+                persist();
+            } catch (IOException e) {
+                log.error("Error Updating User Properties File", e);
+            }
+        }
+    }
+
+    /**
+     * Finds the {@link UserProperty} for a {@link UserPropertyKey}, creating it with its default value if it does not
+     * exist, and pins it so a cache keeps it live
+     *
+     * @param key the property name, or key
+     * @param created the property to add if it does not exist
+     * @param type the type recorded by the metrics if it is created
+     * @return the {@link UserProperty} now held for the key
+     */
+    UserProperty resolve(final String key, final UserProperty created, final UserPropertiesMetrics.Type type) {
+        UserProperty property = lookup(key);
+        if (property == null && layered(key) != null) {
+            property = liveDefault(key);
+        }
+        if (property == null) {
+            property = createDefault(key, created, type);
+        }
+        if (cache != null) {
+            cache.pin(key);
+            if (properties.get(key) != property) {
+                return resolve(key, created, type);
+            }
+        }
+        return property;
+    }
+
+    /**
+     * @return a counter that changes whenever properties are removed, so a {@link UserPropertyKey} knows to
+     *         find its property again
+     */
+    int generation() {
+        return generation.get();
+    }
+
+    UserPropertiesMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Creates or updates a property and persists the change.  Updates swap the value while
+     * holding the monitor of the property, so concurrent sets of the same key each see the
+     * value the previous set stored and no update is lost.
+     *
+     * @param key the property name, or key
+     * @param newValue the new value the property will contain
+     * @param type the expected {@link Class} of the existing value
+     * @param missingValue the value returned if the property is new
+     * @param <T> the type of the property
+     * @return the previous value of the property or the missing value if the property is new
+     * @throws ClassCastException if the existing property is not of the expected type, the
+     *         property is left unchanged
+     */
+    private <T> T swap(final String key, final T newValue, final Class<T> type, final T missingValue) {
+        UserProperty<Object> property = lookup(key);
+        if (property == null) {
+            // a property only in the defaults must be of the type before it is created
+            final Object layered = layered(key);
+            final T previous = layered != null ? type.cast(layered) : missingValue;
+            property = putIfAbsent(key, attach(UserPropertyFactory.create(key, newValue)));
+            if (property == null) {
+                inserted(key);
+                update(key);
+                return previous;
+            }
+        }
+
+        T oldValue = null;
+        final boolean evicted;
+        synchronized (property) {
+            evicted = evicted(key, property);
+            if (!evicted) {
+                oldValue = type.cast(property.getValue());
+                if (!Objects.deepEquals(oldValue, newValue)) {
+                    property.setValue(newValue);
+                }
+            }
+        }
+        if (evicted) {
+            return swap(key, newValue, type, missingValue);
+        }
+        return oldValue;
+    }
+
+    /**
+     * Adds a property created by a get method with its default value, unless another thread added the key first
+     *
+     * @return the property now held for the key
+     */
+    private UserProperty createDefault(final String key, final UserProperty created,
+                                       final UserPropertiesMetrics.Type type) {
+        final UserProperty existing = putIfAbsent(key, attach(created));
+        if (existing != null) {
+            created.removeListener(propertyChangeListener);
+            return existing;
+        }
+
+        metrics.created(type);
+        inserted(key);
+        defaulted(key);
+        return created;
+    }
+
+    /**
+     * @return the value of a property in the {@link UserPropertiesDefaults}, or <code>null</code> if there are no
+     *         defaults or the property has none
+     */
+    private Object layered(final String key) {
+        return layer != null ? layer.getValue(key) : null;
+    }
+
+    /**
+     * Gives a property that only has a value in the {@link UserPropertiesDefaults} a live {@link UserProperty}, so it
+     * can be bound or held by a {@link UserPropertyKey}.  Making it live is not a change, and while it keeps the
+     * default value it is not written.
+     *
+     * @return the property now held for the key
+     */
+    private UserProperty liveDefault(final String key) {
+        final UserProperty created = attach(UserPropertyFactory.create(key, layered(key)));
+        final UserProperty existing = putIfAbsent(key, created);
+        if (existing != null) {
+            created.removeListener(propertyChangeListener);
+            return existing;
+        }
+        inserted(key);
+        return created;
+    }
+
+    private UserProperty attach(final UserProperty property) {
+        property.addListener(propertyChangeListener);
+        return property;
+    }
+
+    /**
+     * How a property created with its default value by one of the get methods is persisted
+     */
+    public enum DefaultsPolicy {
+        /**
+         * The property is marked as changed but does not cause a write, it is persisted with the next change
+         */
+        WITH_NEXT_WRITE,
+        /**
+         * Creating the property is a change and is persisted like any other
+         */
+        IMMEDIATE,
+        /**
+         * The property is not persisted until it is set, so a changed default in the code takes effect
+         */
+        NEVER
+    }
+
+    /**
+     * A counter incremented by every change to a property, it never goes down so comparing two
+     * readings tells whether anything changed in between
+     *
+     * @return the number of changes made since the properties were loaded
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * The work done inside {@link #batch(Batch)}
+     */
+    @FunctionalInterface
+    public interface Batch {
+        void apply(UserPropertiesTransaction transaction);
+    }
+
+    /**
+     * Applies a group of changes as one.  The changes are collected by the {@link UserPropertiesTransaction}
+     * and applied once the batch returns, each key notifies its listeners once and the properties are then
+     * persisted with a single write, on the calling thread even when write behind is enabled.  If the batch
+     * throws nothing is applied.  If a value does not match the type of an existing property, or persisting
+     * fails, the changes are rolled back and the listeners are notified of the restored values.
+     *
+     * Batches are applied one at a time, changes made by other threads while a batch is applied are not
+     * part of it and are persisted as usual, or by the write of the batch when they are made while it is applied.
+     * A {@link #snapshot()} holds either all of a batch or none of it.
+     *
+     * @param batch the changes to apply
+     * @throws IOException if persisting the changes fails, they have been rolled back
+     * @throws ClassCastException if a value does not match the type of an existing property
+     */
+    public void batch(final Batch batch) throws IOException {
+        final UserPropertiesTransaction transaction = new UserPropertiesTransaction();
+        batch.apply(transaction);
+        final Map<String, Object> changes = transaction.getChanges();
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        synchronized (batchLock) {
+            for (Map.Entry<String, Object> change : changes.entrySet()) {
+                final UserProperty property = lookup(change.getKey());
+                final Object current = property != null ? property.getValue() : null;
+                if (current != null && !change.getValue().getClass().isInstance(current)) {
+                    throw new ClassCastException(String.format("User Property %s is a %s not a %s", change.getKey(),
+                            current.getClass().getSimpleName(), change.getValue().getClass().getSimpleName()));
+                }
+            }
+
+            final Map<String, Object> previous = new LinkedHashMap<>();
+            currentSnapshot();
+            batchThread = Thread.currentThread();
+            try {
+                batchSequence.incrementAndGet();
+                try {
+                    for (Map.Entry<String, Object> change : changes.entrySet()) {
+                        apply(change.getKey(), change.getValue(), previous);
+                    }
+                } finally {
+                    batchSequence.incrementAndGet();
+                }
+
+                persist();
+            } catch (IOException | RuntimeException e) {
+                log.error(String.format("Rolling back batch of %d User Properties, reason: %s", changes.size(), e.toString()), e);
+                batchSequence.incrementAndGet();
+                try {
+                    rollback(previous);
+                } finally {
+                    batchSequence.incrementAndGet();
+                }
+                throw e;
+            } finally {
+                batchThread = null;
+            }
+        }
+        if (cache != null && evictionDeferred) {
+            evictIfNeeded();
+        }
+    }
+
+    /**
+     * Applies one change of a batch, recording the value it replaces
+     */
+    private void apply(final String key, final Object value, final Map<String, Object> previous) {
+        UserProperty<Object> property = lookup(key);
+        if (property == null) {
+            final UserProperty<Object> created = attach(UserPropertyFactory.create(key, value));
+            property = putIfAbsent(key, created);
+            if (property == null) {
+                previous.put(key, created);
+                update(key);
+                inserted(key);
+                return;
+            }
+        }
+
+        final boolean evicted;
+        synchronized (property) {
+            evicted = evicted(key, property);
+            if (!evicted && !Objects.deepEquals(property.getValue(), value)) {
+                previous.put(key, property.getValue());
+                property.setValue(value);
+            }
+        }
+        if (evicted) {
+            apply(key, value, previous);
+        }
+    }
+
+    /**
+     * Restores the values replaced by a batch, a property created by the batch is
+     * recorded as itself and is removed
+     *
+     * @param previous the property name, or key, to the value it had before the batch
+     */
+    private void rollback(final Map<String, Object> previous) {
+        for (Map.Entry<String, Object> entry : previous.entrySet()) {
+            final UserProperty<Object> property = lookup(entry.getKey());
+            if (property == null) {
+                continue;
+            }
+            if (property == entry.getValue()) {
+                property.removeListener(propertyChangeListener);
+                properties.remove(entry.getKey(), property);
+                if (layer == null || !layer.contains(entry.getKey())) {
+                    names.remove(entry.getKey());
+                }
+                unsnapshotted.add(entry.getKey());
+                generation.incrementAndGet();
+                events.changed(entry.getKey());
+                continue;
+            }
+            synchronized (property) {
+                property.setValue(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Return the instance of the User Properties, it is created on first use
+     * and configured from System properties.
+     *
+     * @return the singleton instance
      */
     public static UserProperties getInstance() {
-        return instance;
+        return InstanceHolder.instance;
+    }
+
+    /**
+     * Create a {@link Builder} for an independent instance of the User Properties
+     *
+     * @return a new {@link Builder}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static class InstanceHolder {
+        private final static UserProperties instance = new UserProperties(false);
+    }
+
+    /**
+     * Builds independent instances of {@link UserProperties}.  Anything not
+     * supplied uses the same default as {@link #getInstance()}.
+     */
+    public static class Builder {
+        private UserPropertyPersistence persistence;
+        private UserPropertyCodec codec;
+        private ScheduledExecutorService writeExecutor;
+        private Supplier<Map<String, UserProperty>> mapSupplier;
+        private boolean concurrent = false;
+        private boolean writeBehind = false;
+        private boolean lazy = false;
+        private int cacheSize = 0;
+        private UserPropertiesMetrics metrics;
+        private DefaultsPolicy defaultsPolicy = DefaultsPolicy.WITH_NEXT_WRITE;
+        private long debounceMillis = 0;
+        private long maxStalenessMillis = DEFAULT_MAX_STALENESS_MILLIS;
+        private long refreshMillis = 0;
+        private Executor asyncExecutor;
+        private UserPropertiesDefaults layer;
+        private long checkpointMillis = DEFAULT_CHECKPOINT_MILLIS;
+
+        private Builder() {
+        }
+
+        /**
+         * When the persistence is a {@link UserPropertyJournal} only the modified properties are appended to it,
+         * and when it is a {@link SharedUserPropertyPersistence} each write first merges the changes other
+         * processes have made, see {@link UserProperties#refresh()}.
+         *
+         * @param persistence the {@link UserPropertyPersistence} used to load and store
+         *                    the properties, defaults to the class named by the
+         *                    <code>user.props.persistence</code> System property
+         * @return this {@link Builder}
+         */
+        public Builder persistence(final UserPropertyPersistence persistence) {
+            this.persistence = persistence;
+            return this;
+        }
+
+        /**
+         * A persisted copy in any of the known formats is still read, see {@link FormatDetectingUserPropertyCodec},
+         * and is rewritten with this codec as soon as it is loaded.
+         *
+         * @param codec the {@link UserPropertyCodec} used to read and write the
+         *              properties, defaults to a {@link JsonUserPropertyCodec}
+         * @return this {@link Builder}
+         */
+        public Builder codec(final UserPropertyCodec codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * Enables write behind using the supplied executor, which may be shared between
+         * instances and is not shut down by {@link UserProperties#shutdown()}.  Unless
+         * {@link #writeBehind(long, long, TimeUnit)} is also called the writes are scheduled
+         * immediately after each change.
+         *
+         * @param writeExecutor the executor the writes are scheduled on
+         * @return this {@link Builder}
+         */
+        public Builder writeExecutor(final ScheduledExecutorService writeExecutor) {
+            this.writeExecutor = writeExecutor;
+            this.writeBehind = true;
+            return this;
+        }
+
+        /**
+         * Enables write behind, coalescing changes into a single background write
+         *
+         * @param debounce how long the properties must be quiet before they are written
+         * @param maxStaleness the longest a change may wait before being written
+         * @param unit the {@link TimeUnit} of the debounce and max staleness
+         * @return this {@link Builder}
+         */
+        public Builder writeBehind(final long debounce, final long maxStaleness, final TimeUnit unit) {
+            this.debounceMillis = unit.toMillis(debounce);
+            this.maxStalenessMillis = unit.toMillis(maxStaleness);
+            this.writeBehind = true;
+            return this;
+        }
+
+        /**
+         * Makes the writes of {@link UserProperties#async()} on the supplied executor, which may be shared between
+         * instances.  A write rejected by the executor is made on the calling thread.  Implies
+         * {@link #concurrent(boolean)}.
+         *
+         * @param asyncExecutor the executor the asynchronous writes are made on
+         * @return this {@link Builder}
+         */
+        public Builder async(final Executor asyncExecutor) {
+            this.asyncExecutor = asyncExecutor;
+            this.concurrent = true;
+            return this;
+        }
+
+        /**
+         * Polls a {@link SharedUserPropertyPersistence} for changes made by other processes, see
+         * {@link UserProperties#refresh()}.  The checks run on the executor given to {@link #writeExecutor},
+         * if any, otherwise on a thread of their own.
+         *
+         * @param period the time between checks, 0 or less to only merge changes when writing
+         * @param unit the {@link TimeUnit} of the period
+         * @return this {@link Builder}
+         */
+        public Builder refresh(final long period, final TimeUnit unit) {
+            this.refreshMillis = unit.toMillis(period);
+            return this;
+        }
+
+        /**
+         * Sets how often the amounts summed by the {@link UserPropertyCounter counters} are added to their
+         * properties and persisted.  The checkpoints run on the executor given to {@link #writeExecutor}, if any,
+         * otherwise on a thread of their own started with the first counter.
+         *
+         * @param period the time between checkpoints, defaults to 1 second, 0 or less to only checkpoint the
+         *               counters on {@link UserProperties#flush()} and {@link UserProperties#shutdown()}
+         * @param unit the {@link TimeUnit} of the period
+         * @return this {@link Builder}
+         */
+        public Builder checkpoint(final long period, final TimeUnit unit) {
+            this.checkpointMillis = unit.toMillis(period);
+            return this;
+        }
+
+        /**
+         * @param lazy when <code>true</code> only an index of the persisted properties is built at
+         *             startup, each property is decoded the first time it is used.  Requires a codec
+         *             that implements {@link IndexedUserPropertyCodec} and a persistence layer that is
+         *             not a {@link UserPropertyJournal}, or a journal that is an
+         *             {@link IndexedUserPropertyJournal}, otherwise the properties are loaded as usual.
+         * @return this {@link Builder}
+         */
+        public Builder lazy(final boolean lazy) {
+            this.lazy = lazy;
+            return this;
+        }
+
+        /**
+         * Limits the number of live {@link UserProperty} objects, the least recently used properties above the limit
+         * are kept as plain values until they are next used.  A property returned by
+         * {@link UserProperties#property(String, Class)} is never evicted as it may be bound.  Implies
+         * {@link #concurrent(boolean)}, a map supplied to {@link #map(Supplier)} must be a {@link ConcurrentMap}.
+         *
+         * @param maximumSize the maximum number of live properties, 0 or less for no limit
+         * @return this {@link Builder}
+         */
+        public Builder cache(final int maximumSize) {
+            this.cacheSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * @param policy how properties created with their default value by the get methods are
+         *               persisted, defaults to {@link DefaultsPolicy#WITH_NEXT_WRITE}
+         * @return this {@link Builder}
+         */
+        public Builder defaults(final DefaultsPolicy policy) {
+            this.defaultsPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Resolves the properties the user has not set from read only defaults, such as those shipped in a
+         * classpath resource, see {@link UserPropertiesDefaults#load(String)}.  A get method finds the value in the
+         * defaults without creating a property, and a property is only written while its value differs from the
+         * default, so the persisted copy holds just the values the user changed.
+         *
+         * @param defaults the {@link UserPropertiesDefaults} beneath the properties, <code>null</code> for none
+         * @return this {@link Builder}
+         */
+        public Builder defaultsLayer(final UserPropertiesDefaults defaults) {
+            this.layer = defaults;
+            return this;
+        }
+
+        /**
+         * @param metrics receives the measurements of the instance, defaults to {@link UserPropertiesMetrics#NONE}
+         * @return this {@link Builder}
+         */
+        public Builder metrics(final UserPropertiesMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Reads of a concurrent instance never lock, a missing property is created atomically so every caller sees
+         * the same default, and a set swaps the value while holding only the monitor of that property.
+         *
+         * @param concurrent when <code>true</code> the properties are kept in a {@link ConcurrentHashMap}
+         *                   so the instance can be shared between threads, implied by write behind
+         * @return this {@link Builder}
+         */
+        public Builder concurrent(final boolean concurrent) {
+            this.concurrent = concurrent;
+            return this;
+        }
+
+        /**
+         * @param mapSupplier creates the {@link Map} holding the properties, defaults to
+         *                    a {@link HashMap}, or the {@link TreeMap} read by the codec
+         *                    when the properties were loaded.  The map must be thread safe
+         *                    for a concurrent or write behind instance.
+         * @return this {@link Builder}
+         */
+        public Builder map(final Supplier<Map<String, UserProperty>> mapSupplier) {
+            this.mapSupplier = mapSupplier;
+            return this;
+        }
+
+        /**
+         * @return a new {@link UserProperties} loaded from the persistence layer
+         */
+        public UserProperties build() {
+            return new UserProperties(this);
+        }
     }
 }
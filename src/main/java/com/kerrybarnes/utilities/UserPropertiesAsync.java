@@ -0,0 +1,213 @@
+package com.kerrybarnes.utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sets the values of a {@link UserProperties} without waiting for them to be persisted, see
+ * {@link UserProperties#async()}.  The value is changed, and the listeners notified, on the calling thread
+ * as usual, so a read straight afterwards sees it and changes of a key from one thread keep their order,
+ * but the write is made on an executor.  The returned {@link CompletableFuture} completes with the previous
+ * value once the change has been persisted, or exceptionally if persisting it failed.
+ *
+ * Writes are coalesced, changes made while a write is waiting to start are all persisted by that write, so
+ * at most one write per instance is queued however fast the changes are made.  With write behind the change
+ * is persisted by the background writer and the future completes when it has been written.
+ *
+ * The default executor is shared by every instance, it uses a virtual thread per write when the JDK supports
+ * them and otherwise a small bounded pool of daemon threads.  If the executor rejects a write because it is
+ * saturated the write is made on the calling thread, slowing the caller down to the speed of the persistence.
+ */
+public final class UserPropertiesAsync {
+    private static Logger log = LogManager.getLogger(UserPropertiesAsync.class);
+
+    public final static int DEFAULT_POOL_THREADS = 2;
+    public final static int DEFAULT_POOL_QUEUE = 256;
+
+    private final UserProperties properties;
+    private final Executor executor;
+    private final Object lock = new Object();
+    private CompletableFuture<Void> pending;
+
+    /**
+     * @param properties the properties to change
+     * @param executor the executor the writes are made on, <code>null</code> for the default executor
+     */
+    UserPropertiesAsync(final UserProperties properties, final Executor executor) {
+        this.properties = properties;
+        this.executor = executor != null ? executor : DefaultExecutorHolder.executor;
+    }
+
+    /**
+     * {@link UserProperties#setIntProperty(String, int)} without waiting for the change to be persisted
+     *
+     * @return a future completed with the previous value once the change is persisted
+     */
+    public CompletableFuture<Integer> setIntProperty(final String key, final int newValue) {
+        return submit(() -> properties.setIntProperty(key, newValue));
+    }
+
+    /**
+     * {@link UserProperties#setLongProperty(String, long)} without waiting for the change to be persisted
+     *
+     * @return a future completed with the previous value once the change is persisted
+     */
+    public CompletableFuture<Long> setLongProperty(final String key, final long newValue) {
+        return submit(() -> properties.setLongProperty(key, newValue));
+    }
+
+    /**
+     * {@link UserProperties#setDoubleProperty(String, double)} without waiting for the change to be persisted
+     *
+     * @return a future completed with the previous value once the change is persisted
+     */
+    public CompletableFuture<Double> setDoubleProperty(final String key, final double newValue) {
+        return submit(() -> properties.setDoubleProperty(key, newValue));
+    }
+
+    /**
+     * {@link UserProperties#setFloatProperty(String, float)} without waiting for the change to be persisted
+     *
+     * @return a future completed with the previous value once the change is persisted
+     */
+    public CompletableFuture<Float> setFloatProperty(final String key, final float newValue) {
+        return submit(() -> properties.setFloatProperty(key, newValue));
+    }
+
+    /**
+     * {@link UserProperties#setBooleanProperty(String, boolean)} without waiting for the change to be persisted
+     *
+     * @return a future completed with the previous value once the change is persisted
+     */
+    public CompletableFuture<Boolean> setBooleanProperty(final String key, final boolean newValue) {
+        return submit(() -> properties.setBooleanProperty(key, newValue));
+    }
+
+    /**
+     * {@link UserProperties#setProperty(String, String)} without waiting for the change to be persisted
+     *
+     * @return a future completed with the previous value once the change is persisted
+     */
+    public CompletableFuture<String> setProperty(final String key, final String value) {
+        return submit(() -> properties.setProperty(key, value));
+    }
+
+    /**
+     * {@link UserProperties#setBytesProperty(String, byte[])} without waiting for the change to be persisted
+     *
+     * @return a future completed with the previous value once the change is persisted
+     */
+    public CompletableFuture<byte[]> setBytesProperty(final String key, final byte[] value) {
+        return submit(() -> properties.setBytesProperty(key, value));
+    }
+
+    /**
+     * Persists any changes that have not been persisted yet
+     *
+     * @return a future completed once they have been persisted
+     */
+    public CompletableFuture<Void> flush() {
+        return persisted();
+    }
+
+    private <T> CompletableFuture<T> submit(final Supplier<T> change) {
+        final T previous;
+        try {
+            previous = properties.deferred(change);
+        } catch (RuntimeException e) {
+            final CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return persisted().thenApply(v -> previous);
+    }
+
+    /**
+     * Joins the write waiting to start, or queues a new one
+     */
+    private CompletableFuture<Void> persisted() {
+        final CompletableFuture<Void> writeBehind = properties.writeBehindPersisted();
+        if (writeBehind != null) {
+            return writeBehind;
+        }
+
+        final CompletableFuture<Void> future;
+        final boolean queue;
+        synchronized (lock) {
+            queue = pending == null;
+            if (queue) {
+                pending = new CompletableFuture<>();
+            }
+            future = pending;
+        }
+
+        if (queue) {
+            try {
+                executor.execute(() -> write(future));
+            } catch (RejectedExecutionException e) {
+                log.debug("User Properties write rejected by a saturated executor, writing on the calling thread");
+                write(future);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Persists every change made before the write started
+     */
+    private void write(final CompletableFuture<Void> future) {
+        synchronized (lock) {
+            if (pending == future) {
+                pending = null;
+            }
+        }
+        try {
+            properties.persistDeferred();
+            future.complete(null);
+        } catch (IOException | RuntimeException e) {
+            log.error("Error Updating User Properties File", e);
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Creates the default executor, a virtual thread per task when the JDK has them, otherwise a bounded pool
+     * that rejects writes once its queue is full
+     */
+    static Executor createDefaultExecutor() {
+        try {
+            final Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) virtual.invoke(null);
+        } catch (NoSuchMethodException e) {
+            log.debug("Virtual threads are not available, using a thread pool for User Properties writes");
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug(String.format("Unable to create a virtual thread executor, reason: %s", e.toString()));
+        }
+
+        final AtomicInteger threads = new AtomicInteger();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(DEFAULT_POOL_THREADS, DEFAULT_POOL_THREADS,
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(DEFAULT_POOL_QUEUE), r -> {
+                    final Thread thread = new Thread(r, "user-properties-async-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static class DefaultExecutorHolder {
+        private final static Executor executor = createDefaultExecutor();
+    }
+}
@@ -0,0 +1,342 @@
+package com.kerrybarnes.utilities;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the number of live {@link UserProperty} objects held by a {@link UserProperties}.  When there are more
+ * than the maximum, properties are evicted to their plain value and a new {@link UserProperty} is created for the
+ * value the next time the key is used.  The evicted values are packed into parallel arrays, an open addressed table
+ * of the keys with the type and bits of each primitive value, so an evicted Integer, Long, Double, Float or Boolean
+ * is neither boxed nor held by a map entry.  Only a String, <code>byte[]</code> or other object value is referenced.
+ *
+ * Eviction follows the CLOCK approximation of least recently used, every use of a key marks it as referenced and a
+ * hand sweeping the keys gives a referenced key a second chance by clearing the mark.  A key whose
+ * {@link UserProperty} was handed out by {@link UserProperties#property(String, Class)}, where it may have had
+ * listeners added or been bound, is pinned and never evicted.
+ */
+class UserPropertiesCache {
+    private final int maximumSize;
+    private final ColdValues cold = new ColdValues();
+    private final Set<String> referenced = ConcurrentHashMap.newKeySet();
+    private final Set<String> pinned = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    private final AtomicLong moves = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private Iterator<String> hand;
+
+    /**
+     * @param maximumSize the number of live properties above which properties are evicted
+     */
+    UserPropertiesCache(final int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Marks a key as recently used
+     */
+    void touch(final String key) {
+        if (!referenced.contains(key)) {
+            referenced.add(key);
+        }
+    }
+
+    /**
+     * Stops a key from being evicted
+     */
+    void pin(final String key) {
+        pinned.add(key);
+    }
+
+    /**
+     * @return <code>true</code> if the key has been evicted
+     */
+    boolean isEvicted(final String key) {
+        return cold.contains(key);
+    }
+
+    /**
+     * @return the value of an evicted key, boxed if it is primitive, or <code>null</code> if it has not been evicted
+     */
+    Object evicted(final String key) {
+        return cold.get(key);
+    }
+
+    /**
+     * Takes the value of an evicted key to give it a live {@link UserProperty} again, called while the live
+     * properties hold the key locked
+     *
+     * @return a new {@link UserProperty} with the value of the key, or <code>null</code> if it has not been evicted
+     */
+    UserProperty revive(final String key) {
+        final UserProperty property = cold.remove(key);
+        if (property != null) {
+            moves.incrementAndGet();
+        }
+        return property;
+    }
+
+    /**
+     * @return a counter that changes whenever a key moves between the live properties and the
+     *         evicted values, so a reader of both can tell it saw a consistent view
+     */
+    long moves() {
+        return moves.get();
+    }
+
+    long evictionCount() {
+        return evictions.get();
+    }
+
+    void clear() {
+        cold.clear();
+        referenced.clear();
+        pinned.clear();
+        moves.incrementAndGet();
+    }
+
+    /**
+     * Evicts properties until there are no more than the maximum, unless another thread is already evicting.  The
+     * monitor of each evicted property is taken, so this must not be called while holding a lock that a thread
+     * holding a property monitor may wait for.
+     *
+     * @param properties the live properties, must be safe to iterate while modified
+     * @param listener the listener to remove from an evicted {@link UserProperty}
+     * @param dirty keys with changes that have not been persisted, they are not evicted
+     */
+    void evictIfNeeded(final Map<String, UserProperty> properties, final UserProperty.Listener listener,
+                       final Set<String> dirty) {
+        if (properties.size() <= maximumSize || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            // two passes are enough for the hand to clear every mark and come back round
+            for (int scanned = 0, limit = 2 * properties.size(); properties.size() > maximumSize && scanned < limit; scanned++) {
+                if (hand == null || !hand.hasNext()) {
+                    hand = properties.keySet().iterator();
+                    if (!hand.hasNext()) {
+                        return;
+                    }
+                }
+
+                final String key = hand.next();
+                if (referenced.remove(key) || pinned.contains(key) || dirty.contains(key)) {
+                    continue;
+                }
+
+                final UserProperty property = properties.get(key);
+                if (property == null) {
+                    continue;
+                }
+                synchronized (property) {
+                    if (!cold.put(key, property)) {
+                        continue;
+                    }
+                    moves.incrementAndGet();
+                    property.removeListener(listener);
+                    properties.remove(key, property);
+                }
+                evictions.incrementAndGet();
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * The evicted values, a linear probing hash table of the keys with parallel arrays holding the type of each
+     * value and either its bits or a reference to it.  The table is small next to the live properties and only used
+     * when a key misses them, so a single lock guards it.
+     */
+    private static final class ColdValues {
+        private final static byte INT = 1;
+        private final static byte LONG = 2;
+        private final static byte DOUBLE = 3;
+        private final static byte FLOAT = 4;
+        private final static byte BOOLEAN = 5;
+        private final static byte OBJECT = 6;
+        private final static int INITIAL_CAPACITY = 16;
+
+        private String[] keys = new String[INITIAL_CAPACITY];
+        private byte[] types = new byte[INITIAL_CAPACITY];
+        private long[] bits = new long[INITIAL_CAPACITY];
+        private Object[] objects = new Object[INITIAL_CAPACITY];
+        private int size = 0;
+
+        synchronized boolean contains(final String key) {
+            return keys[find(key)] != null;
+        }
+
+        synchronized Object get(final String key) {
+            final int slot = find(key);
+            if (keys[slot] == null) {
+                return null;
+            }
+            switch (types[slot]) {
+                case INT:
+                    return (int) bits[slot];
+                case LONG:
+                    return bits[slot];
+                case DOUBLE:
+                    return Double.longBitsToDouble(bits[slot]);
+                case FLOAT:
+                    return Float.intBitsToFloat((int) bits[slot]);
+                case BOOLEAN:
+                    return bits[slot] != 0;
+                default:
+                    return objects[slot];
+            }
+        }
+
+        /**
+         * Packs the value of a property, called while holding its monitor
+         *
+         * @return <code>false</code> if the value is <code>null</code> and was not packed
+         */
+        synchronized boolean put(final String key, final UserProperty property) {
+            final byte type;
+            final long value;
+            Object object = null;
+            if (property instanceof UserProperty.OfInt) {
+                type = INT;
+                value = ((UserProperty.OfInt) property).get();
+            } else if (property instanceof UserProperty.OfLong) {
+                type = LONG;
+                value = ((UserProperty.OfLong) property).get();
+            } else if (property instanceof UserProperty.OfDouble) {
+                type = DOUBLE;
+                value = Double.doubleToRawLongBits(((UserProperty.OfDouble) property).get());
+            } else if (property instanceof UserProperty.OfFloat) {
+                type = FLOAT;
+                value = Float.floatToRawIntBits(((UserProperty.OfFloat) property).get());
+            } else if (property instanceof UserProperty.OfBoolean) {
+                type = BOOLEAN;
+                value = ((UserProperty.OfBoolean) property).get() ? 1 : 0;
+            } else {
+                object = property.getValue();
+                if (object == null) {
+                    return false;
+                }
+                type = OBJECT;
+                value = 0;
+            }
+
+            if ((size + 1) * 4 > keys.length * 3) {
+                resize(keys.length * 2);
+            }
+            final int slot = find(key);
+            if (keys[slot] == null) {
+                keys[slot] = key;
+                size++;
+            }
+            types[slot] = type;
+            bits[slot] = value;
+            objects[slot] = object;
+            return true;
+        }
+
+        /**
+         * Removes a key, creating a {@link UserProperty} for its value
+         *
+         * @return the {@link UserProperty}, or <code>null</code> if the key was not present
+         */
+        synchronized UserProperty remove(final String key) {
+            int slot = find(key);
+            if (keys[slot] == null) {
+                return null;
+            }
+            final UserProperty property;
+            switch (types[slot]) {
+                case INT:
+                    property = UserPropertyFactory.createInt(key, (int) bits[slot]);
+                    break;
+                case LONG:
+                    property = UserPropertyFactory.createLong(key, bits[slot]);
+                    break;
+                case DOUBLE:
+                    property = UserPropertyFactory.createDouble(key, Double.longBitsToDouble(bits[slot]));
+                    break;
+                case FLOAT:
+                    property = UserPropertyFactory.createFloat(key, Float.intBitsToFloat((int) bits[slot]));
+                    break;
+                case BOOLEAN:
+                    property = UserPropertyFactory.createBoolean(key, bits[slot] != 0);
+                    break;
+                default:
+                    property = UserPropertyFactory.create(key, objects[slot]);
+                    break;
+            }
+
+            // shift back the keys that probed past the freed slot, so no search stops short of them
+            final int mask = keys.length - 1;
+            for (int next = (slot + 1) & mask; keys[next] != null; next = (next + 1) & mask) {
+                final int home = home(keys[next], mask);
+                if (((next - home) & mask) >= ((next - slot) & mask)) {
+                    move(next, slot);
+                    slot = next;
+                }
+            }
+            keys[slot] = null;
+            objects[slot] = null;
+            size--;
+            return property;
+        }
+
+        synchronized void clear() {
+            keys = new String[INITIAL_CAPACITY];
+            types = new byte[INITIAL_CAPACITY];
+            bits = new long[INITIAL_CAPACITY];
+            objects = new Object[INITIAL_CAPACITY];
+            size = 0;
+        }
+
+        /**
+         * @return the slot holding the key, or the empty slot where it would be added
+         */
+        private int find(final String key) {
+            final int mask = keys.length - 1;
+            int slot = home(key, mask);
+            while (keys[slot] != null && !keys[slot].equals(key)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void move(final int from, final int to) {
+            keys[to] = keys[from];
+            types[to] = types[from];
+            bits[to] = bits[from];
+            objects[to] = objects[from];
+        }
+
+        private void resize(final int capacity) {
+            final String[] oldKeys = keys;
+            final byte[] oldTypes = types;
+            final long[] oldBits = bits;
+            final Object[] oldObjects = objects;
+            keys = new String[capacity];
+            types = new byte[capacity];
+            bits = new long[capacity];
+            objects = new Object[capacity];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    final int slot = find(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    types[slot] = oldTypes[i];
+                    bits[slot] = oldBits[i];
+                    objects[slot] = oldObjects[i];
+                }
+            }
+        }
+
+        private static int home(final String key, final int mask) {
+            final int hash = key.hashCode();
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+}
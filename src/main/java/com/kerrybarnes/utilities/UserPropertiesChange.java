@@ -0,0 +1,46 @@
+package com.kerrybarnes.utilities;
+
+import java.util.Collections;
+import java.util.NavigableSet;
+
+/**
+ * The properties that changed since a subscriber of {@link UserPropertiesEvents} was last notified.  However many
+ * times a property changed it is named once, and the values are those of a {@link UserPropertiesSnapshot} taken
+ * when the change is delivered, so every value seen together was held together.
+ */
+public final class UserPropertiesChange {
+    private final NavigableSet<String> keys;
+    private final UserPropertiesSnapshot snapshot;
+
+    UserPropertiesChange(final NavigableSet<String> keys, final UserPropertiesSnapshot snapshot) {
+        this.keys = Collections.unmodifiableNavigableSet(keys);
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @return the sorted names of the changed properties
+     */
+    public NavigableSet<String> getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return the snapshot of every property taken when the change was delivered
+     */
+    public UserPropertiesSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @param key the property name, or key
+     * @return the value of the property when the change was delivered, or <code>null</code> if it has been removed
+     */
+    public Object getValue(final String key) {
+        return snapshot.getValue(key);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UserPropertiesChange%s", keys);
+    }
+}
@@ -0,0 +1,80 @@
+package com.kerrybarnes.utilities;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically adds the amounts summed by the {@link UserPropertyCounter counters} of a {@link UserProperties} to
+ * their properties, see {@link UserProperties.Builder#checkpoint(long, TimeUnit)}.  A last checkpoint is made when
+ * it is closed, which is also done by the shared {@link UserPropertiesShutdownHook} so the counts are not lost on
+ * exit.  Neither the hook nor the scheduled task holds it strongly, so the checkpoints of properties that are
+ * dropped without being shut down stop once they are collected.
+ */
+class UserPropertiesCheckpoint implements UserPropertiesShutdownHook.Closeable {
+    private final Runnable checkpoint;
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private final ScheduledFuture<?> task;
+    private boolean closed = false;
+
+    /**
+     * The scheduled task, cancels itself once the checkpoint has been collected
+     */
+    private static class Task implements Runnable {
+        private final WeakReference<UserPropertiesCheckpoint> checkpoint;
+        private volatile ScheduledFuture<?> future;
+
+        private Task(final UserPropertiesCheckpoint checkpoint) {
+            this.checkpoint = new WeakReference<>(checkpoint);
+        }
+
+        @Override
+        public void run() {
+            final UserPropertiesCheckpoint target = checkpoint.get();
+            if (target != null) {
+                target.checkpoint.run();
+            } else if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * @param checkpoint adds the counters to their properties and persists them
+     * @param executor the executor used to schedule the checkpoints, when <code>null</code> a
+     *                 single daemon thread is created and stopped by {@link #close()}
+     * @param periodMillis the time between the end of one checkpoint and the start of the next
+     */
+    UserPropertiesCheckpoint(final Runnable checkpoint, final ScheduledExecutorService executor,
+                             final long periodMillis) {
+        this.checkpoint = checkpoint;
+        this.ownsExecutor = executor == null;
+        this.executor = ownsExecutor ? UserPropertiesWriteBehind.createExecutor("user-properties-checkpoint") : executor;
+        final Task scheduled = new Task(this);
+        task = this.executor.scheduleWithFixedDelay(scheduled, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        scheduled.future = task;
+        UserPropertiesShutdownHook.add(this);
+    }
+
+    /**
+     * Stops the checkpoints after making a last one, a shared executor is left running
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        task.cancel(false);
+        checkpoint.run();
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+        UserPropertiesShutdownHook.remove(this);
+    }
+}
@@ -0,0 +1,186 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.json.JsonUserPropertyCodec;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The read only defaults shipped with an application, beneath the properties of the user, see
+ * {@link UserProperties.Builder#defaultsLayer(UserPropertiesDefaults)}.  A property the user has not set resolves to
+ * its value here without a {@link UserProperty} being created or anything being written, so only the values that
+ * differ from the defaults are held by the {@link UserProperties} and persisted.
+ *
+ * The defaults are loaded once, usually from a classpath resource in any format the {@link UserPropertyCodec}s
+ * read, and kept as a sorted array of the names with a parallel array of the plain values, so the names under a
+ * prefix are a range.  An open addressed table of positions, hashed on the names, finds a name without a search
+ * or any allocation.
+ */
+public final class UserPropertiesDefaults {
+    private static Logger log = LogManager.getLogger(UserPropertiesDefaults.class);
+
+    private final String[] keys;
+    private final Object[] values;
+    private final int[] table;
+
+    private UserPropertiesDefaults(final Map<String, ?> defaults) {
+        final TreeMap<String, Object> sorted = new TreeMap<>();
+        for (Map.Entry<String, ?> entry : defaults.entrySet()) {
+            final Object value = entry.getValue() instanceof UserProperty
+                    ? ((UserProperty) entry.getValue()).getValue() : entry.getValue();
+            if (value != null) {
+                sorted.put(entry.getKey(), value);
+            }
+        }
+        keys = sorted.keySet().toArray(new String[0]);
+        values = sorted.values().toArray();
+
+        // at most half full so a probe finds an empty slot quickly, each slot holds a position plus one
+        int capacity = 2;
+        while (capacity < keys.length * 2) {
+            capacity <<= 1;
+        }
+        table = new int[capacity];
+        for (int i = 0; i < keys.length; i++) {
+            int slot = slot(keys[i]);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & (table.length - 1);
+            }
+            table[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Loads the defaults from a classpath resource in any of the formats a {@link FormatDetectingUserPropertyCodec}
+     * reads
+     *
+     * @param resource the absolute name of the resource, for example <code>/defaults.json</code>
+     * @return the {@link UserPropertiesDefaults} read from the resource
+     * @throws RuntimeException if the resource does not exist or cannot be read
+     */
+    public static UserPropertiesDefaults load(final String resource) {
+        return load(resource, new FormatDetectingUserPropertyCodec(new JsonUserPropertyCodec()));
+    }
+
+    /**
+     * Loads the defaults from a classpath resource
+     *
+     * @param resource the absolute name of the resource, for example <code>/defaults.json</code>
+     * @param codec the {@link UserPropertyCodec} to read the resource with
+     * @return the {@link UserPropertiesDefaults} read from the resource
+     * @throws RuntimeException if the resource does not exist or cannot be read
+     */
+    public static UserPropertiesDefaults load(final String resource, final UserPropertyCodec codec) {
+        final long start = System.nanoTime();
+        try (InputStream in = UserPropertiesDefaults.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Resource not found");
+            }
+            final UserPropertiesDefaults defaults = new UserPropertiesDefaults(codec.read(in));
+            log.debug(String.format("Loaded %d User Property defaults from %s in %d ms", defaults.size(), resource,
+                    (System.nanoTime() - start) / 1000000));
+            return defaults;
+        } catch (IOException e) {
+            final String msg = String.format("Error Loading User Property defaults %s, reason: %s", resource, e.toString());
+            log.error(msg, e);
+            throw new RuntimeException(msg, e);
+        }
+    }
+
+    /**
+     * Creates the defaults from the values in a {@link Map}, which is copied
+     *
+     * @param defaults the default value of each property name, or key, the values may also be {@link UserProperty}
+     *                 objects as a {@link UserPropertyCodec} reads them
+     * @return the {@link UserPropertiesDefaults} of the values
+     */
+    public static UserPropertiesDefaults of(final Map<String, ?> defaults) {
+        return new UserPropertiesDefaults(defaults);
+    }
+
+    private int slot(final String key) {
+        final int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (table.length - 1);
+    }
+
+    private int position(final String key) {
+        for (int slot = slot(key); table[slot] != 0; slot = (slot + 1) & (table.length - 1)) {
+            final int position = table[slot] - 1;
+            if (keys[position].equals(key)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of default properties
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @param key the property name, or key
+     * @return <code>true</code> if the property has a default
+     */
+    public boolean contains(final String key) {
+        return position(key) >= 0;
+    }
+
+    /**
+     * @param key the property name, or key
+     * @return the default value of the property, or <code>null</code> if it has none.  A binary value is
+     *         the array held by the defaults and must not be modified.
+     */
+    public Object getValue(final String key) {
+        final int position = position(key);
+        return position >= 0 ? values[position] : null;
+    }
+
+    /**
+     * @param key the property name, or key
+     * @param value a value of the property
+     * @return <code>true</code> if the property has a default and it is equal to the value
+     */
+    boolean isDefault(final String key, final Object value) {
+        final int position = position(key);
+        return position >= 0 && Objects.deepEquals(values[position], value);
+    }
+
+    /**
+     * @return {@link Set Set&lt;String&gt;} of the names of the default properties, in order
+     */
+    public Set<String> propertyNames() {
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return Arrays.asList(keys).iterator();
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+
+            @Override
+            public boolean contains(final Object o) {
+                return o instanceof String && position((String) o) >= 0;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UserPropertiesDefaults[%d properties]", keys.length);
+    }
+}
@@ -0,0 +1,218 @@
+package com.kerrybarnes.utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Delivers the changes of a {@link UserProperties} to subscribers, see {@link UserProperties#events()}.  Rather
+ * than each subscriber adding a listener to every {@link UserProperty} it is interested in, it
+ * subscribes once to a prefix of the property names and is handed a {@link UserPropertiesChange} naming the
+ * properties that changed.
+ *
+ * A change only records the name in the pending set of each matching subscriber, the subscriber is notified on its
+ * own executor.  Changes made before the notification runs, or within the tick of the subscription, are coalesced
+ * into it, a property changed many times is named once.  At most one notification per subscriber is queued at a
+ * time and notifications of a subscriber never overlap, so a bulk change such as a merge from another process
+ * becomes a single notification rather than one per property.  Delivering on the JavaFX application thread, see
+ * <code>com.kerrybarnes.utilities.fx.UserPropertiesFx</code> in the utilities-fx artifact, makes a single
+ * <code>Platform.runLater</code> call per notification.
+ *
+ * The values of a change are read when it is delivered, so a subscriber of an instance that is not concurrent, see
+ * {@link UserProperties.Builder#concurrent(boolean)}, must be notified on the thread that changes the properties.
+ */
+public final class UserPropertiesEvents {
+    private static Logger log = LogManager.getLogger(UserPropertiesEvents.class);
+
+    private final static Subscriber[] NONE = new Subscriber[0];
+
+    private final UserProperties properties;
+    private final Object lock = new Object();
+    private volatile Subscriber[] subscribers = NONE;
+
+    /**
+     * A subscription to the changes of the properties, closing it stops the notifications.  A notification
+     * already running completes.
+     */
+    public interface Subscription extends Closeable {
+        @Override
+        void close();
+    }
+
+    UserPropertiesEvents(final UserProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Subscribes to the changes of the properties whose names start with a prefix, coalescing the changes made
+     * until the executor runs the notification
+     *
+     * @param prefix the start of the property names, for example <code>ui.window.</code>, empty for every property
+     * @param executor the executor the subscriber is notified on
+     * @param subscriber is notified of the changed properties
+     * @return the {@link Subscription}
+     */
+    public Subscription subscribe(final String prefix, final Executor executor,
+                                  final Consumer<UserPropertiesChange> subscriber) {
+        return subscribe(prefix, 0, TimeUnit.MILLISECONDS, executor, subscriber);
+    }
+
+    /**
+     * Subscribes to the changes of the properties whose names start with a prefix, coalescing the changes made
+     * within a tick of the first
+     *
+     * @param prefix the start of the property names, for example <code>ui.window.</code>, empty for every property
+     * @param tick how long the changes are collected for before the notification is handed to the executor
+     * @param unit the {@link TimeUnit} of the tick
+     * @param executor the executor the subscriber is notified on
+     * @param subscriber is notified of the changed properties
+     * @return the {@link Subscription}
+     */
+    public Subscription subscribe(final String prefix, final long tick, final TimeUnit unit, final Executor executor,
+                                  final Consumer<UserPropertiesChange> subscriber) {
+        final Subscriber added = new Subscriber(prefix, unit.toMillis(tick), executor, subscriber);
+        synchronized (lock) {
+            final Subscriber[] current = subscribers;
+            final Subscriber[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = added;
+            subscribers = next;
+        }
+        return added;
+    }
+
+    /**
+     * Records a changed property for the matching subscribers, called on the thread that changed it.  Nothing is
+     * allocated when there are no subscribers.
+     *
+     * @param key the property name, or key
+     */
+    void changed(final String key) {
+        for (Subscriber subscriber : subscribers) {
+            if (key.startsWith(subscriber.prefix)) {
+                subscriber.changed(key);
+            }
+        }
+    }
+
+    private void remove(final Subscriber removed) {
+        synchronized (lock) {
+            final Subscriber[] current = subscribers;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == removed) {
+                    final Subscriber[] next = new Subscriber[current.length - 1];
+                    System.arraycopy(current, 0, next, 0, i);
+                    System.arraycopy(current, i + 1, next, i, next.length - i);
+                    subscribers = next;
+                    return;
+                }
+            }
+        }
+    }
+
+    private final class Subscriber implements Subscription, Runnable {
+        private final String prefix;
+        private final long tickMillis;
+        private final Executor executor;
+        private final Consumer<UserPropertiesChange> subscriber;
+        private final Set<String> pending = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private volatile boolean closed = false;
+
+        Subscriber(final String prefix, final long tickMillis, final Executor executor,
+                   final Consumer<UserPropertiesChange> subscriber) {
+            this.prefix = prefix;
+            this.tickMillis = tickMillis;
+            this.executor = executor;
+            this.subscriber = subscriber;
+        }
+
+        void changed(final String key) {
+            pending.add(key);
+            if (scheduled.compareAndSet(false, true)) {
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (tickMillis > 0) {
+                TickHolder.ticks.schedule(this::dispatch, tickMillis, TimeUnit.MILLISECONDS);
+            } else {
+                dispatch();
+            }
+        }
+
+        private void dispatch() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                log.warn(String.format("User Properties change notification for %s rejected, reason: %s",
+                        prefix, e.toString()));
+                scheduled.set(false);
+            }
+        }
+
+        /**
+         * Notifies the subscriber of the pending changes, and queues the next notification if more
+         * changes were made meanwhile
+         */
+        @Override
+        public void run() {
+            final NavigableSet<String> keys = new TreeSet<>();
+            for (Iterator<String> names = pending.iterator(); names.hasNext(); ) {
+                keys.add(names.next());
+                names.remove();
+            }
+
+            if (!closed && !keys.isEmpty()) {
+                try {
+                    subscriber.accept(new UserPropertiesChange(keys, properties.snapshot()));
+                } catch (RuntimeException e) {
+                    log.error(String.format("Error notifying User Properties subscriber of %s", keys), e);
+                }
+            }
+
+            scheduled.set(false);
+            if (!closed && !pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+                schedule();
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            remove(this);
+            pending.clear();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Subscription[%s]", prefix);
+        }
+    }
+
+    /**
+     * The single daemon thread shared by every subscription with a tick, it only hands the notifications
+     * to their executors
+     */
+    private static class TickHolder {
+        private final static ScheduledExecutorService ticks = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "user-properties-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,118 @@
+package com.kerrybarnes.utilities;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A sorted index of the property names, or keys, in a persisted copy of the properties and the offset of each
+ * property within it, created by an {@link IndexedUserPropertyCodec}.  A lazy {@link UserProperties} holds the
+ * index rather than the properties and decodes each {@link UserProperty} the first time it is used.
+ *
+ * The index is immutable, so it may be searched from any thread.
+ */
+public final class UserPropertiesIndex {
+    /**
+     * Decodes the property stored at an offset of the persisted copy
+     */
+    @FunctionalInterface
+    public interface Decoder {
+        UserProperty decode(byte[] data, int offset, String key) throws IOException;
+    }
+
+    private final byte[] data;
+    private final String[] keys;
+    private final int[] offsets;
+    private final Decoder decoder;
+
+    /**
+     * The keys are sorted by the index, when a key appears more than once the last offset is kept
+     * to match the result of reading the whole copy
+     *
+     * @param data the persisted copy of the properties, or <code>null</code> when the decoder reads them
+     *             from elsewhere
+     * @param keys the property names, or keys, in the order they appear in the data
+     * @param offsets the offset of each property, parallel to the keys
+     * @param count the number of keys and offsets used
+     * @param decoder decodes a property from its offset
+     */
+    public UserPropertiesIndex(final byte[] data, final String[] keys, final int[] offsets,
+                               final int count, final Decoder decoder) {
+        this.data = data;
+        this.decoder = decoder;
+
+        boolean sorted = true;
+        for (int i = 1; i < count && sorted; i++) {
+            sorted = keys[i - 1].compareTo(keys[i]) < 0;
+        }
+        if (sorted) {
+            // the codecs write a sorted map, so this is the usual case
+            this.keys = Arrays.copyOf(keys, count);
+            this.offsets = Arrays.copyOf(offsets, count);
+            return;
+        }
+
+        final Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing((Integer i) -> keys[i]).thenComparing(i -> -i));
+
+        int size = 0;
+        final String[] sortedKeys = new String[count];
+        final int[] sortedOffsets = new int[count];
+        for (Integer i : order) {
+            if (size > 0 && sortedKeys[size - 1].equals(keys[i])) {
+                continue;
+            }
+            sortedKeys[size] = keys[i];
+            sortedOffsets[size++] = offsets[i];
+        }
+        this.keys = Arrays.copyOf(sortedKeys, size);
+        this.offsets = Arrays.copyOf(sortedOffsets, size);
+    }
+
+    /**
+     * @return the number of properties in the index
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return the sorted property names, or keys
+     */
+    public List<String> keys() {
+        return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    /**
+     * @param key the property name, or key
+     * @return the position of the key in the index, or a negative value if it is not present
+     */
+    public int find(final String key) {
+        return Arrays.binarySearch(keys, key);
+    }
+
+    /**
+     * @param position the position of the key in the index
+     * @return the property name, or key, at the position
+     */
+    public String key(final int position) {
+        return keys[position];
+    }
+
+    /**
+     * Decodes the property at a position in the index, each call returns a new {@link UserProperty}
+     *
+     * @param position the position of the key in the index
+     * @return the decoded {@link UserProperty}
+     * @throws IOException if the property cannot be decoded
+     */
+    public UserProperty decode(final int position) throws IOException {
+        return decoder.decode(data, offsets[position], keys[position]);
+    }
+}
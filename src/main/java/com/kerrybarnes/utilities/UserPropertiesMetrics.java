@@ -0,0 +1,82 @@
+package com.kerrybarnes.utilities;
+
+/**
+ * Receives the measurements of a {@link UserProperties}, see
+ * {@link UserProperties.Builder#metrics(UserPropertiesMetrics)}.  Every method has an empty default so an
+ * implementation only overrides what it records.  The methods are called on the hot paths, with primitive arguments
+ * so nothing is allocated, an implementation should be as cheap.  When the metrics are {@link #NONE} the timings are
+ * not taken at all.
+ *
+ * See {@link com.kerrybarnes.utilities.metrics.JmxUserPropertiesMetrics} for an implementation that publishes the
+ * measurements as a JMX MBean.
+ */
+public interface UserPropertiesMetrics {
+    /**
+     * Records nothing, the default
+     */
+    UserPropertiesMetrics NONE = new UserPropertiesMetrics() {
+    };
+
+    /**
+     * The types of property measured
+     */
+    enum Type {
+        INTEGER, DOUBLE, STRING, LONG, FLOAT, BOOLEAN, BYTES
+    }
+
+    /**
+     * A property was read through one of the get methods
+     */
+    default void read(Type type) {
+    }
+
+    /**
+     * A property was written through one of the set methods
+     */
+    default void written(Type type) {
+    }
+
+    /**
+     * A get method did not find the property and created it with the default value
+     */
+    default void created(Type type) {
+    }
+
+    /**
+     * The properties changed and need persisting, several changes may be coalesced into one flush
+     */
+    default void changed() {
+    }
+
+    /**
+     * The properties were persisted
+     */
+    default void flushed() {
+    }
+
+    /**
+     * The properties were encoded and written to the persistence stream
+     *
+     * @param nanos the time taken
+     * @param bytes the number of bytes written, or -1 if the persistence layer wrote them itself
+     */
+    default void serialized(long nanos, long bytes) {
+    }
+
+    /**
+     * The persistence stream was closed, which is where the persistence layer syncs or renames the file
+     *
+     * @param nanos the time taken
+     */
+    default void streamClosed(long nanos) {
+    }
+
+    /**
+     * The persisted properties were loaded
+     *
+     * @param nanos the time taken
+     * @param properties the number of properties loaded, or indexed when lazy
+     */
+    default void loaded(long nanos, int properties) {
+    }
+}
@@ -0,0 +1,47 @@
+package com.kerrybarnes.utilities;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically checks a {@link SharedUserPropertyPersistence} for changes made by other processes, see
+ * {@link UserProperties#refresh()}.  Each check only compares the stamp of the persisted copy, so polling
+ * costs little while nothing changes.
+ */
+class UserPropertiesRefresher {
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private final ScheduledFuture<?> task;
+
+    /**
+     * @param refresh the check for changes
+     * @param executor the executor used to schedule the checks, when <code>null</code> a
+     *                 single daemon thread is created and stopped by {@link #close()}
+     * @param periodMillis the time between the end of one check and the start of the next
+     */
+    UserPropertiesRefresher(final Runnable refresh, final ScheduledExecutorService executor, final long periodMillis) {
+        this.ownsExecutor = executor == null;
+        if (ownsExecutor) {
+            this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "user-properties-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.executor = executor;
+        }
+        task = this.executor.scheduleWithFixedDelay(refresh, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the checks, a shared executor is left running
+     */
+    void close() {
+        task.cancel(false);
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+}
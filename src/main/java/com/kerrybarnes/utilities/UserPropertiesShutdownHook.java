@@ -0,0 +1,65 @@
+package com.kerrybarnes.utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * The one shutdown hook shared by every open {@link UserPropertiesWriteBehind} and {@link UserPropertiesCheckpoint},
+ * which closes them on exit so their changes are not lost.  The open instances are only weakly held, so one that is
+ * dropped without being closed can still be collected rather than being kept alive by the {@link Runtime}.
+ */
+final class UserPropertiesShutdownHook {
+    private static Logger log = LogManager.getLogger(UserPropertiesShutdownHook.class);
+
+    /**
+     * Something closed by the hook, closing it again must do nothing
+     */
+    interface Closeable {
+        void close();
+    }
+
+    private static final Set<Closeable> open = Collections.newSetFromMap(new WeakHashMap<>());
+    private static boolean registered = false;
+
+    private UserPropertiesShutdownHook() {
+    }
+
+    /**
+     * @param closeable closed by the hook unless it is removed first
+     */
+    static synchronized void add(final Closeable closeable) {
+        if (!registered) {
+            Runtime.getRuntime().addShutdownHook(new Thread(UserPropertiesShutdownHook::run, "user-properties-shutdown"));
+            registered = true;
+        }
+        open.add(closeable);
+    }
+
+    /**
+     * @param closeable no longer closed by the hook
+     */
+    static synchronized void remove(final Closeable closeable) {
+        open.remove(closeable);
+    }
+
+    private static void run() {
+        final List<Closeable> closing;
+        synchronized (UserPropertiesShutdownHook.class) {
+            closing = new ArrayList<>(open);
+            open.clear();
+        }
+        for (Closeable closeable : closing) {
+            try {
+                closeable.close();
+            } catch (RuntimeException e) {
+                log.error("Error Closing User Properties on shutdown", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package com.kerrybarnes.utilities;
+
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable copy of a {@link UserProperties} as it was at one point in time, see {@link UserProperties#snapshot()}.
+ * The names are held in sorted chunks, of up to {@value #MAX_CHUNK_SIZE} names each, with parallel chunks of the
+ * plain values, so a snapshot can be searched, iterated and written from any thread while the properties continue
+ * to change, without locking and without ever throwing a {@link java.util.ConcurrentModificationException}.
+ *
+ * A new snapshot is only made after the properties have changed, and then shares every chunk of the previous one
+ * that no changed key falls in.  Only the chunks holding the keys changed since are copied, along with the arrays
+ * referring to the chunks, so persisting k changes to n properties copies about k * {@value #CHUNK_SIZE} names and
+ * n / {@value #CHUNK_SIZE} chunk references rather than all n.  A chunk left small by removals is not merged with
+ * its neighbours.  The values are the ones the properties held, a binary value is the array the property held and
+ * must not be modified.
+ */
+public final class UserPropertiesSnapshot {
+    private final static int CHUNK_SIZE = 64;
+    private final static int MAX_CHUNK_SIZE = 2 * CHUNK_SIZE;
+    private final static String[] NO_KEYS = new String[0];
+    private final static Object[] NO_VALUES = new Object[0];
+
+    private final String[][] keys;
+    private final Object[][] values;
+    private final int[] starts;
+    private final long version;
+
+    /**
+     * @param keys the sorted property names, or keys
+     * @param values the value of each key, parallel to the keys
+     * @param version the {@link UserProperties#getVersion() version} the snapshot includes every change up to
+     */
+    UserPropertiesSnapshot(final String[] keys, final Object[] values, final long version) {
+        final List<String[]> keyChunks = new ArrayList<>();
+        final List<Object[]> valueChunks = new ArrayList<>();
+        split(keys, values, keys.length, keyChunks, valueChunks);
+        this.keys = keyChunks.toArray(new String[0][]);
+        this.values = valueChunks.toArray(new Object[0][]);
+        this.starts = starts(this.keys);
+        this.version = version;
+    }
+
+    private UserPropertiesSnapshot(final String[][] keys, final Object[][] values, final long version) {
+        this.keys = keys;
+        this.values = values;
+        this.starts = starts(keys);
+        this.version = version;
+    }
+
+    /**
+     * @return the position of the first key of each chunk, followed by the number of keys
+     */
+    private static int[] starts(final String[][] keys) {
+        final int[] starts = new int[keys.length + 1];
+        for (int chunk = 0; chunk < keys.length; chunk++) {
+            starts[chunk + 1] = starts[chunk] + keys[chunk].length;
+        }
+        return starts;
+    }
+
+    /**
+     * Adds the first count keys and values as chunks, a single chunk unless there are more than
+     * {@value #MAX_CHUNK_SIZE}, otherwise about {@value #CHUNK_SIZE} each
+     */
+    private static void split(final String[] keys, final Object[] values, final int count,
+                              final List<String[]> keyChunks, final List<Object[]> valueChunks) {
+        final int chunks = count <= MAX_CHUNK_SIZE ? 1 : (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        for (int chunk = 0; chunk < chunks && count > 0; chunk++) {
+            final int from = (int) ((long) count * chunk / chunks);
+            final int to = (int) ((long) count * (chunk + 1) / chunks);
+            keyChunks.add(Arrays.copyOfRange(keys, from, to));
+            valueChunks.add(Arrays.copyOfRange(values, from, to));
+        }
+    }
+
+    /**
+     * A copy of this snapshot with the values of some keys replaced.  The changed keys are grouped by the chunk they
+     * fall in, each of those chunks is merged with its changes in a single pass, every other chunk is shared.
+     *
+     * @param changed the changed property names, or keys, sorted
+     * @param current the value of each changed key now, parallel to them, <code>null</code> if it was removed
+     * @param version the version of the new snapshot
+     * @return the new snapshot, this one is unchanged
+     */
+    UserPropertiesSnapshot with(final List<String> changed, final Object[] current, final long version) {
+        final List<String[]> mergedKeys = new ArrayList<>(keys.length + 1);
+        final List<Object[]> mergedValues = new ArrayList<>(keys.length + 1);
+        int chunk = 0;
+        int from = 0;
+        while (from < changed.size()) {
+            // a key before the first chunk falls in it
+            final int target = Math.max(0, floorChunk(changed.get(from)));
+            for (; chunk < target; chunk++) {
+                mergedKeys.add(keys[chunk]);
+                mergedValues.add(values[chunk]);
+            }
+
+            final String next = target + 1 < keys.length ? keys[target + 1][0] : null;
+            int to = from + 1;
+            while (to < changed.size() && (next == null || changed.get(to).compareTo(next) < 0)) {
+                to++;
+            }
+            merge(target < keys.length ? keys[target] : NO_KEYS, target < keys.length ? values[target] : NO_VALUES,
+                    changed, current, from, to, mergedKeys, mergedValues);
+            chunk = target + 1;
+            from = to;
+        }
+        for (; chunk < keys.length; chunk++) {
+            mergedKeys.add(keys[chunk]);
+            mergedValues.add(values[chunk]);
+        }
+        return new UserPropertiesSnapshot(mergedKeys.toArray(new String[0][]), mergedValues.toArray(new Object[0][]),
+                version);
+    }
+
+    /**
+     * Merges a chunk with the changes from one position up to another, adding the result as chunks
+     */
+    private static void merge(final String[] chunkKeys, final Object[] chunkValues, final List<String> changed,
+                              final Object[] current, final int from, final int to,
+                              final List<String[]> keyChunks, final List<Object[]> valueChunks) {
+        final String[] mergedKeys = new String[chunkKeys.length + to - from];
+        final Object[] mergedValues = new Object[mergedKeys.length];
+        int count = 0;
+        int i = 0;
+        int j = from;
+        while (i < chunkKeys.length || j < to) {
+            final int order = i == chunkKeys.length ? 1 : j == to ? -1 : chunkKeys[i].compareTo(changed.get(j));
+            if (order < 0) {
+                mergedKeys[count] = chunkKeys[i];
+                mergedValues[count++] = chunkValues[i++];
+                continue;
+            }
+            if (current[j] != null) {
+                mergedKeys[count] = changed.get(j);
+                mergedValues[count++] = current[j];
+            }
+            if (order == 0) {
+                i++;
+            }
+            j++;
+        }
+        split(mergedKeys, mergedValues, count, keyChunks, valueChunks);
+    }
+
+    /**
+     * @return the last chunk whose first key is not after the key, or -1 if there is none
+     */
+    private int floorChunk(final String key) {
+        int low = 0;
+        int high = keys.length - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (keys[middle][0].compareTo(key) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * @return the position of the key, or <code>(-(insertion point) - 1)</code> as {@link Arrays#binarySearch} does
+     */
+    private int search(final String key) {
+        final int chunk = floorChunk(key);
+        if (chunk < 0) {
+            return -1;
+        }
+        final int position = Arrays.binarySearch(keys[chunk], key);
+        return position >= 0 ? starts[chunk] + position : position - starts[chunk];
+    }
+
+    /**
+     * @return the {@link UserProperties#getVersion() version} of the properties, every change counted by it is
+     *         included in the snapshot
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the number of properties
+     */
+    public int size() {
+        return starts[keys.length];
+    }
+
+    /**
+     * @param key the property name, or key
+     * @return <code>true</code> if the property existed
+     */
+    public boolean contains(final String key) {
+        return search(key) >= 0;
+    }
+
+    /**
+     * @param key the property name, or key
+     * @return the value of the property, or <code>null</code> if it did not exist
+     */
+    public Object getValue(final String key) {
+        final int chunk = floorChunk(key);
+        final int position = chunk >= 0 ? Arrays.binarySearch(keys[chunk], key) : -1;
+        return position >= 0 ? values[chunk][position] : null;
+    }
+
+    /**
+     * @param key the property name, or key
+     * @return the {@link Class} of the property, or <code>null</code> if it did not exist
+     */
+    public Class<?> getType(final String key) {
+        final Object value = getValue(key);
+        return value != null ? value.getClass() : null;
+    }
+
+    /**
+     * @param key the property name, or key
+     * @param defaultValue the value returned if the property did not exist
+     * @return the {@link Integer int} value of the property, or the default value
+     * @throws ClassCastException if the property is not an {@link Integer}
+     */
+    public int getIntProperty(final String key, final int defaultValue) {
+        final Object value = getValue(key);
+        return value != null ? (Integer) value : defaultValue;
+    }
+
+    /**
+     * @param key the property name, or key
+     * @param defaultValue the value returned if the property did not exist
+     * @return the {@link Long long} value of the property, or the default value
+     * @throws ClassCastException if the property is not a {@link Long}
+     */
+    public long getLongProperty(final String key, final long defaultValue) {
+        final Object value = getValue(key);
+        return value != null ? (Long) value : defaultValue;
+    }
+
+    /**
+     * @param key the property name, or key
+     * @param defaultValue the value returned if the property did not exist
+     * @return the {@link Double double} value of the property, or the default value
+     * @throws ClassCastException if the property is not a {@link Double}
+     */
+    public double getDoubleProperty(final String key, final double defaultValue) {
+        final Object value = getValue(key);
+        return value != null ? (Double) value : defaultValue;
+    }
+
+    /**
+     * @param key the property name, or key
+     * @param defaultValue the value returned if the property did not exist
+     * @return the {@link Float float} value of the property, or the default value
+     * @throws ClassCastException if the property is not a {@link Float}
+     */
+    public float getFloatProperty(final String key, final float defaultValue) {
+        final Object value = getValue(key);
+        return value != null ? (Float) value : defaultValue;
+    }
+
+    /**
+     * @param key the property name, or key
+     * @param defaultValue the value returned if the property did not exist
+     * @return the {@link Boolean boolean} value of the property, or the default value
+     * @throws ClassCastException if the property is not a {@link Boolean}
+     */
+    public boolean getBooleanProperty(final String key, final boolean defaultValue) {
+        final Object value = getValue(key);
+        return value != null ? (Boolean) value : defaultValue;
+    }
+
+    /**
+     * @param key the property name, or key
+     * @return the {@link String} value of the property, or <code>null</code> if it did not exist
+     * @throws ClassCastException if the property is not a {@link String}
+     */
+    public String getProperty(final String key) {
+        return (String) getValue(key);
+    }
+
+    /**
+     * @param key the property name, or key
+     * @param defaultValue the value returned if the property did not exist
+     * @return the {@link String} value of the property, or the default value
+     * @throws ClassCastException if the property is not a {@link String}
+     */
+    public String getProperty(final String key, final String defaultValue) {
+        final Object value = getValue(key);
+        return value != null ? (String) value : defaultValue;
+    }
+
+    /**
+     * @param key the property name, or key
+     * @param defaultValue the value returned if the property did not exist
+     * @return the binary value of the property, which must not be modified, or the default value
+     * @throws ClassCastException if the property is not binary
+     */
+    public byte[] getBytesProperty(final String key, final byte[] defaultValue) {
+        final Object value = getValue(key);
+        return value != null ? (byte[]) value : defaultValue;
+    }
+
+    /**
+     * @return {@link Set Set&lt;String&gt;} of every property name, in order
+     */
+    public Set<String> propertyNames() {
+        return new Names(0, size());
+    }
+
+    /**
+     * The property names, or keys, starting with a prefix, found by a search of the sorted names
+     *
+     * @param prefix the start of the property names, for example <code>ui.window.</code>
+     * @return {@link Set Set&lt;String&gt;} of the matching property names, in order
+     */
+    public Set<String> propertyNames(final String prefix) {
+        return new Names(insertionPoint(prefix), insertionPoint(prefix + Character.MAX_VALUE));
+    }
+
+    private int insertionPoint(final String key) {
+        final int position = search(key);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /**
+     * The properties for a {@link UserPropertyCodec} to write, each is written from a temporary {@link UserProperty}
+     * which is not kept, in order
+     *
+     * @param excluded the property names, or keys, to leave out
+     * @param defaults the properties to leave out while they have their default value, or <code>null</code>
+     * @return a read only {@link Map} of the properties
+     */
+    Map<String, UserProperty> properties(final Set<String> excluded, final UserPropertiesDefaults defaults) {
+        return new AbstractMap<String, UserProperty>() {
+            @Override
+            public Set<Map.Entry<String, UserProperty>> entrySet() {
+                return new AbstractSet<Map.Entry<String, UserProperty>>() {
+                    @Override
+                    public Iterator<Map.Entry<String, UserProperty>> iterator() {
+                        return new Iterator<Map.Entry<String, UserProperty>>() {
+                            private final Cursor next = skip(new Cursor(0));
+
+                            private Cursor skip(final Cursor cursor) {
+                                while (cursor.position < UserPropertiesSnapshot.this.size() && isExcluded(cursor)) {
+                                    cursor.advance();
+                                }
+                                return cursor;
+                            }
+
+                            @Override
+                            public boolean hasNext() {
+                                return next.position < UserPropertiesSnapshot.this.size();
+                            }
+
+                            @Override
+                            public Map.Entry<String, UserProperty> next() {
+                                if (!hasNext()) {
+                                    throw new NoSuchElementException();
+                                }
+                                final String key = next.key();
+                                final UserProperty property = UserPropertyFactory.create(key, next.value());
+                                skip(next.advance());
+                                return new SimpleImmutableEntry<>(key, property);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        if (excluded.isEmpty() && defaults == null) {
+                            return UserPropertiesSnapshot.this.size();
+                        }
+                        int count = 0;
+                        for (Cursor cursor = new Cursor(0); cursor.position < UserPropertiesSnapshot.this.size();
+                             cursor.advance()) {
+                            if (!isExcluded(cursor)) {
+                                count++;
+                            }
+                        }
+                        return count;
+                    }
+                };
+            }
+
+            private boolean isExcluded(final Cursor cursor) {
+                return excluded.contains(cursor.key())
+                        || (defaults != null && defaults.isDefault(cursor.key(), cursor.value()));
+            }
+        };
+    }
+
+    /**
+     * Walks the chunks from a position
+     */
+    private class Cursor {
+        private int chunk;
+        private int index;
+        private int position;
+
+        Cursor(final int position) {
+            final int found = Arrays.binarySearch(starts, position);
+            this.chunk = found >= 0 ? found : -found - 2;
+            this.index = position - starts[chunk];
+            this.position = position;
+        }
+
+        String key() {
+            return keys[chunk][index];
+        }
+
+        Object value() {
+            return values[chunk][index];
+        }
+
+        Cursor advance() {
+            position++;
+            if (++index == keys[chunk].length) {
+                chunk++;
+                index = 0;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * A range of the sorted names
+     */
+    private class Names extends AbstractSet<String> {
+        private final int from;
+        private final int to;
+
+        Names(final int from, final int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            final Cursor cursor = new Cursor(from);
+            return new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return cursor.position < to;
+                }
+
+                @Override
+                public String next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    final String key = cursor.key();
+                    cursor.advance();
+                    return key;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            if (!(o instanceof String)) {
+                return false;
+            }
+            final int position = search((String) o);
+            return position >= from && position < to;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UserPropertiesSnapshot[version %d, %d properties]", version, size());
+    }
+}
@@ -0,0 +1,114 @@
+package com.kerrybarnes.utilities;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the changes made inside {@link UserProperties#batch(UserProperties.Batch)}.  Nothing is
+ * applied until the batch returns, a key set more than once keeps only its last value so its
+ * listeners are notified once.
+ */
+public final class UserPropertiesTransaction {
+    private final Map<String, Object> changes = new LinkedHashMap<>();
+
+    UserPropertiesTransaction() {
+    }
+
+    /**
+     * Creates or Updates an Integer property when the batch is committed
+     *
+     * @param key the property name, or key
+     * @param newValue the new value the property will contain
+     * @return this {@link UserPropertiesTransaction}
+     */
+    public UserPropertiesTransaction setIntProperty(final String key, final int newValue) {
+        changes.put(key, newValue);
+        return this;
+    }
+
+    /**
+     * Creates or Updates a Double property when the batch is committed
+     *
+     * @param key the property name, or key
+     * @param newValue the new value the property will contain
+     * @return this {@link UserPropertiesTransaction}
+     */
+    public UserPropertiesTransaction setDoubleProperty(final String key, final double newValue) {
+        changes.put(key, newValue);
+        return this;
+    }
+
+    /**
+     * Creates or Updates a Long property when the batch is committed
+     *
+     * @param key the property name, or key
+     * @param newValue the new value the property will contain
+     * @return this {@link UserPropertiesTransaction}
+     */
+    public UserPropertiesTransaction setLongProperty(final String key, final long newValue) {
+        changes.put(key, newValue);
+        return this;
+    }
+
+    /**
+     * Creates or Updates a Float property when the batch is committed
+     *
+     * @param key the property name, or key
+     * @param newValue the new value the property will contain
+     * @return this {@link UserPropertiesTransaction}
+     */
+    public UserPropertiesTransaction setFloatProperty(final String key, final float newValue) {
+        changes.put(key, newValue);
+        return this;
+    }
+
+    /**
+     * Creates or Updates a Boolean property when the batch is committed
+     *
+     * @param key the property name, or key
+     * @param newValue the new value the property will contain
+     * @return this {@link UserPropertiesTransaction}
+     */
+    public UserPropertiesTransaction setBooleanProperty(final String key, final boolean newValue) {
+        changes.put(key, newValue);
+        return this;
+    }
+
+    /**
+     * Creates or Updates a binary property with a copy of the value when the batch is committed
+     *
+     * @param key the property name, or key
+     * @param newValue the new value the property will contain
+     * @return this {@link UserPropertiesTransaction}
+     */
+    public UserPropertiesTransaction setBytesProperty(final String key, final byte[] newValue) {
+        if (newValue == null) {
+            throw new NullPointerException(String.format("Null value for User Property %s", key));
+        }
+        changes.put(key, newValue.clone());
+        return this;
+    }
+
+    /**
+     * Creates or Updates a String property when the batch is committed
+     *
+     * @param key the property name, or key
+     * @param newValue the new value the property will contain
+     * @return this {@link UserPropertiesTransaction}
+     */
+    public UserPropertiesTransaction setProperty(final String key, final String newValue) {
+        if (newValue == null) {
+            throw new NullPointerException(String.format("Null value for User Property %s", key));
+        }
+        changes.put(key, newValue);
+        return this;
+    }
+
+    /**
+     * @return the pending changes in the order they were first made
+     */
+    Map<String, Object> getChanges() {
+        return Collections.unmodifiableMap(changes);
+    }
+}
@@ -0,0 +1,324 @@
+package com.kerrybarnes.utilities;
+
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.Set;
+
+/**
+ * The properties below a dotted path of a {@link UserProperties}, see {@link UserProperties#subtree(String)}.  A
+ * view holds no properties of its own, each call is passed to the {@link UserProperties} with the path prepended to
+ * the name, so a module can be handed just its own branch of the configuration and use short names.  Reads and
+ * changes only touch the properties of the branch, and they are persisted, or appended to a
+ * {@link UserPropertyJournal}, exactly as changes made directly.
+ */
+public final class UserPropertiesView {
+    private final UserProperties properties;
+    private final String prefix;
+
+    /**
+     * @param properties the properties the view is of
+     * @param path the dotted path of the branch, with or without the trailing dot
+     * @throws IllegalArgumentException if the path is empty
+     */
+    UserPropertiesView(final UserProperties properties, final String path) {
+        final String trimmed = path.endsWith(".") ? path.substring(0, path.length() - 1) : path;
+        if (trimmed.isEmpty()) {
+            throw new IllegalArgumentException("The path of a User Properties view can not be empty");
+        }
+        this.properties = properties;
+        this.prefix = trimmed + ".";
+    }
+
+    /**
+     * @return the dotted path of the branch, without the trailing dot
+     */
+    public String getPath() {
+        return prefix.substring(0, prefix.length() - 1);
+    }
+
+    /**
+     * @param key the property name relative to the path of the view
+     * @return the full property name, or key
+     */
+    public String key(final String key) {
+        return prefix + key;
+    }
+
+    /**
+     * {@link UserProperties#getIntProperty(String)} with a property name relative to the view
+     */
+    public int getIntProperty(final String key) {
+        return properties.getIntProperty(prefix + key);
+    }
+
+    /**
+     * {@link UserProperties#getIntProperty(String, int)} with a property name relative to the view
+     */
+    public int getIntProperty(final String key, final int defaultValue) {
+        return properties.getIntProperty(prefix + key, defaultValue);
+    }
+
+    /**
+     * {@link UserProperties#setIntProperty(String, int)} with a property name relative to the view
+     */
+    public int setIntProperty(final String key, final int newValue) {
+        return properties.setIntProperty(prefix + key, newValue);
+    }
+
+    /**
+     * {@link UserProperties#getDoubleProperty(String)} with a property name relative to the view
+     */
+    public double getDoubleProperty(final String key) {
+        return properties.getDoubleProperty(prefix + key);
+    }
+
+    /**
+     * {@link UserProperties#getDoubleProperty(String, double)} with a property name relative to the view
+     */
+    public double getDoubleProperty(final String key, final double defaultValue) {
+        return properties.getDoubleProperty(prefix + key, defaultValue);
+    }
+
+    /**
+     * {@link UserProperties#setDoubleProperty(String, double)} with a property name relative to the view
+     */
+    public double setDoubleProperty(final String key, final double newValue) {
+        return properties.setDoubleProperty(prefix + key, newValue);
+    }
+
+    /**
+     * {@link UserProperties#getProperty(String)} with a property name relative to the view
+     */
+    public String getProperty(final String key) {
+        return properties.getProperty(prefix + key);
+    }
+
+    /**
+     * {@link UserProperties#getProperty(String, String)} with a property name relative to the view
+     */
+    public String getProperty(final String key, final String defaultValue) {
+        return properties.getProperty(prefix + key, defaultValue);
+    }
+
+    /**
+     * {@link UserProperties#setProperty(String, String)} with a property name relative to the view
+     */
+    public String setProperty(final String key, final String value) {
+        return properties.setProperty(prefix + key, value);
+    }
+
+    /**
+     * {@link UserProperties#getLongProperty(String)} with a property name relative to the view
+     */
+    public long getLongProperty(final String key) {
+        return properties.getLongProperty(prefix + key);
+    }
+
+    /**
+     * {@link UserProperties#getLongProperty(String, long)} with a property name relative to the view
+     */
+    public long getLongProperty(final String key, final long defaultValue) {
+        return properties.getLongProperty(prefix + key, defaultValue);
+    }
+
+    /**
+     * {@link UserProperties#setLongProperty(String, long)} with a property name relative to the view
+     */
+    public long setLongProperty(final String key, final long newValue) {
+        return properties.setLongProperty(prefix + key, newValue);
+    }
+
+    /**
+     * {@link UserProperties#getFloatProperty(String)} with a property name relative to the view
+     */
+    public float getFloatProperty(final String key) {
+        return properties.getFloatProperty(prefix + key);
+    }
+
+    /**
+     * {@link UserProperties#getFloatProperty(String, float)} with a property name relative to the view
+     */
+    public float getFloatProperty(final String key, final float defaultValue) {
+        return properties.getFloatProperty(prefix + key, defaultValue);
+    }
+
+    /**
+     * {@link UserProperties#setFloatProperty(String, float)} with a property name relative to the view
+     */
+    public float setFloatProperty(final String key, final float newValue) {
+        return properties.setFloatProperty(prefix + key, newValue);
+    }
+
+    /**
+     * {@link UserProperties#getBooleanProperty(String)} with a property name relative to the view
+     */
+    public boolean getBooleanProperty(final String key) {
+        return properties.getBooleanProperty(prefix + key);
+    }
+
+    /**
+     * {@link UserProperties#getBooleanProperty(String, boolean)} with a property name relative to the view
+     */
+    public boolean getBooleanProperty(final String key, final boolean defaultValue) {
+        return properties.getBooleanProperty(prefix + key, defaultValue);
+    }
+
+    /**
+     * {@link UserProperties#setBooleanProperty(String, boolean)} with a property name relative to the view
+     */
+    public boolean setBooleanProperty(final String key, final boolean newValue) {
+        return properties.setBooleanProperty(prefix + key, newValue);
+    }
+
+    /**
+     * {@link UserProperties#getBytesProperty(String)} with a property name relative to the view
+     */
+    public byte[] getBytesProperty(final String key) {
+        return properties.getBytesProperty(prefix + key);
+    }
+
+    /**
+     * {@link UserProperties#getBytesProperty(String, byte[])} with a property name relative to the view
+     */
+    public byte[] getBytesProperty(final String key, final byte[] defaultValue) {
+        return properties.getBytesProperty(prefix + key, defaultValue);
+    }
+
+    /**
+     * {@link UserProperties#setBytesProperty(String, byte[])} with a property name relative to the view
+     */
+    public byte[] setBytesProperty(final String key, final byte[] newValue) {
+        return properties.setBytesProperty(prefix + key, newValue);
+    }
+
+    /**
+     * {@link UserProperties#getType(String)} with a property name relative to the view
+     */
+    public Class<?> getType(final String key) {
+        return properties.getType(prefix + key);
+    }
+
+    /**
+     * {@link UserProperties#property(String, Class)} with a property name relative to the view
+     */
+    public <T> UserProperty<T> property(final String key, final Class<T> clazz) {
+        return properties.property(prefix + key, clazz);
+    }
+
+    /**
+     * {@link UserProperties#intKey(String, int)} with a property name relative to the view
+     */
+    public UserPropertyKey.OfInt intKey(final String key, final int defaultValue) {
+        return properties.intKey(prefix + key, defaultValue);
+    }
+
+    /**
+     * {@link UserProperties#longKey(String, long)} with a property name relative to the view
+     */
+    public UserPropertyKey.OfLong longKey(final String key, final long defaultValue) {
+        return properties.longKey(prefix + key, defaultValue);
+    }
+
+    /**
+     * {@link UserProperties#doubleKey(String, double)} with a property name relative to the view
+     */
+    public UserPropertyKey.OfDouble doubleKey(final String key, final double defaultValue) {
+        return properties.doubleKey(prefix + key, defaultValue);
+    }
+
+    /**
+     * {@link UserProperties#floatKey(String, float)} with a property name relative to the view
+     */
+    public UserPropertyKey.OfFloat floatKey(final String key, final float defaultValue) {
+        return properties.floatKey(prefix + key, defaultValue);
+    }
+
+    /**
+     * {@link UserProperties#booleanKey(String, boolean)} with a property name relative to the view
+     */
+    public UserPropertyKey.OfBoolean booleanKey(final String key, final boolean defaultValue) {
+        return properties.booleanKey(prefix + key, defaultValue);
+    }
+
+    /**
+     * {@link UserProperties#stringKey(String, String)} with a property name relative to the view
+     */
+    public UserPropertyKey.OfString stringKey(final String key, final String defaultValue) {
+        return properties.stringKey(prefix + key, defaultValue);
+    }
+
+    /**
+     * {@link UserProperties#intCounter(String)} with a property name relative to the view
+     */
+    public UserPropertyCounter.OfInt intCounter(final String key) {
+        return properties.intCounter(prefix + key);
+    }
+
+    /**
+     * {@link UserProperties#longCounter(String)} with a property name relative to the view
+     */
+    public UserPropertyCounter.OfLong longCounter(final String key) {
+        return properties.longCounter(prefix + key);
+    }
+
+    /**
+     * {@link UserProperties#doubleCounter(String)} with a property name relative to the view
+     */
+    public UserPropertyCounter.OfDouble doubleCounter(final String key) {
+        return properties.doubleCounter(prefix + key);
+    }
+
+    /**
+     * The names of the properties in the branch relative to its path, a read only view which reflects later
+     * changes.  Iterating it walks the sorted range of the branch, nothing is copied.
+     *
+     * @return {@link Set Set&lt;String&gt;} of relative property names, in order
+     */
+    public Set<String> propertyNames() {
+        final NavigableSet<String> range = properties.propertyNames(prefix);
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<String> names = range.iterator();
+                return new Iterator<String>() {
+                    @Override
+                    public boolean hasNext() {
+                        return names.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return names.next().substring(prefix.length());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return range.size();
+            }
+
+            @Override
+            public boolean contains(final Object o) {
+                return o instanceof String && range.contains(prefix + o);
+            }
+        };
+    }
+
+    /**
+     * A view of a branch below this one
+     *
+     * @param path the dotted path of the branch relative to this view
+     * @return a {@link UserPropertiesView} of the branch
+     */
+    public UserPropertiesView subtree(final String path) {
+        return new UserPropertiesView(properties, prefix + path);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UserPropertiesView[%s]", getPath());
+    }
+}
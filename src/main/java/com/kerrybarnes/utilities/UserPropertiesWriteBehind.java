@@ -0,0 +1,271 @@
+package com.kerrybarnes.utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the change notifications of a {@link UserProperties} into background writes.  A write is
+ * scheduled once the properties have been quiet for the debounce window, but never later than the max
+ * staleness bound after the first unpersisted change, so a steady stream of updates still reaches the
+ * persistence layer.
+ *
+ * Every change bumps a generation counter, {@link #awaitPersisted(long, TimeUnit)} waits until the
+ * generation observed at the time of the call has been written, and the future returned by
+ * {@link #persisted()} completes once it has.
+ *
+ * Until it is closed the writer is held by the shared {@link UserPropertiesShutdownHook}, only weakly so
+ * one that is dropped can be collected once it has nothing pending.
+ */
+class UserPropertiesWriteBehind implements UserPropertiesShutdownHook.Closeable {
+    private static Logger log = LogManager.getLogger(UserPropertiesWriteBehind.class);
+
+    /**
+     * Performs the actual write of the properties to the persistence layer
+     */
+    interface Writer {
+        void write() throws IOException;
+    }
+
+    private final Writer writer;
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private final long debounceNanos;
+    private final long maxStalenessNanos;
+
+    private final Object lock = new Object();
+    private final Object writeLock = new Object();
+
+    private long requestedGeneration = 0;
+    private long persistedGeneration = 0;
+    private boolean dirty = false;
+    private long dirtySince;
+    private long lastChange;
+    private ScheduledFuture<?> pending;
+    private boolean closed = false;
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    private static class Waiter {
+        private final long generation;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Waiter(final long generation) {
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * @param writer the action that writes the properties
+     * @param executor the executor used to schedule the writes, when <code>null</code> a
+     *                 single daemon thread is created, it stops when idle and is shut down by {@link #close()}
+     * @param debounceMillis how long the properties must be quiet before they are written
+     * @param maxStalenessMillis the longest a change may wait before being written, regardless
+     *                           of further changes
+     */
+    UserPropertiesWriteBehind(final Writer writer, final ScheduledExecutorService executor,
+                              final long debounceMillis, final long maxStalenessMillis) {
+        this.writer = writer;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+        this.ownsExecutor = executor == null;
+        this.executor = ownsExecutor ? createExecutor("user-properties-writer") : executor;
+        UserPropertiesShutdownHook.add(this);
+    }
+
+    /**
+     * A single daemon thread that stops once it has been idle for a second, so an instance that is dropped
+     * without being closed does not leave its thread behind
+     *
+     * @param name the name of the thread
+     * @return a new {@link ScheduledExecutorService}
+     */
+    static ScheduledExecutorService createExecutor(final String name) {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            final Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setKeepAliveTime(1, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Records that the properties have changed and schedules a write if one
+     * is not already pending.  Once closed the write happens on the calling thread.
+     */
+    void changed() {
+        final boolean isClosed;
+        synchronized (lock) {
+            requestedGeneration++;
+            lastChange = System.nanoTime();
+            if (!dirty) {
+                dirty = true;
+                dirtySince = lastChange;
+            }
+            isClosed = closed;
+            if (!closed && pending == null) {
+                schedule(Math.min(debounceNanos, maxStalenessNanos));
+            }
+        }
+
+        if (isClosed) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes any pending changes on the calling thread
+     */
+    void flush() {
+        synchronized (writeLock) {
+            final long target;
+            synchronized (lock) {
+                if (!dirty) {
+                    return;
+                }
+                dirty = false;
+                target = requestedGeneration;
+            }
+
+            try {
+                writer.write();
+            } catch (IOException | RuntimeException e) {
+                log.error("Error Updating User Properties File", e);
+                synchronized (lock) {
+                    if (!dirty) {
+                        dirty = true;
+                        dirtySince = lastChange = System.nanoTime();
+                    }
+                    if (!closed && pending == null) {
+                        schedule(Math.min(debounceNanos, maxStalenessNanos));
+                    }
+                }
+                return;
+            }
+
+            final List<Waiter> done = new ArrayList<>();
+            synchronized (lock) {
+                persistedGeneration = Math.max(persistedGeneration, target);
+                lock.notifyAll();
+                for (Iterator<Waiter> i = waiters.iterator(); i.hasNext(); ) {
+                    final Waiter waiter = i.next();
+                    if (waiter.generation <= persistedGeneration) {
+                        done.add(waiter);
+                        i.remove();
+                    }
+                }
+            }
+            for (Waiter waiter : done) {
+                waiter.future.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Waits until every change made before this call has been written
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the {@link TimeUnit} of the timeout
+     * @return <code>true</code> if the changes were written, <code>false</code> if
+     *         the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitPersisted(final long timeout, final TimeUnit unit) throws InterruptedException {
+        synchronized (lock) {
+            final long target = requestedGeneration;
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            long remaining = unit.toNanos(timeout);
+            while (persistedGeneration < target) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A future for the changes made before this call, it completes once they have been written.  A failed
+     * write is retried so the future only completes exceptionally if the changes are still not written
+     * when the writer is closed.
+     *
+     * @return a future completed once every change made before this call has been written
+     */
+    CompletableFuture<Void> persisted() {
+        synchronized (lock) {
+            if (persistedGeneration >= requestedGeneration) {
+                return CompletableFuture.completedFuture(null);
+            }
+            final Waiter waiter = new Waiter(requestedGeneration);
+            waiters.add(waiter);
+            return waiter.future;
+        }
+    }
+
+    /**
+     * Writes any pending changes and stops the background writer, a shared executor
+     * is left running.  This is also called from the shutdown hook so changes are not
+     * lost on exit.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+        }
+
+        flush();
+        final List<Waiter> unwritten;
+        synchronized (lock) {
+            unwritten = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        for (Waiter waiter : unwritten) {
+            waiter.future.completeExceptionally(new IOException("User Properties were not written before shutdown"));
+        }
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+        UserPropertiesShutdownHook.remove(this);
+    }
+
+    private void scheduledFlush() {
+        synchronized (lock) {
+            pending = null;
+            if (!dirty || closed) {
+                return;
+            }
+            final long now = System.nanoTime();
+            final long deadline = Math.min(lastChange + debounceNanos, dirtySince + maxStalenessNanos);
+            if (deadline - now > 0) {
+                schedule(deadline - now);
+                return;
+            }
+        }
+
+        flush();
+    }
+
+    private void schedule(final long delayNanos) {
+        pending = executor.schedule(this::scheduledFlush, delayNanos, TimeUnit.NANOSECONDS);
+    }
+}
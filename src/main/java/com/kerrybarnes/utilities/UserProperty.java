@@ -0,0 +1,317 @@
+package com.kerrybarnes.utilities;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The observable value of one property of {@link UserProperties}, created by {@link UserPropertyFactory}.  Integer,
+ * Long, Double, Float and Boolean values are held in a primitive slot by {@link OfInt}, {@link OfLong},
+ * {@link OfDouble}, {@link OfFloat} and {@link OfBoolean}, so getting and setting them does not box the value,
+ * other values, such as a String or a <code>byte[]</code>, are held by {@link OfObject}.
+ *
+ * A {@link Listener} is notified after every set that changes the value, on the thread that set it.  There is no
+ * dependency on a UI toolkit, the JavaFX properties bound to user properties are created by the separate
+ * <code>utilities-fx</code> module.
+ *
+ * @param <T> the type of the value
+ */
+public abstract class UserProperty<T> {
+    private final static Listener[] NO_LISTENERS = new Listener[0];
+
+    /**
+     * Notified when the value of a {@link UserProperty} changes, the new value is read from the property so
+     * nothing is boxed to notify a listener of a primitive property
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void changed(UserProperty<?> property);
+    }
+
+    private final String name;
+    private volatile Listener[] listeners = NO_LISTENERS;
+
+    UserProperty(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the property name, or key
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the value, boxed for a primitive property
+     */
+    public abstract T getValue();
+
+    /**
+     * @param value the new value, <code>null</code> sets a primitive property to zero or <code>false</code>
+     */
+    public abstract void setValue(T value);
+
+    /**
+     * @param listener notified after each change of the value
+     */
+    public synchronized void addListener(final Listener listener) {
+        final Listener[] current = listeners;
+        final Listener[] added = Arrays.copyOf(current, current.length + 1);
+        added[current.length] = Objects.requireNonNull(listener);
+        listeners = added;
+    }
+
+    /**
+     * @param listener no longer notified, if it was added more than once only one is removed
+     */
+    public synchronized void removeListener(final Listener listener) {
+        final Listener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].equals(listener)) {
+                final Listener[] removed = new Listener[current.length - 1];
+                System.arraycopy(current, 0, removed, 0, i);
+                System.arraycopy(current, i + 1, removed, i, current.length - i - 1);
+                listeners = removed;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Notifies the listeners of a change of the value
+     */
+    final void changed() {
+        for (Listener listener : listeners) {
+            listener.changed(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UserProperty[name: %s, value: %s]", name, getValue());
+    }
+
+    /**
+     * An {@link Integer} property held in an <code>int</code>
+     */
+    public static final class OfInt extends UserProperty<Integer> {
+        private volatile int value;
+
+        OfInt(final String name, final int value) {
+            super(name);
+            this.value = value;
+        }
+
+        /**
+         * @return the value
+         */
+        public int get() {
+            return value;
+        }
+
+        /**
+         * @param newValue the new value
+         */
+        public void set(final int newValue) {
+            if (value != newValue) {
+                value = newValue;
+                changed();
+            }
+        }
+
+        @Override
+        public Integer getValue() {
+            return value;
+        }
+
+        @Override
+        public void setValue(final Integer newValue) {
+            set(newValue == null ? 0 : newValue);
+        }
+    }
+
+    /**
+     * A {@link Long} property held in a <code>long</code>
+     */
+    public static final class OfLong extends UserProperty<Long> {
+        private volatile long value;
+
+        OfLong(final String name, final long value) {
+            super(name);
+            this.value = value;
+        }
+
+        /**
+         * @return the value
+         */
+        public long get() {
+            return value;
+        }
+
+        /**
+         * @param newValue the new value
+         */
+        public void set(final long newValue) {
+            if (value != newValue) {
+                value = newValue;
+                changed();
+            }
+        }
+
+        @Override
+        public Long getValue() {
+            return value;
+        }
+
+        @Override
+        public void setValue(final Long newValue) {
+            set(newValue == null ? 0L : newValue);
+        }
+    }
+
+    /**
+     * A {@link Double} property held in a <code>double</code>, a value is changed unless its bits are the same so
+     * setting NaN again is not a change
+     */
+    public static final class OfDouble extends UserProperty<Double> {
+        private volatile double value;
+
+        OfDouble(final String name, final double value) {
+            super(name);
+            this.value = value;
+        }
+
+        /**
+         * @return the value
+         */
+        public double get() {
+            return value;
+        }
+
+        /**
+         * @param newValue the new value
+         */
+        public void set(final double newValue) {
+            if (Double.doubleToLongBits(value) != Double.doubleToLongBits(newValue)) {
+                value = newValue;
+                changed();
+            }
+        }
+
+        @Override
+        public Double getValue() {
+            return value;
+        }
+
+        @Override
+        public void setValue(final Double newValue) {
+            set(newValue == null ? 0.0 : newValue);
+        }
+    }
+
+    /**
+     * A {@link Float} property held in a <code>float</code>, compared as {@link OfDouble} is
+     */
+    public static final class OfFloat extends UserProperty<Float> {
+        private volatile float value;
+
+        OfFloat(final String name, final float value) {
+            super(name);
+            this.value = value;
+        }
+
+        /**
+         * @return the value
+         */
+        public float get() {
+            return value;
+        }
+
+        /**
+         * @param newValue the new value
+         */
+        public void set(final float newValue) {
+            if (Float.floatToIntBits(value) != Float.floatToIntBits(newValue)) {
+                value = newValue;
+                changed();
+            }
+        }
+
+        @Override
+        public Float getValue() {
+            return value;
+        }
+
+        @Override
+        public void setValue(final Float newValue) {
+            set(newValue == null ? 0.0f : newValue);
+        }
+    }
+
+    /**
+     * A {@link Boolean} property held in a <code>boolean</code>
+     */
+    public static final class OfBoolean extends UserProperty<Boolean> {
+        private volatile boolean value;
+
+        OfBoolean(final String name, final boolean value) {
+            super(name);
+            this.value = value;
+        }
+
+        /**
+         * @return the value
+         */
+        public boolean get() {
+            return value;
+        }
+
+        /**
+         * @param newValue the new value
+         */
+        public void set(final boolean newValue) {
+            if (value != newValue) {
+                value = newValue;
+                changed();
+            }
+        }
+
+        @Override
+        public Boolean getValue() {
+            return value;
+        }
+
+        @Override
+        public void setValue(final Boolean newValue) {
+            set(newValue != null && newValue);
+        }
+    }
+
+    /**
+     * A property holding an object, such as a String or a <code>byte[]</code>.  A value is changed unless it is
+     * equal to the current one, an array is only equal to itself.
+     *
+     * @param <T> the type of the value
+     */
+    public static final class OfObject<T> extends UserProperty<T> {
+        private volatile T value;
+
+        OfObject(final String name, final T value) {
+            super(name);
+            this.value = value;
+        }
+
+        @Override
+        public T getValue() {
+            return value;
+        }
+
+        @Override
+        public void setValue(final T newValue) {
+            if (!Objects.equals(value, newValue)) {
+                value = newValue;
+                changed();
+            }
+        }
+    }
+}
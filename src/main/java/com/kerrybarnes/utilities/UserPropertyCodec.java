@@ -0,0 +1,45 @@
+package com.kerrybarnes.utilities;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Defines the Interface used by {@link UserProperties} to
+ * convert the properties to and from the streams supplied
+ * by the {@link UserPropertyPersistence}
+ */
+public interface UserPropertyCodec {
+    /**
+     * Read the properties from the supplied {@link InputStream}
+     *
+     * @param in the {@link InputStream} containing the persisted properties
+     * @return a {@link Map} of property name, or key, to {@link UserProperty}
+     * @throws IOException if an I/O error occurs or the data cannot be decoded
+     */
+    Map<String, UserProperty> read(InputStream in) throws IOException;
+
+    /**
+     * Write the properties to the supplied {@link OutputStream}
+     *
+     * @param out the {@link OutputStream} to write the properties to
+     * @param properties the properties to write
+     * @throws IOException if an I/O error occurs
+     */
+    void write(OutputStream out, Map<String, UserProperty> properties) throws IOException;
+
+    /**
+     * Checks whether this codec can read data starting with the supplied header, used by the
+     * {@link FormatDetectingUserPropertyCodec} to pick the codec for a persisted copy.  Codecs
+     * that are unable to tell claim every header.
+     *
+     * @param header the first bytes of the persisted properties
+     * @param length the number of valid bytes in the header, may be less than its length
+     * @return <code>true</code> if this codec should read the data
+     */
+    default boolean recognizes(byte[] header, int length) {
+        return true;
+    }
+}
@@ -0,0 +1,201 @@
+package com.kerrybarnes.utilities;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter or accumulator kept in a numeric property of a {@link UserProperties} that many threads add to, created
+ * by {@link UserProperties#longCounter(String)} and the like.  Adding does not change the property, the amounts are
+ * summed in the striped cells of a {@link LongAdder} or {@link DoubleAdder} so the threads adding do not contend
+ * for a lock or a single memory location, and nothing is persisted or notified.
+ *
+ * The sum added since the last checkpoint is added to the property by a periodic checkpoint, see
+ * {@link UserProperties.Builder#checkpoint(long, TimeUnit)}, by {@link UserProperties#flush()} and by
+ * {@link UserProperties#shutdown()}.  Every counter of the properties is checkpointed together and the changed
+ * properties persisted in a single write, so a counter incremented millions of times is written once per period.
+ * Amounts added after the last checkpoint are lost if the process ends without a shutdown.
+ *
+ * The value of a counter is the value of the property plus the amounts not yet checkpointed, so a value set on the
+ * property, or merged from another process, is added to rather than overwritten.
+ */
+public abstract class UserPropertyCounter {
+    final String name;
+
+    UserPropertyCounter(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the property name, or key
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the value of the property plus the amounts not yet checkpointed, boxed
+     */
+    public abstract Number getValue();
+
+    /**
+     * Adds the amounts added since the last checkpoint to the property.  The cells are never reset, a reset can
+     * lose an amount added while it runs, instead the sum already added to the property is remembered.
+     *
+     * @return <code>true</code> if the property was changed
+     */
+    abstract boolean checkpoint();
+
+    @Override
+    public String toString() {
+        return String.format("UserPropertyCounter[%s]", name);
+    }
+
+    /**
+     * A counter kept in an {@link Integer} property, the sum overflows as an int does
+     */
+    public static final class OfInt extends UserPropertyCounter {
+        private final UserPropertyKey.OfInt key;
+        private final LongAdder cells = new LongAdder();
+        private long checkpointed;
+
+        OfInt(final UserPropertyKey.OfInt key) {
+            super(key.getName());
+            this.key = key;
+        }
+
+        /**
+         * Adds one to the counter
+         */
+        public void increment() {
+            cells.increment();
+        }
+
+        /**
+         * @param delta the amount to add to the counter
+         */
+        public void add(final int delta) {
+            cells.add(delta);
+        }
+
+        /**
+         * @return the value of the property plus the amounts not yet checkpointed
+         */
+        public synchronized int get() {
+            return key.get() + (int) (cells.sum() - checkpointed);
+        }
+
+        @Override
+        public Integer getValue() {
+            return get();
+        }
+
+        @Override
+        synchronized boolean checkpoint() {
+            final long delta = cells.sum() - checkpointed;
+            if (delta == 0) {
+                return false;
+            }
+            checkpointed += delta;
+            key.addAndGet((int) delta);
+            return true;
+        }
+    }
+
+    /**
+     * A counter kept in a {@link Long} property
+     */
+    public static final class OfLong extends UserPropertyCounter {
+        private final UserPropertyKey.OfLong key;
+        private final LongAdder cells = new LongAdder();
+        private long checkpointed;
+
+        OfLong(final UserPropertyKey.OfLong key) {
+            super(key.getName());
+            this.key = key;
+        }
+
+        /**
+         * Adds one to the counter
+         */
+        public void increment() {
+            cells.increment();
+        }
+
+        /**
+         * @param delta the amount to add to the counter
+         */
+        public void add(final long delta) {
+            cells.add(delta);
+        }
+
+        /**
+         * @return the value of the property plus the amounts not yet checkpointed
+         */
+        public synchronized long get() {
+            return key.get() + (cells.sum() - checkpointed);
+        }
+
+        @Override
+        public Long getValue() {
+            return get();
+        }
+
+        @Override
+        synchronized boolean checkpoint() {
+            final long delta = cells.sum() - checkpointed;
+            if (delta == 0) {
+                return false;
+            }
+            checkpointed += delta;
+            key.addAndGet(delta);
+            return true;
+        }
+    }
+
+    /**
+     * An accumulator kept in a {@link Double} property.  As with a {@link DoubleAdder} the order the amounts are
+     * added in is not fixed, so the sum may differ in the last bits from adding them one at a time.
+     */
+    public static final class OfDouble extends UserPropertyCounter {
+        private final UserPropertyKey.OfDouble key;
+        private final DoubleAdder cells = new DoubleAdder();
+        private double checkpointed;
+
+        OfDouble(final UserPropertyKey.OfDouble key) {
+            super(key.getName());
+            this.key = key;
+        }
+
+        /**
+         * @param delta the amount to add to the accumulator
+         */
+        public void add(final double delta) {
+            cells.add(delta);
+        }
+
+        /**
+         * @return the value of the property plus the amounts not yet checkpointed
+         */
+        public synchronized double get() {
+            return key.get() + (cells.sum() - checkpointed);
+        }
+
+        @Override
+        public Double getValue() {
+            return get();
+        }
+
+        @Override
+        synchronized boolean checkpoint() {
+            final double sum = cells.sum();
+            final double delta = sum - checkpointed;
+            if (delta == 0) {
+                return false;
+            }
+            checkpointed = sum;
+            key.addAndGet(delta);
+            return true;
+        }
+    }
+}
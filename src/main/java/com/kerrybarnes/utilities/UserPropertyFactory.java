@@ -0,0 +1,98 @@
+package com.kerrybarnes.utilities;
+
+/**
+ * Creates the {@link UserProperty} used to hold a value of {@link UserProperties}.  Numeric and Boolean values are
+ * held in the primitive specializations, {@link UserProperty.OfInt}, {@link UserProperty.OfDouble},
+ * {@link UserProperty.OfLong}, {@link UserProperty.OfFloat} and {@link UserProperty.OfBoolean}, so reading and
+ * writing them does not box the value.  Strings and binary values, as a <code>byte[]</code>, are held in a
+ * {@link UserProperty.OfObject}.
+ */
+public final class UserPropertyFactory {
+    private UserPropertyFactory() {
+    }
+
+    /**
+     * @param key the property name, or key
+     * @param value the initial value
+     * @return a {@link UserProperty.OfInt}
+     */
+    public static UserProperty createInt(final String key, final int value) {
+        return new UserProperty.OfInt(key, value);
+    }
+
+    /**
+     * @param key the property name, or key
+     * @param value the initial value
+     * @return a {@link UserProperty.OfDouble}
+     */
+    public static UserProperty createDouble(final String key, final double value) {
+        return new UserProperty.OfDouble(key, value);
+    }
+
+    /**
+     * @param key the property name, or key
+     * @param value the initial value
+     * @return a {@link UserProperty.OfLong}
+     */
+    public static UserProperty createLong(final String key, final long value) {
+        return new UserProperty.OfLong(key, value);
+    }
+
+    /**
+     * @param key the property name, or key
+     * @param value the initial value
+     * @return a {@link UserProperty.OfFloat}
+     */
+    public static UserProperty createFloat(final String key, final float value) {
+        return new UserProperty.OfFloat(key, value);
+    }
+
+    /**
+     * @param key the property name, or key
+     * @param value the initial value
+     * @return a {@link UserProperty.OfBoolean}
+     */
+    public static UserProperty createBoolean(final String key, final boolean value) {
+        return new UserProperty.OfBoolean(key, value);
+    }
+
+    /**
+     * @param key the property name, or key
+     * @param value the initial value, which is held rather than copied
+     * @return a {@link UserProperty.OfObject} holding the <code>byte[]</code>
+     */
+    public static UserProperty createBytes(final String key, final byte[] value) {
+        return new UserProperty.OfObject<>(key, value);
+    }
+
+    /**
+     * @param key the property name, or key
+     * @param value the initial value
+     * @return a {@link UserProperty.OfObject} holding the String
+     */
+    public static UserProperty createString(final String key, final String value) {
+        return new UserProperty.OfObject<>(key, value);
+    }
+
+    /**
+     * Creates the specialized {@link UserProperty} for the type of the supplied value
+     *
+     * @param key the property name, or key
+     * @param value the initial value
+     * @return the specialized {@link UserProperty}, or a {@link UserProperty.OfObject} for other types
+     */
+    public static UserProperty create(final String key, final Object value) {
+        if (value instanceof Integer) {
+            return createInt(key, (Integer) value);
+        } else if (value instanceof Double) {
+            return createDouble(key, (Double) value);
+        } else if (value instanceof Long) {
+            return createLong(key, (Long) value);
+        } else if (value instanceof Float) {
+            return createFloat(key, (Float) value);
+        } else if (value instanceof Boolean) {
+            return createBoolean(key, (Boolean) value);
+        }
+        return new UserProperty.OfObject<>(key, value);
+    }
+}
@@ -0,0 +1,51 @@
+package com.kerrybarnes.utilities;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A {@link UserPropertyPersistence} that records changes incrementally.  Rather than
+ * rewriting every property through the {@link OutputStream} on each change,
+ * {@link UserProperties} appends just the changed properties to the journal.  The full
+ * set of properties is only written, as a snapshot, when the journal asks to be compacted
+ * or after the properties have been cleared.
+ */
+public interface UserPropertyJournal extends UserPropertyPersistence {
+    /**
+     * Load the properties by reading the snapshot and replaying the journal on top of it
+     *
+     * @param codec the {@link UserPropertyCodec} used to decode the snapshot and records
+     * @return a {@link Map} of property name, or key, to {@link UserProperty}
+     * @throws IOException if an I/O error occurs
+     */
+    Map<String, UserProperty> replay(UserPropertyCodec codec) throws IOException;
+
+    /**
+     * Append a record containing the changed properties to the journal
+     *
+     * @param changed the properties that have changed since the last append or snapshot
+     * @param codec the {@link UserPropertyCodec} used to encode the record
+     * @throws IOException if an I/O error occurs
+     */
+    void append(Collection<UserProperty> changed, UserPropertyCodec codec) throws IOException;
+
+    /**
+     * Determines if the journal has grown enough that the properties should be
+     * written as a new snapshot
+     *
+     * @return <code>true</code> if a snapshot should be written
+     */
+    boolean needsCompaction();
+
+    /**
+     * Write every property as a new snapshot, discarding the journal records it replaces
+     *
+     * @param properties all of the properties
+     * @param codec the {@link UserPropertyCodec} used to encode the snapshot
+     * @throws IOException if an I/O error occurs, the previous snapshot and journal are kept
+     */
+    void snapshot(Map<String, UserProperty> properties, UserPropertyCodec codec) throws IOException;
+}
@@ -0,0 +1,603 @@
+package com.kerrybarnes.utilities;
+
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A handle to one property of a {@link UserProperties}, created by one of its key methods such as
+ * {@link UserProperties#intKey(String, int)}.  The handle finds the {@link UserProperty} once and then gets and sets it
+ * directly, so a key read many times, in a render loop for example, is not hashed, looked up, cast or unboxed on
+ * every read.  Changes made through a handle notify the listeners and are persisted exactly as changes made with
+ * the setters of the {@link UserProperties}.
+ *
+ * The {@link UserProperty} of a handle is pinned so a cache never evicts it, and values merged from the persisted copy
+ * are set on it, so the handle stays valid.  If the properties are cleared, or a batch that created the property is
+ * rolled back, the handle finds the property again the next time it is used, creating it with its default value.
+ *
+ * The handles of Integer, Long and Double properties also update the value atomically, such as
+ * {@link OfInt#incrementAndGet()}, by holding the monitor of the property that the setters of the
+ * {@link UserProperties} and the merges of other processes hold.  Each update is a change persisted as usual, a
+ * counter incremented by many threads is better kept in a {@link UserPropertyCounter}.
+ *
+ * @param <T> the type of the value
+ */
+public abstract class UserPropertyKey<T> {
+    final UserProperties properties;
+    final String name;
+    private volatile Slot slot;
+
+    /**
+     * The {@link UserProperty} found for the handle and the generation of the properties it was found in, held
+     * together so a change of generation is never paired with the wrong property
+     */
+    private static final class Slot {
+        private final UserProperty property;
+        private final int generation;
+
+        Slot(final UserProperty property, final int generation) {
+            this.property = property;
+            this.generation = generation;
+        }
+    }
+
+    UserPropertyKey(final UserProperties properties, final String name) {
+        this.properties = properties;
+        this.name = name;
+    }
+
+    /**
+     * @return the property name, or key
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the value of the property, boxed
+     */
+    public abstract T getValue();
+
+    /**
+     * Sets the value of the property
+     *
+     * @param value the new value
+     * @return the previous value, boxed
+     */
+    public abstract T setValue(T value);
+
+    /**
+     * Finds the property, or creates it with its default value
+     */
+    abstract UserProperty create();
+
+    /**
+     * @return the {@link UserProperty} of the handle, found again only if the properties were cleared since
+     */
+    final UserProperty slot() {
+        final Slot current = slot;
+        if (current != null && current.generation == properties.generation()) {
+            return current.property;
+        }
+
+        final int generation = properties.generation();
+        final UserProperty property = create();
+        slot = new Slot(property, generation);
+        return property;
+    }
+
+    /**
+     * Checks the type of the property found for a handle
+     */
+    final UserProperty checked(final UserProperty property, final Class<?> type, final Class<?> valueType) {
+        if (!type.isInstance(property)) {
+            throw new ClassCastException(String.format("User Property %s is a %s not a %s", name,
+                    property.getValue().getClass().getSimpleName(), valueType.getSimpleName()));
+        }
+        return property;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UserPropertyKey[%s]", name);
+    }
+
+    /**
+     * A handle to an {@link Integer} property
+     */
+    public static final class OfInt extends UserPropertyKey<Integer> {
+        private final int defaultValue;
+
+        OfInt(final UserProperties properties, final String name, final int defaultValue) {
+            super(properties, name);
+            this.defaultValue = defaultValue;
+            slot();
+        }
+
+        @Override
+        UserProperty create() {
+            return checked(properties.resolve(name, UserPropertyFactory.createInt(name, defaultValue),
+                    UserPropertiesMetrics.Type.INTEGER), UserProperty.OfInt.class, Integer.class);
+        }
+
+        /**
+         * @return the {@link Integer int} value of the property
+         */
+        public int get() {
+            properties.metrics().read(UserPropertiesMetrics.Type.INTEGER);
+            return ((UserProperty.OfInt) slot()).get();
+        }
+
+        /**
+         * @param newValue the new value
+         * @return the previous value
+         */
+        public int set(final int newValue) {
+            properties.metrics().written(UserPropertiesMetrics.Type.INTEGER);
+            final UserProperty.OfInt property = (UserProperty.OfInt) slot();
+            synchronized (property) {
+                final int oldValue = property.get();
+                property.set(newValue);
+                return oldValue;
+            }
+        }
+
+        /**
+         * Atomically adds one to the value of the property
+         *
+         * @return the updated value
+         */
+        public int incrementAndGet() {
+            return addAndGet(1);
+        }
+
+        /**
+         * Atomically adds to the value of the property
+         *
+         * @param delta the value to add
+         * @return the updated value
+         */
+        public int addAndGet(final int delta) {
+            properties.metrics().written(UserPropertiesMetrics.Type.INTEGER);
+            final UserProperty.OfInt property = (UserProperty.OfInt) slot();
+            synchronized (property) {
+                final int newValue = property.get() + delta;
+                property.set(newValue);
+                return newValue;
+            }
+        }
+
+        /**
+         * Atomically sets the value of the property if it is the expected value
+         *
+         * @param expectedValue the value the property must have
+         * @param newValue the new value
+         * @return <code>true</code> if the value was set, <code>false</code> if the property had another value
+         */
+        public boolean compareAndSet(final int expectedValue, final int newValue) {
+            properties.metrics().written(UserPropertiesMetrics.Type.INTEGER);
+            final UserProperty.OfInt property = (UserProperty.OfInt) slot();
+            synchronized (property) {
+                if (property.get() != expectedValue) {
+                    return false;
+                }
+                property.set(newValue);
+                return true;
+            }
+        }
+
+        /**
+         * Atomically combines the value of the property with another value, the function is called while the
+         * property is locked so it should be quick and must not use the properties
+         *
+         * @param x the value to combine with
+         * @param accumulator combines the current value with x to give the new value
+         * @return the updated value
+         */
+        public int accumulateAndGet(final int x, final IntBinaryOperator accumulator) {
+            properties.metrics().written(UserPropertiesMetrics.Type.INTEGER);
+            final UserProperty.OfInt property = (UserProperty.OfInt) slot();
+            synchronized (property) {
+                final int newValue = accumulator.applyAsInt(property.get(), x);
+                property.set(newValue);
+                return newValue;
+            }
+        }
+
+        @Override
+        public Integer getValue() {
+            return get();
+        }
+
+        @Override
+        public Integer setValue(final Integer value) {
+            return set(value);
+        }
+    }
+
+    /**
+     * A handle to a {@link Long} property
+     */
+    public static final class OfLong extends UserPropertyKey<Long> {
+        private final long defaultValue;
+
+        OfLong(final UserProperties properties, final String name, final long defaultValue) {
+            super(properties, name);
+            this.defaultValue = defaultValue;
+            slot();
+        }
+
+        @Override
+        UserProperty create() {
+            return checked(properties.resolve(name, UserPropertyFactory.createLong(name, defaultValue),
+                    UserPropertiesMetrics.Type.LONG), UserProperty.OfLong.class, Long.class);
+        }
+
+        /**
+         * @return the {@link Long long} value of the property
+         */
+        public long get() {
+            properties.metrics().read(UserPropertiesMetrics.Type.LONG);
+            return ((UserProperty.OfLong) slot()).get();
+        }
+
+        /**
+         * @param newValue the new value
+         * @return the previous value
+         */
+        public long set(final long newValue) {
+            properties.metrics().written(UserPropertiesMetrics.Type.LONG);
+            final UserProperty.OfLong property = (UserProperty.OfLong) slot();
+            synchronized (property) {
+                final long oldValue = property.get();
+                property.set(newValue);
+                return oldValue;
+            }
+        }
+
+        /**
+         * Atomically adds one to the value of the property
+         *
+         * @return the updated value
+         */
+        public long incrementAndGet() {
+            return addAndGet(1);
+        }
+
+        /**
+         * Atomically adds to the value of the property
+         *
+         * @param delta the value to add
+         * @return the updated value
+         */
+        public long addAndGet(final long delta) {
+            properties.metrics().written(UserPropertiesMetrics.Type.LONG);
+            final UserProperty.OfLong property = (UserProperty.OfLong) slot();
+            synchronized (property) {
+                final long newValue = property.get() + delta;
+                property.set(newValue);
+                return newValue;
+            }
+        }
+
+        /**
+         * Atomically sets the value of the property if it is the expected value
+         *
+         * @param expectedValue the value the property must have
+         * @param newValue the new value
+         * @return <code>true</code> if the value was set, <code>false</code> if the property had another value
+         */
+        public boolean compareAndSet(final long expectedValue, final long newValue) {
+            properties.metrics().written(UserPropertiesMetrics.Type.LONG);
+            final UserProperty.OfLong property = (UserProperty.OfLong) slot();
+            synchronized (property) {
+                if (property.get() != expectedValue) {
+                    return false;
+                }
+                property.set(newValue);
+                return true;
+            }
+        }
+
+        /**
+         * Atomically combines the value of the property with another value, the function is called while the
+         * property is locked so it should be quick and must not use the properties
+         *
+         * @param x the value to combine with
+         * @param accumulator combines the current value with x to give the new value
+         * @return the updated value
+         */
+        public long accumulateAndGet(final long x, final LongBinaryOperator accumulator) {
+            properties.metrics().written(UserPropertiesMetrics.Type.LONG);
+            final UserProperty.OfLong property = (UserProperty.OfLong) slot();
+            synchronized (property) {
+                final long newValue = accumulator.applyAsLong(property.get(), x);
+                property.set(newValue);
+                return newValue;
+            }
+        }
+
+        @Override
+        public Long getValue() {
+            return get();
+        }
+
+        @Override
+        public Long setValue(final Long value) {
+            return set(value);
+        }
+    }
+
+    /**
+     * A handle to a {@link Double} property
+     */
+    public static final class OfDouble extends UserPropertyKey<Double> {
+        private final double defaultValue;
+
+        OfDouble(final UserProperties properties, final String name, final double defaultValue) {
+            super(properties, name);
+            this.defaultValue = defaultValue;
+            slot();
+        }
+
+        @Override
+        UserProperty create() {
+            return checked(properties.resolve(name, UserPropertyFactory.createDouble(name, defaultValue),
+                    UserPropertiesMetrics.Type.DOUBLE), UserProperty.OfDouble.class, Double.class);
+        }
+
+        /**
+         * @return the {@link Double double} value of the property
+         */
+        public double get() {
+            properties.metrics().read(UserPropertiesMetrics.Type.DOUBLE);
+            return ((UserProperty.OfDouble) slot()).get();
+        }
+
+        /**
+         * @param newValue the new value
+         * @return the previous value
+         */
+        public double set(final double newValue) {
+            properties.metrics().written(UserPropertiesMetrics.Type.DOUBLE);
+            final UserProperty.OfDouble property = (UserProperty.OfDouble) slot();
+            synchronized (property) {
+                final double oldValue = property.get();
+                property.set(newValue);
+                return oldValue;
+            }
+        }
+
+        /**
+         * Atomically adds one to the value of the property
+         *
+         * @return the updated value
+         */
+        public double incrementAndGet() {
+            return addAndGet(1.0);
+        }
+
+        /**
+         * Atomically adds to the value of the property
+         *
+         * @param delta the value to add
+         * @return the updated value
+         */
+        public double addAndGet(final double delta) {
+            properties.metrics().written(UserPropertiesMetrics.Type.DOUBLE);
+            final UserProperty.OfDouble property = (UserProperty.OfDouble) slot();
+            synchronized (property) {
+                final double newValue = property.get() + delta;
+                property.set(newValue);
+                return newValue;
+            }
+        }
+
+        /**
+         * Atomically sets the value of the property if it is the expected value, the values
+         * are compared by their bits as {@link Double#equals(Object)} does, so NaN can be expected
+         *
+         * @param expectedValue the value the property must have
+         * @param newValue the new value
+         * @return <code>true</code> if the value was set, <code>false</code> if the property had another value
+         */
+        public boolean compareAndSet(final double expectedValue, final double newValue) {
+            properties.metrics().written(UserPropertiesMetrics.Type.DOUBLE);
+            final UserProperty.OfDouble property = (UserProperty.OfDouble) slot();
+            synchronized (property) {
+                if (Double.doubleToLongBits(property.get()) != Double.doubleToLongBits(expectedValue)) {
+                    return false;
+                }
+                property.set(newValue);
+                return true;
+            }
+        }
+
+        /**
+         * Atomically combines the value of the property with another value, the function is called while the
+         * property is locked so it should be quick and must not use the properties
+         *
+         * @param x the value to combine with
+         * @param accumulator combines the current value with x to give the new value
+         * @return the updated value
+         */
+        public double accumulateAndGet(final double x, final DoubleBinaryOperator accumulator) {
+            properties.metrics().written(UserPropertiesMetrics.Type.DOUBLE);
+            final UserProperty.OfDouble property = (UserProperty.OfDouble) slot();
+            synchronized (property) {
+                final double newValue = accumulator.applyAsDouble(property.get(), x);
+                property.set(newValue);
+                return newValue;
+            }
+        }
+
+        @Override
+        public Double getValue() {
+            return get();
+        }
+
+        @Override
+        public Double setValue(final Double value) {
+            return set(value);
+        }
+    }
+
+    /**
+     * A handle to a {@link Float} property
+     */
+    public static final class OfFloat extends UserPropertyKey<Float> {
+        private final float defaultValue;
+
+        OfFloat(final UserProperties properties, final String name, final float defaultValue) {
+            super(properties, name);
+            this.defaultValue = defaultValue;
+            slot();
+        }
+
+        @Override
+        UserProperty create() {
+            return checked(properties.resolve(name, UserPropertyFactory.createFloat(name, defaultValue),
+                    UserPropertiesMetrics.Type.FLOAT), UserProperty.OfFloat.class, Float.class);
+        }
+
+        /**
+         * @return the {@link Float float} value of the property
+         */
+        public float get() {
+            properties.metrics().read(UserPropertiesMetrics.Type.FLOAT);
+            return ((UserProperty.OfFloat) slot()).get();
+        }
+
+        /**
+         * @param newValue the new value
+         * @return the previous value
+         */
+        public float set(final float newValue) {
+            properties.metrics().written(UserPropertiesMetrics.Type.FLOAT);
+            final UserProperty.OfFloat property = (UserProperty.OfFloat) slot();
+            synchronized (property) {
+                final float oldValue = property.get();
+                property.set(newValue);
+                return oldValue;
+            }
+        }
+
+        @Override
+        public Float getValue() {
+            return get();
+        }
+
+        @Override
+        public Float setValue(final Float value) {
+            return set(value);
+        }
+    }
+
+    /**
+     * A handle to a {@link Boolean} property
+     */
+    public static final class OfBoolean extends UserPropertyKey<Boolean> {
+        private final boolean defaultValue;
+
+        OfBoolean(final UserProperties properties, final String name, final boolean defaultValue) {
+            super(properties, name);
+            this.defaultValue = defaultValue;
+            slot();
+        }
+
+        @Override
+        UserProperty create() {
+            return checked(properties.resolve(name, UserPropertyFactory.createBoolean(name, defaultValue),
+                    UserPropertiesMetrics.Type.BOOLEAN), UserProperty.OfBoolean.class, Boolean.class);
+        }
+
+        /**
+         * @return the {@link Boolean boolean} value of the property
+         */
+        public boolean get() {
+            properties.metrics().read(UserPropertiesMetrics.Type.BOOLEAN);
+            return ((UserProperty.OfBoolean) slot()).get();
+        }
+
+        /**
+         * @param newValue the new value
+         * @return the previous value
+         */
+        public boolean set(final boolean newValue) {
+            properties.metrics().written(UserPropertiesMetrics.Type.BOOLEAN);
+            final UserProperty.OfBoolean property = (UserProperty.OfBoolean) slot();
+            synchronized (property) {
+                final boolean oldValue = property.get();
+                property.set(newValue);
+                return oldValue;
+            }
+        }
+
+        @Override
+        public Boolean getValue() {
+            return get();
+        }
+
+        @Override
+        public Boolean setValue(final Boolean value) {
+            return set(value);
+        }
+    }
+
+    /**
+     * A handle to a {@link String} property
+     */
+    public static final class OfString extends UserPropertyKey<String> {
+        private final String defaultValue;
+
+        OfString(final UserProperties properties, final String name, final String defaultValue) {
+            super(properties, name);
+            this.defaultValue = defaultValue;
+            slot();
+        }
+
+        @Override
+        UserProperty create() {
+            final UserProperty property = properties.resolve(name, UserPropertyFactory.createString(name, defaultValue),
+                    UserPropertiesMetrics.Type.STRING);
+            if (property.getValue() != null && !(property.getValue() instanceof String)) {
+                throw new ClassCastException(String.format("User Property %s is a %s not a String", name,
+                        property.getValue().getClass().getSimpleName()));
+            }
+            return property;
+        }
+
+        /**
+         * @return the {@link String} value of the property
+         */
+        public String get() {
+            properties.metrics().read(UserPropertiesMetrics.Type.STRING);
+            return (String) slot().getValue();
+        }
+
+        /**
+         * @param newValue the new value
+         * @return the previous value
+         */
+        public String set(final String newValue) {
+            properties.metrics().written(UserPropertiesMetrics.Type.STRING);
+            final UserProperty<Object> property = slot();
+            synchronized (property) {
+                final String oldValue = (String) property.getValue();
+                property.setValue(newValue);
+                return oldValue;
+            }
+        }
+
+        @Override
+        public String getValue() {
+            return get();
+        }
+
+        @Override
+        public String setValue(final String value) {
+            return set(value);
+        }
+    }
+}
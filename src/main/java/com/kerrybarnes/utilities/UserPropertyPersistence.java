@@ -29,6 +29,19 @@ public interface UserPropertyPersistence {
      */
     OutputStream getOutputStream() throws IOException;
 
+    /**
+     * Called with an {@link OutputStream} from {@link #getOutputStream()} when
+     * the properties could not be completely written, instead of closing it.
+     * Implementations that can should discard the partial write and keep the
+     * previously persisted contents.
+     *
+     * @param out the {@link OutputStream} that was being written
+     * @throws IOException if an I/O error occurs
+     */
+    default void discard(OutputStream out) throws IOException {
+        out.close();
+    }
+
     /**
      * Determines if the persistence target to load/store the
      * properties from the {@link UserProperties} currently exists
@@ -0,0 +1,240 @@
+package com.kerrybarnes.utilities.binary;
+
+import com.kerrybarnes.utilities.IndexedUserPropertyCodec;
+import com.kerrybarnes.utilities.UserPropertiesIndex;
+import com.kerrybarnes.utilities.UserProperty;
+import com.kerrybarnes.utilities.UserPropertyCodec;
+import com.kerrybarnes.utilities.UserPropertyFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A compact tag-length-value {@link UserPropertyCodec}.  The stream starts with a four byte magic number,
+ * which includes the format version, and the number of properties.  Each property is then written as
+ *
+ * <pre>
+ *     [byte tag][int length][short key length][key UTF-8][value]
+ * </pre>
+ *
+ * where the length covers everything after it, and the value is a 4 byte int, an 8 byte double, an 8 byte
+ * long, a 4 byte float, a single byte boolean, the remaining bytes as UTF-8 for a String, or the remaining
+ * bytes as they are for a binary value.  The tags match those of the
+ * {@link com.kerrybarnes.utilities.persistence.UserPropertiesMappedPersistence}, a property with an unknown
+ * tag is skipped so a newer file can still be read.  The streams are left open.
+ *
+ * The lengths allow the data to be indexed by reading only the keys, see {@link IndexedUserPropertyCodec}.
+ */
+public class BinaryUserPropertyCodec implements IndexedUserPropertyCodec {
+    private static Logger log = LogManager.getLogger(BinaryUserPropertyCodec.class);
+
+    public static final int MAGIC = 0x55504201;
+
+    static final byte TYPE_INT = 1;
+    static final byte TYPE_DOUBLE = 2;
+    static final byte TYPE_LONG = 3;
+    static final byte TYPE_STRING = 4;
+    static final byte TYPE_FLOAT = 5;
+    static final byte TYPE_BOOLEAN = 6;
+    static final byte TYPE_BYTES = 7;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public Map<String, UserProperty> read(final InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+        final int magic = data.readInt();
+        if (magic != MAGIC) {
+            throw new IOException(String.format("Not a binary User Properties stream, found 0x%08x", magic));
+        }
+
+        final int count = data.readInt();
+        final Map<String, UserProperty> properties = new TreeMap<>();
+        byte[] record = new byte[256];
+        for (int i = 0; i < count; i++) {
+            final byte tag = data.readByte();
+            final int length = data.readInt();
+            if (length < 2) {
+                throw new IOException(String.format("Corrupt binary User Properties record, length %d", length));
+            }
+            if (record.length < length) {
+                record = new byte[Math.max(length, record.length * 2)];
+            }
+            data.readFully(record, 0, length);
+
+            final ByteBuffer buffer = ByteBuffer.wrap(record, 0, length);
+            final int keyLength = buffer.getShort() & 0xffff;
+            final String key = new String(record, buffer.position(), keyLength, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + keyLength);
+            final UserProperty property = decodeValue(tag, key, buffer);
+            if (property != null) {
+                properties.put(key, property);
+            }
+        }
+        return properties;
+    }
+
+    @Override
+    public UserPropertiesIndex index(final byte[] data) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a binary User Properties stream");
+        }
+
+        final int count = buffer.getInt();
+        final String[] keys = new String[count];
+        final int[] offsets = new int[count];
+        int size = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                final int offset = buffer.position();
+                final byte tag = buffer.get();
+                final int length = buffer.getInt();
+                final int end = buffer.position() + length;
+                final int keyLength = buffer.getShort() & 0xffff;
+                if (length < 2 || end > data.length || keyLength > length - 2) {
+                    throw new IOException(String.format("Corrupt binary User Properties record at %d", offset));
+                }
+                if (tag >= TYPE_INT && tag <= TYPE_BYTES) {
+                    keys[size] = new String(data, buffer.position(), keyLength, StandardCharsets.UTF_8);
+                    offsets[size++] = offset;
+                }
+                buffer.position(end);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated binary User Properties stream", e);
+        }
+        return new UserPropertiesIndex(data, keys, offsets, size, BinaryUserPropertyCodec::decode);
+    }
+
+    /**
+     * Decodes the record starting at the supplied offset
+     */
+    private static UserProperty decode(final byte[] data, final int offset, final String key) {
+        final ByteBuffer buffer = ByteBuffer.wrap(data, offset, data.length - offset);
+        final byte tag = buffer.get();
+        final int length = buffer.getInt();
+        buffer.limit(buffer.position() + length);
+        buffer.position(buffer.position() + 2 + (buffer.getShort(buffer.position()) & 0xffff));
+        return decodeValue(tag, key, buffer);
+    }
+
+    /**
+     * Decodes the value of a record, the buffer is positioned after the key and limited to the end of the record
+     *
+     * @return the {@link UserProperty} or <code>null</code> if the tag is unknown
+     */
+    private static UserProperty decodeValue(final byte tag, final String key, final ByteBuffer buffer) {
+        switch (tag) {
+            case TYPE_INT:
+                return UserPropertyFactory.createInt(key, buffer.getInt());
+            case TYPE_DOUBLE:
+                return UserPropertyFactory.createDouble(key, buffer.getDouble());
+            case TYPE_LONG:
+                return UserPropertyFactory.createLong(key, buffer.getLong());
+            case TYPE_STRING:
+                return UserPropertyFactory.createString(key, new String(buffer.array(),
+                        buffer.arrayOffset() + buffer.position(), buffer.remaining(), StandardCharsets.UTF_8));
+            case TYPE_FLOAT:
+                return UserPropertyFactory.createFloat(key, buffer.getFloat());
+            case TYPE_BOOLEAN:
+                return UserPropertyFactory.createBoolean(key, buffer.get() != 0);
+            case TYPE_BYTES:
+                final byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return UserPropertyFactory.createBytes(key, bytes);
+            default:
+                log.warn(String.format("Skipping User Property %s with unknown type %d", key, tag));
+                return null;
+        }
+    }
+
+    @Override
+    public void write(final OutputStream out, final Map<String, UserProperty> properties) throws IOException {
+        // the count is written first, so take a copy in case a concurrent map changes size
+        final List<UserProperty> values = new ArrayList<>(properties.values());
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        data.writeInt(MAGIC);
+        data.writeInt(values.size());
+        for (UserProperty property : values) {
+            final byte[] key = property.getName().getBytes(StandardCharsets.UTF_8);
+            if (key.length > 0xffff) {
+                throw new IOException(String.format("User Property key is too long, %d bytes", key.length));
+            }
+
+            if (property instanceof UserProperty.OfInt) {
+                writeHeader(data, TYPE_INT, key, 4);
+                data.writeInt(((UserProperty.OfInt) property).get());
+            } else if (property instanceof UserProperty.OfDouble) {
+                writeHeader(data, TYPE_DOUBLE, key, 8);
+                data.writeDouble(((UserProperty.OfDouble) property).get());
+            } else if (property instanceof UserProperty.OfLong) {
+                writeHeader(data, TYPE_LONG, key, 8);
+                data.writeLong(((UserProperty.OfLong) property).get());
+            } else if (property instanceof UserProperty.OfFloat) {
+                writeHeader(data, TYPE_FLOAT, key, 4);
+                data.writeFloat(((UserProperty.OfFloat) property).get());
+            } else if (property instanceof UserProperty.OfBoolean) {
+                writeHeader(data, TYPE_BOOLEAN, key, 1);
+                data.writeBoolean(((UserProperty.OfBoolean) property).get());
+            } else {
+                final Object value = property.getValue();
+                if (value instanceof Integer) {
+                    writeHeader(data, TYPE_INT, key, 4);
+                    data.writeInt((Integer) value);
+                } else if (value instanceof Double) {
+                    writeHeader(data, TYPE_DOUBLE, key, 8);
+                    data.writeDouble((Double) value);
+                } else if (value instanceof Long) {
+                    writeHeader(data, TYPE_LONG, key, 8);
+                    data.writeLong((Long) value);
+                } else if (value instanceof Float) {
+                    writeHeader(data, TYPE_FLOAT, key, 4);
+                    data.writeFloat((Float) value);
+                } else if (value instanceof Boolean) {
+                    writeHeader(data, TYPE_BOOLEAN, key, 1);
+                    data.writeBoolean((Boolean) value);
+                } else if (value instanceof String) {
+                    final byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+                    writeHeader(data, TYPE_STRING, key, bytes.length);
+                    data.write(bytes);
+                } else if (value instanceof byte[]) {
+                    final byte[] bytes = (byte[]) value;
+                    writeHeader(data, TYPE_BYTES, key, bytes.length);
+                    data.write(bytes);
+                } else {
+                    throw new IOException(String.format("Unable to write User Property %s of type %s",
+                            property.getName(), value == null ? null : value.getClass().getName()));
+                }
+            }
+        }
+        data.flush();
+    }
+
+    @Override
+    public boolean recognizes(final byte[] header, final int length) {
+        return length >= 4 && ByteBuffer.wrap(header, 0, 4).getInt() == MAGIC;
+    }
+
+    private static void writeHeader(final DataOutputStream data, final byte tag, final byte[] key,
+                                    final int valueLength) throws IOException {
+        data.writeByte(tag);
+        data.writeInt(2 + key.length + valueLength);
+        data.writeShort(key.length);
+        data.write(key);
+    }
+}
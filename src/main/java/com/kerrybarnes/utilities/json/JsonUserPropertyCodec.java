@@ -0,0 +1,211 @@
+package com.kerrybarnes.utilities.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.kerrybarnes.utilities.IndexedUserPropertyCodec;
+import com.kerrybarnes.utilities.UserPropertiesIndex;
+import com.kerrybarnes.utilities.UserProperty;
+import com.kerrybarnes.utilities.UserPropertyCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The default {@link UserPropertyCodec}, stores the properties as indented JSON
+ * using the {@link UserPropertySerializer} and {@link UserPropertyDeSerializer}.
+ * The properties are streamed through a {@link JsonParser} and {@link JsonGenerator}
+ * rather than data binding.  The streams are left open, closing them is up to the caller.
+ *
+ * {@link #compact()} creates a codec writing the same structure without the indentation, the
+ * redundant key, or the quotes around numbers.  Both are read by either codec.
+ *
+ * Indexing, see {@link IndexedUserPropertyCodec}, still tokenizes the whole copy but skips over each
+ * property, which is then parsed on its own when it is first used.
+ */
+public class JsonUserPropertyCodec implements IndexedUserPropertyCodec {
+    public final static String MODULE_NAME = "UserPropertyModule";
+
+    private final JsonFactory factory;
+    private final boolean indent;
+    private final UserPropertySerializer serializer;
+    private final UserPropertyDeSerializer deSerializer = new UserPropertyDeSerializer();
+
+    /**
+     * Creates a codec with its own {@link JsonFactory}
+     */
+    public JsonUserPropertyCodec() {
+        this(createFactory(), true, true, false);
+    }
+
+    /**
+     * Creates a codec sharing the {@link JsonFactory} of the supplied {@link ObjectMapper}
+     *
+     * @param mapper the {@link ObjectMapper} to share
+     */
+    public JsonUserPropertyCodec(final ObjectMapper mapper) {
+        this(mapper, true);
+    }
+
+    /**
+     * Creates a codec sharing the {@link JsonFactory} of the supplied {@link ObjectMapper}
+     *
+     * @param mapper the {@link ObjectMapper} to share
+     * @param writeKey when <code>false</code> the redundant <code>key</code> field is not
+     *                 written, it is optional when reading
+     */
+    public JsonUserPropertyCodec(final ObjectMapper mapper, final boolean writeKey) {
+        this(mapper.getFactory(), true, writeKey, false);
+    }
+
+    /**
+     * @param factory the {@link JsonFactory} used to create the parsers and generators
+     * @param indent whether the output is indented
+     * @param writeKey whether the redundant <code>key</code> field is written
+     * @param nativeValues whether Integer and Double values are written as JSON numbers
+     */
+    public JsonUserPropertyCodec(final JsonFactory factory, final boolean indent,
+                                 final boolean writeKey, final boolean nativeValues) {
+        this.factory = factory;
+        this.indent = indent;
+        this.serializer = new UserPropertySerializer(writeKey, nativeValues);
+    }
+
+    /**
+     * Creates a codec writing JSON without indentation, keys or quoted numbers
+     *
+     * @return a new compact {@link JsonUserPropertyCodec}
+     */
+    public static JsonUserPropertyCodec compact() {
+        return new JsonUserPropertyCodec(createFactory(), false, false, true);
+    }
+
+    /**
+     * Every property key is a distinct field name, interning them costs more than the rest of the parse
+     *
+     * @return a new {@link JsonFactory} that does not intern field names
+     */
+    private static JsonFactory createFactory() {
+        return JsonFactory.builder().disable(JsonFactory.Feature.INTERN_FIELD_NAMES).build();
+    }
+
+    /**
+     * Creates the Jackson module that serializes {@link UserProperty} values, for use
+     * with an {@link ObjectMapper} outside of the codec
+     *
+     * @return a new {@link SimpleModule}
+     */
+    public static SimpleModule module() {
+        final SimpleModule module = new SimpleModule(MODULE_NAME);
+        module.addDeserializer(UserProperty.class, new UserPropertyDeSerializer());
+        module.addSerializer(UserProperty.class, new UserPropertySerializer());
+        return module;
+    }
+
+    @Override
+    public Map<String, UserProperty> read(final InputStream in) throws IOException {
+        final Map<String, UserProperty> properties = new TreeMap<>();
+        try (JsonParser parser = factory.createParser(in)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected the properties to be a JSON object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String key = parser.currentName();
+                parser.nextToken();
+                properties.put(key, deSerializer.readProperty(parser, key));
+            }
+        }
+        return properties;
+    }
+
+    @Override
+    public UserPropertiesIndex index(final byte[] data) throws IOException {
+        String[] keys = new String[256];
+        int[] offsets = new int[256];
+        int size = 0;
+        try (JsonParser parser = factory.createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected the properties to be a JSON object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String key = parser.currentName();
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "Expected property " + key + " to be a JSON object");
+                }
+                final long offset = parser.currentTokenLocation().getByteOffset();
+                if (offset < 0) {
+                    return null;
+                }
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    offsets = Arrays.copyOf(offsets, size * 2);
+                }
+                keys[size] = key;
+                offsets[size++] = (int) offset;
+                parser.skipChildren();
+            }
+        }
+        return new UserPropertiesIndex(data, keys, offsets, size, this::decode);
+    }
+
+    /**
+     * Parses the property whose object starts at the supplied offset
+     */
+    private UserProperty decode(final byte[] data, final int offset, final String key) throws IOException {
+        try (JsonParser parser = factory.createParser(data, offset, data.length - offset)) {
+            parser.nextToken();
+            return deSerializer.readProperty(parser, key);
+        }
+    }
+
+    @Override
+    public void write(final OutputStream out, final Map<String, UserProperty> properties) throws IOException {
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (indent) {
+                generator.setPrettyPrinter(new DefaultPrettyPrinter());
+            }
+            generator.writeStartObject();
+            for (Map.Entry<String, UserProperty> entry : properties.entrySet()) {
+                generator.writeFieldName(entry.getKey());
+                serializer.writeProperty(entry.getValue(), generator);
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Recognizes a JSON object, the first character other than white space or a byte order mark is <code>{</code>
+     */
+    @Override
+    public boolean recognizes(final byte[] header, final int length) {
+        int i = 0;
+        if (length >= 3 && (header[0] & 0xff) == 0xef && (header[1] & 0xff) == 0xbb && (header[2] & 0xff) == 0xbf) {
+            i = 3;
+        }
+        for (; i < length; i++) {
+            switch (header[i]) {
+                case ' ':
+                case '\t':
+                case '\r':
+                case '\n':
+                    break;
+                default:
+                    return header[i] == '{';
+            }
+        }
+        return false;
+    }
+}
@@ -1,41 +1,148 @@
 package com.kerrybarnes.utilities.json;
 
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.JsonNode;
-import javafx.beans.property.Property;
-import javafx.beans.property.SimpleObjectProperty;
+import com.kerrybarnes.utilities.UserProperty;
+import com.kerrybarnes.utilities.UserPropertyFactory;
 
 import java.io.IOException;
+import java.util.Base64;
 
-public class UserPropertyDeSerializer extends JsonDeserializer<Property>  {
+/**
+ * Reads a property directly from the parser's token stream into the typed {@link UserProperty}, without
+ * building a tree.  The value may be a string, as written by {@link UserPropertySerializer}, or a native
+ * JSON number or boolean, and the fields may appear in any order.  A binary value is a base64 string.  The
+ * <code>key</code> field is optional, when it is missing the name of the enclosing field, which is the map key,
+ * is used instead.
+ */
+public class UserPropertyDeSerializer extends JsonDeserializer<UserProperty>  {
     @Override
-    public Property deserialize(JsonParser jp, DeserializationContext ctxt) throws IOException, JsonProcessingException {
-        ObjectCodec oc = jp.getCodec();
-        JsonNode node = oc.readTree(jp);
-        final String key = node.get("key").asText();
-        final String type = node.get("type").asText();
-        final String value = node.get("value").asText();
-
-        final Property<Object> result;
+    public UserProperty deserialize(JsonParser jp, DeserializationContext ctxt)
+            throws IOException, JsonProcessingException {
+        return readProperty(jp, jp.getParsingContext().getParent() != null
+                ? jp.getParsingContext().getParent().getCurrentName()
+                : null);
+    }
+
+    /**
+     * Read a property, the parser must be positioned on the <code>START_OBJECT</code>
+     * or first <code>FIELD_NAME</code> of the property and is left on its <code>END_OBJECT</code>
+     *
+     * @param jp the {@link JsonParser} to read from
+     * @param defaultKey the property name, or key, to use when there is no <code>key</code> field
+     * @return the {@link UserProperty}
+     * @throws IOException if an I/O error occurs or the property is malformed
+     */
+    public UserProperty readProperty(final JsonParser jp, final String defaultKey) throws IOException {
+        JsonToken token = jp.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = jp.nextToken();
+        }
+
+        String key = defaultKey;
+        String type = null;
+        JsonToken valueToken = null;
+        String text = null;
+        long longValue = 0;
+        double doubleValue = 0;
+        byte[] binary = null;
+
+        for (; token == JsonToken.FIELD_NAME; token = jp.nextToken()) {
+            final String field = jp.currentName();
+            final JsonToken fieldToken = jp.nextToken();
+            switch (field) {
+                case "key":
+                    key = jp.getText();
+                    break;
+                case "type":
+                    type = jp.getText();
+                    break;
+                case "value":
+                    valueToken = fieldToken;
+                    if (fieldToken == JsonToken.VALUE_NUMBER_INT) {
+                        longValue = jp.getLongValue();
+                    } else if (fieldToken == JsonToken.VALUE_NUMBER_FLOAT) {
+                        doubleValue = jp.getDoubleValue();
+                    } else if (fieldToken == JsonToken.VALUE_EMBEDDED_OBJECT) {
+                        binary = jp.getBinaryValue();
+                    } else if (fieldToken != JsonToken.VALUE_NULL) {
+                        text = jp.getText();
+                    }
+                    break;
+                default:
+                    jp.skipChildren();
+                    break;
+            }
+        }
+
+        if (token != JsonToken.END_OBJECT) {
+            throw new JsonParseException(jp, "Expected the end of the property but found " + token);
+        }
+        if (key == null) {
+            throw new JsonParseException(jp, "Found property without a key");
+        }
+        if (type == null) {
+            throw new JsonParseException(jp, String.format("Found property %s without a type", key));
+        }
+
+        final boolean number = valueToken == JsonToken.VALUE_NUMBER_INT || valueToken == JsonToken.VALUE_NUMBER_FLOAT;
+        if (text == null && !number && isNumericType(type)) {
+            throw new JsonParseException(jp, String.format("Found %s property %s without a value", type, key));
+        }
+
+        final UserProperty result;
         switch(type) {
             case "Double":
-                result = new SimpleObjectProperty<>(null, key, Double.parseDouble(value));
+                result = UserPropertyFactory.createDouble(key, valueToken == JsonToken.VALUE_NUMBER_FLOAT
+                        ? doubleValue
+                        : valueToken == JsonToken.VALUE_NUMBER_INT ? longValue : Double.parseDouble(text));
                 break;
             case "Integer":
-                result = new SimpleObjectProperty<>(null, key, Integer.parseInt(value));
+                try {
+                    result = UserPropertyFactory.createInt(key, valueToken == JsonToken.VALUE_NUMBER_INT
+                            ? Math.toIntExact(longValue)
+                            : Integer.parseInt(text));
+                } catch (ArithmeticException e) {
+                    throw new JsonParseException(jp,
+                            String.format("Found Integer property %s out of range: %d", key, longValue), e);
+                }
                 break;
             case "String":
-                result = new SimpleObjectProperty<>(null, key, value);
+                result = UserPropertyFactory.createString(key, text);
+                break;
+            case "Long":
+                result = UserPropertyFactory.createLong(key, valueToken == JsonToken.VALUE_NUMBER_INT
+                        ? longValue
+                        : Long.parseLong(text));
+                break;
+            case "Float":
+                result = UserPropertyFactory.createFloat(key, valueToken == JsonToken.VALUE_NUMBER_FLOAT
+                        ? (float) doubleValue
+                        : valueToken == JsonToken.VALUE_NUMBER_INT ? longValue : Float.parseFloat(text));
+                break;
+            case "Boolean":
+                result = UserPropertyFactory.createBoolean(key, valueToken == JsonToken.VALUE_TRUE
+                        || (valueToken != JsonToken.VALUE_FALSE && Boolean.parseBoolean(text)));
+                break;
+            case UserPropertySerializer.BINARY_TYPE:
+                result = UserPropertyFactory.createBytes(key, binary != null
+                        ? binary
+                        : text == null ? null : Base64.getMimeDecoder().decode(text));
                 break;
             default:
-                throw new RuntimeException("Found Unexpected Data Type: " + type);
+                throw new JsonParseException(jp,
+                        String.format("Found Unexpected Data Type %s for property %s", type, key));
 
         }
 
         return result;
     }
+
+    private static boolean isNumericType(final String type) {
+        return "Double".equals(type) || "Integer".equals(type) || "Long".equals(type) || "Float".equals(type);
+    }
 }
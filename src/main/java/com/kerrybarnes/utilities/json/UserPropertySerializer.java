@@ -3,18 +3,85 @@ package com.kerrybarnes.utilities.json;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
-import javafx.beans.property.Property;
+import com.kerrybarnes.utilities.UserProperty;
 
 import java.io.IOException;
 
-public class UserPropertySerializer extends JsonSerializer<Property> {
+/**
+ * Writes a property as an object holding its <code>key</code>, <code>type</code> and <code>value</code>.  The
+ * value is written as a string by default, or as a native JSON number or boolean, see
+ * {@link #UserPropertySerializer(boolean, boolean)}.  A binary value, of type <code>Binary</code>, is always
+ * written as a base64 string.
+ */
+public class UserPropertySerializer extends JsonSerializer<UserProperty> {
+    public static final String BINARY_TYPE = "Binary";
+
+    private final boolean writeKey;
+    private final boolean nativeValues;
+
+    public UserPropertySerializer() {
+        this(true);
+    }
+
+    /**
+     * @param writeKey when <code>false</code> the <code>key</code> field is left out, it
+     *                 duplicates the map key and {@link UserPropertyDeSerializer} falls
+     *                 back to the map key when it is missing
+     */
+    public UserPropertySerializer(final boolean writeKey) {
+        this(writeKey, false);
+    }
+
+    /**
+     * @param writeKey when <code>false</code> the <code>key</code> field is left out
+     * @param nativeValues when <code>true</code> numeric and Boolean values are written as JSON
+     *                     numbers and booleans rather than strings, both are accepted by
+     *                     {@link UserPropertyDeSerializer}
+     */
+    public UserPropertySerializer(final boolean writeKey, final boolean nativeValues) {
+        this.writeKey = writeKey;
+        this.nativeValues = nativeValues;
+    }
 
     @Override
-    public void serialize(Property value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+    public void serialize(UserProperty value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        writeProperty(value, gen);
+    }
+
+    /**
+     * Write a property to the generator
+     *
+     * @param value the {@link UserProperty} to write
+     * @param gen the {@link JsonGenerator} to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeProperty(UserProperty value, JsonGenerator gen) throws IOException {
         gen.writeStartObject();
-        gen.writeStringField("key", value.getName());
-        gen.writeStringField("type", value.getValue().getClass().getSimpleName());
-        gen.writeStringField("value", value.getValue().toString());
+        if (writeKey) {
+            gen.writeStringField("key", value.getName());
+        }
+        if (nativeValues && value instanceof UserProperty.OfInt) {
+            gen.writeStringField("type", "Integer");
+            gen.writeNumberField("value", ((UserProperty.OfInt) value).get());
+        } else if (nativeValues && value instanceof UserProperty.OfDouble) {
+            gen.writeStringField("type", "Double");
+            gen.writeNumberField("value", ((UserProperty.OfDouble) value).get());
+        } else if (nativeValues && value instanceof UserProperty.OfLong) {
+            gen.writeStringField("type", "Long");
+            gen.writeNumberField("value", ((UserProperty.OfLong) value).get());
+        } else if (nativeValues && value instanceof UserProperty.OfFloat) {
+            gen.writeStringField("type", "Float");
+            gen.writeNumberField("value", ((UserProperty.OfFloat) value).get());
+        } else if (nativeValues && value instanceof UserProperty.OfBoolean) {
+            gen.writeStringField("type", "Boolean");
+            gen.writeBooleanField("value", ((UserProperty.OfBoolean) value).get());
+        } else if (value.getValue() instanceof byte[]) {
+            gen.writeStringField("type", BINARY_TYPE);
+            gen.writeBinaryField("value", (byte[]) value.getValue());
+        } else {
+            gen.writeStringField("type", value.getValue().getClass().getSimpleName());
+            gen.writeStringField("value", value.getValue().toString());
+        }
         gen.writeEndObject();
     }
 }
@@ -0,0 +1,309 @@
+package com.kerrybarnes.utilities.metrics;
+
+import com.kerrybarnes.utilities.UserPropertiesMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the {@link UserPropertiesMetrics} in {@link LongAdder}s and {@link LatencyHistogram}s and publishes them
+ * as a JMX MBean named <code>com.kerrybarnes.utilities:type=UserProperties,name=${name}</code> once
+ * {@link #register(String)} is called.
+ */
+public class JmxUserPropertiesMetrics implements UserPropertiesMetrics, JmxUserPropertiesMetricsMBean {
+    private static Logger log = LogManager.getLogger(JmxUserPropertiesMetrics.class);
+
+    public final static String DOMAIN = "com.kerrybarnes.utilities";
+
+    private final LongAdder[] reads = adders();
+    private final LongAdder[] writes = adders();
+    private final LongAdder[] creates = adders();
+    private final LongAdder changes = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private volatile long lastBytesWritten = 0;
+    private volatile LatencyHistogram serialize = new LatencyHistogram();
+    private volatile LatencyHistogram streamClose = new LatencyHistogram();
+    private volatile long loadNanos = 0;
+    private volatile int loadedProperties = 0;
+    private ObjectName objectName;
+
+    private static LongAdder[] adders() {
+        final LongAdder[] adders = new LongAdder[Type.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Publishes the metrics with the platform {@link MBeanServer}
+     *
+     * @param name the name of the instance, used in the {@link ObjectName}
+     * @return this {@link JmxUserPropertiesMetrics}
+     */
+    public synchronized JmxUserPropertiesMetrics register(final String name) {
+        try {
+            objectName = ObjectName.getInstance(String.format("%s:type=UserProperties,name=%s", DOMAIN, ObjectName.quote(name)));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            final String msg = String.format("Unable to register User Properties metrics %s, reason: %s", name, e.toString());
+            log.error(msg, e);
+            throw new IllegalStateException(msg, e);
+        }
+        return this;
+    }
+
+    /**
+     * Removes the metrics from the platform {@link MBeanServer} if they were registered
+     */
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            log.warn(String.format("Unable to unregister User Properties metrics %s, reason: %s", objectName, e.toString()));
+        }
+        objectName = null;
+    }
+
+    /**
+     * @return the {@link ObjectName} the metrics are registered as, <code>null</code> if they are not
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public void read(final Type type) {
+        reads[type.ordinal()].increment();
+    }
+
+    @Override
+    public void written(final Type type) {
+        writes[type.ordinal()].increment();
+    }
+
+    @Override
+    public void created(final Type type) {
+        creates[type.ordinal()].increment();
+    }
+
+    @Override
+    public void changed() {
+        changes.increment();
+    }
+
+    @Override
+    public void flushed() {
+        flushes.increment();
+    }
+
+    @Override
+    public void serialized(final long nanos, final long bytes) {
+        serialize.record(nanos);
+        if (bytes >= 0) {
+            bytesWritten.add(bytes);
+            lastBytesWritten = bytes;
+        }
+    }
+
+    @Override
+    public void streamClosed(final long nanos) {
+        streamClose.record(nanos);
+    }
+
+    @Override
+    public void loaded(final long nanos, final int properties) {
+        loadNanos = nanos;
+        loadedProperties = properties;
+    }
+
+    @Override
+    public long getIntReads() {
+        return reads[Type.INTEGER.ordinal()].sum();
+    }
+
+    @Override
+    public long getIntWrites() {
+        return writes[Type.INTEGER.ordinal()].sum();
+    }
+
+    @Override
+    public long getDoubleReads() {
+        return reads[Type.DOUBLE.ordinal()].sum();
+    }
+
+    @Override
+    public long getDoubleWrites() {
+        return writes[Type.DOUBLE.ordinal()].sum();
+    }
+
+    @Override
+    public long getStringReads() {
+        return reads[Type.STRING.ordinal()].sum();
+    }
+
+    @Override
+    public long getStringWrites() {
+        return writes[Type.STRING.ordinal()].sum();
+    }
+
+    @Override
+    public long getLongReads() {
+        return reads[Type.LONG.ordinal()].sum();
+    }
+
+    @Override
+    public long getLongWrites() {
+        return writes[Type.LONG.ordinal()].sum();
+    }
+
+    @Override
+    public long getFloatReads() {
+        return reads[Type.FLOAT.ordinal()].sum();
+    }
+
+    @Override
+    public long getFloatWrites() {
+        return writes[Type.FLOAT.ordinal()].sum();
+    }
+
+    @Override
+    public long getBooleanReads() {
+        return reads[Type.BOOLEAN.ordinal()].sum();
+    }
+
+    @Override
+    public long getBooleanWrites() {
+        return writes[Type.BOOLEAN.ordinal()].sum();
+    }
+
+    @Override
+    public long getBytesReads() {
+        return reads[Type.BYTES.ordinal()].sum();
+    }
+
+    @Override
+    public long getBytesWrites() {
+        return writes[Type.BYTES.ordinal()].sum();
+    }
+
+    @Override
+    public long getDefaultsCreated() {
+        long total = 0;
+        for (LongAdder adder : creates) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public long getChanges() {
+        return changes.sum();
+    }
+
+    @Override
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * @return the average number of changes written by each flush
+     */
+    @Override
+    public double getCoalescingRatio() {
+        final long flushed = flushes.sum();
+        return flushed == 0 ? 0.0 : (double) changes.sum() / flushed;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getLastBytesWritten() {
+        return lastBytesWritten;
+    }
+
+    @Override
+    public long getSerializeMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(serialize.getMean());
+    }
+
+    @Override
+    public long getSerializeP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(serialize.getPercentile(99));
+    }
+
+    @Override
+    public long getSerializeMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(serialize.getMax());
+    }
+
+    @Override
+    public long getStreamCloseMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(streamClose.getMean());
+    }
+
+    @Override
+    public long getStreamCloseP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(streamClose.getPercentile(99));
+    }
+
+    @Override
+    public long getStreamCloseMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(streamClose.getMax());
+    }
+
+    @Override
+    public long getLoadMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(loadNanos);
+    }
+
+    @Override
+    public int getLoadedProperties() {
+        return loadedProperties;
+    }
+
+    /**
+     * Clears the counters and histograms, the load measurement is kept
+     */
+    @Override
+    public void reset() {
+        for (LongAdder[] adders : new LongAdder[][] {reads, writes, creates}) {
+            for (LongAdder adder : adders) {
+                adder.reset();
+            }
+        }
+        changes.reset();
+        flushes.reset();
+        bytesWritten.reset();
+        lastBytesWritten = 0;
+        serialize = new LatencyHistogram();
+        streamClose = new LatencyHistogram();
+    }
+
+    /**
+     * @return the serialize latency histogram, in nanoseconds
+     */
+    public LatencyHistogram getSerializeHistogram() {
+        return serialize;
+    }
+
+    /**
+     * @return the persistence stream close latency histogram, in nanoseconds
+     */
+    public LatencyHistogram getStreamCloseHistogram() {
+        return streamClose;
+    }
+}
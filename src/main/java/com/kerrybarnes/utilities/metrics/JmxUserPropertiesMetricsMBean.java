@@ -0,0 +1,64 @@
+package com.kerrybarnes.utilities.metrics;
+
+/**
+ * The attributes published by {@link JmxUserPropertiesMetrics}, latencies are in microseconds
+ */
+public interface JmxUserPropertiesMetricsMBean {
+    long getIntReads();
+
+    long getIntWrites();
+
+    long getDoubleReads();
+
+    long getDoubleWrites();
+
+    long getStringReads();
+
+    long getStringWrites();
+
+    long getLongReads();
+
+    long getLongWrites();
+
+    long getFloatReads();
+
+    long getFloatWrites();
+
+    long getBooleanReads();
+
+    long getBooleanWrites();
+
+    long getBytesReads();
+
+    long getBytesWrites();
+
+    long getDefaultsCreated();
+
+    long getChanges();
+
+    long getFlushes();
+
+    double getCoalescingRatio();
+
+    long getBytesWritten();
+
+    long getLastBytesWritten();
+
+    long getSerializeMeanMicros();
+
+    long getSerializeP99Micros();
+
+    long getSerializeMaxMicros();
+
+    long getStreamCloseMeanMicros();
+
+    long getStreamCloseP99Micros();
+
+    long getStreamCloseMaxMicros();
+
+    long getLoadMillis();
+
+    int getLoadedProperties();
+
+    void reset();
+}
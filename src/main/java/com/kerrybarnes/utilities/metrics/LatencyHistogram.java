@@ -0,0 +1,70 @@
+package com.kerrybarnes.utilities.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of durations in nanoseconds with a bucket for each power of two, so a
+ * percentile is accurate to within a factor of two, which is enough to spot a slow disk.
+ */
+public class LatencyHistogram {
+    private final LongAdder[] buckets = new LongAdder[64];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private volatile long max = 0;
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos the duration to record
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        buckets[63 - Long.numberOfLeadingZeros(value | 1)].increment();
+        count.increment();
+        total.add(value);
+        if (value > max) {
+            synchronized (this) {
+                if (value > max) {
+                    max = value;
+                }
+            }
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMean() {
+        final long samples = count.sum();
+        return samples == 0 ? 0 : total.sum() / samples;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket holding the percentile, 0 if nothing has been recorded
+     */
+    public long getPercentile(final double percentile) {
+        final long samples = count.sum();
+        if (samples == 0) {
+            return 0;
+        }
+        final long target = (long) Math.ceil(samples * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i].sum();
+            if (seen >= Math.max(1, target)) {
+                return Math.min(max, i == 63 ? Long.MAX_VALUE : (1L << (i + 1)) - 1);
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,150 @@
+package com.kerrybarnes.utilities.persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An {@link OutputStream} that replaces a file atomically.  The data is written to a temporary
+ * file next to the target, which is forced to disk according to the {@link Durability} and
+ * then moved over the target when the stream is closed.  Readers, or a crash, see either the
+ * old or the new file but never a partially written one.  Calling {@link #discard()} instead
+ * of {@link #close()} deletes the temporary file and leaves the target untouched.
+ */
+public class AtomicFileOutputStream extends OutputStream {
+    private static Logger log = LogManager.getLogger(AtomicFileOutputStream.class);
+
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * How far the data is forced to disk before the temporary file replaces the target
+     */
+    public enum Durability {
+        /**
+         * Rely on the operating system to write the data, the rename is still atomic
+         * but after a power failure the file may be empty
+         */
+        NONE,
+        /**
+         * Force the file contents to disk before the rename
+         */
+        DATA,
+        /**
+         * Force the file contents and metadata to disk before the rename, and the
+         * directory afterwards so the rename itself is durable
+         */
+        FULL
+    }
+
+    private final Path target;
+    private final Path temp;
+    private final Durability durability;
+    private final FileChannel channel;
+    private final OutputStream out;
+    private boolean closed = false;
+
+    /**
+     * @param target the file to replace when the stream is closed
+     * @param durability how far the data is forced to disk before the rename
+     * @throws IOException if the temporary file cannot be created
+     */
+    public AtomicFileOutputStream(final Path target, final Durability durability) throws IOException {
+        this.target = target;
+        this.durability = durability;
+        final Path directory = target.toAbsolutePath().getParent();
+        this.temp = Files.createTempFile(directory, "." + target.getFileName(), ".tmp");
+        this.channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Forces the data to disk and replaces the target with it
+     *
+     * @throws IOException if an I/O error occurs, the target is left untouched
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            out.flush();
+            if (durability != Durability.NONE) {
+                channel.force(durability == Durability.FULL);
+            }
+            channel.close();
+            move();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        if (durability == Durability.FULL) {
+            syncDirectory();
+        }
+    }
+
+    /**
+     * Abandons the data written so far, the target is left untouched
+     *
+     * @throws IOException if the temporary file cannot be deleted
+     */
+    public void discard() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void move() throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            log.warn(String.format("Atomic move is not supported for %s, replacing it instead", target));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(target.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // not every platform allows a directory to be opened, the rename has still happened
+            log.debug(String.format("Unable to sync the directory of %s, reason: %s", target, e.toString()));
+        }
+    }
+}
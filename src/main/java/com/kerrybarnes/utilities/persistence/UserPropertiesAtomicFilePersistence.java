@@ -0,0 +1,62 @@
+package com.kerrybarnes.utilities.persistence;
+
+import com.kerrybarnes.utilities.UserPropertyPersistence;
+import com.kerrybarnes.utilities.persistence.AtomicFileOutputStream.Durability;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * File based persistence that never leaves a partially written file.  Each write goes to a
+ * temporary file which atomically replaces the properties file once it is complete, see
+ * {@link AtomicFileOutputStream}.  The {@link Durability} defaults to {@link Durability#DATA}.
+ */
+public class UserPropertiesAtomicFilePersistence implements UserPropertyPersistence {
+    private final Path filePath;
+    private final Durability durability;
+
+    public UserPropertiesAtomicFilePersistence() {
+        this(Paths.get(System.getProperty("user.home"),
+                String.format(".%s.local.properties", System.getProperty("user.name"))));
+    }
+
+    /**
+     * @param filePath the properties file
+     */
+    public UserPropertiesAtomicFilePersistence(final Path filePath) {
+        this(filePath, Durability.DATA);
+    }
+
+    /**
+     * @param filePath the properties file
+     * @param durability how far each write is forced to disk before it replaces the file
+     */
+    public UserPropertiesAtomicFilePersistence(final Path filePath, final Durability durability) {
+        this.filePath = filePath;
+        this.durability = durability;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return Files.newInputStream(filePath);
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return new AtomicFileOutputStream(filePath, durability);
+    }
+
+    @Override
+    public void discard(final OutputStream out) throws IOException {
+        ((AtomicFileOutputStream) out).discard();
+    }
+
+    @Override
+    public boolean exists() {
+        return filePath.toFile().exists();
+    }
+}
@@ -0,0 +1,315 @@
+package com.kerrybarnes.utilities.persistence;
+
+import com.kerrybarnes.utilities.UserProperty;
+import com.kerrybarnes.utilities.UserPropertyCodec;
+import com.kerrybarnes.utilities.UserPropertyJournal;
+import com.kerrybarnes.utilities.persistence.AtomicFileOutputStream.Durability;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Journal based persistence, the properties are kept in a snapshot file plus a journal
+ * file, named after the snapshot with a <code>.journal</code> suffix, that changes are
+ * appended to.  Each journal record holds the properties changed by one update, encoded
+ * with the codec, framed by its length and a CRC32 so a record torn by a crash is detected
+ * and dropped on the next load.
+ *
+ * Once the journal is larger than the snapshot, and at least the minimum compaction size,
+ * it asks to be compacted into a new snapshot.  Snapshots are written with an
+ * {@link AtomicFileOutputStream} so a crash while compacting leaves the previous snapshot.
+ * Each journal starts with a header stamping it with the length and CRC32 of the snapshot
+ * it follows, so a journal left behind by a crash between writing a new snapshot and
+ * deleting the journal no longer matches the snapshot and is ignored on the next load,
+ * rather than replaying its older records over the newer snapshot.
+ *
+ * The {@link Durability} applies to the snapshots and the appends alike, unless it is
+ * {@link Durability#NONE} each record is forced to disk before the append returns.  With
+ * {@link Durability#NONE} the last records may be lost on a power failure, but are still
+ * detected as torn and dropped rather than read as corrupt.
+ */
+public class UserPropertiesJournalPersistence implements UserPropertyJournal {
+    private static Logger log = LogManager.getLogger(UserPropertiesJournalPersistence.class);
+
+    public final static String JOURNAL_SUFFIX = ".journal";
+    public final static long DEFAULT_MIN_COMPACTION_BYTES = 64 * 1024;
+
+    private final static int HEADER_BYTES = 8;
+    private final static int JOURNAL_MAGIC = 0x9A4E4C31;
+    private final static int JOURNAL_HEADER_BYTES = 16;
+    private final static long NO_SNAPSHOT = -1;
+
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final long minCompactionBytes;
+    private final Durability durability;
+    private long journalBytes;
+    private boolean stamped = false;
+    private long snapshotLength = NO_SNAPSHOT;
+    private int snapshotCrc;
+
+    public UserPropertiesJournalPersistence() {
+        this(Paths.get(System.getProperty("user.home"),
+                String.format(".%s.local.properties", System.getProperty("user.name"))));
+    }
+
+    /**
+     * @param snapshotPath the snapshot file, the journal is kept next to it
+     */
+    public UserPropertiesJournalPersistence(final Path snapshotPath) {
+        this(snapshotPath, DEFAULT_MIN_COMPACTION_BYTES);
+    }
+
+    /**
+     * @param snapshotPath the snapshot file, the journal is kept next to it
+     * @param minCompactionBytes the journal is not compacted until it reaches this size
+     */
+    public UserPropertiesJournalPersistence(final Path snapshotPath, final long minCompactionBytes) {
+        this(snapshotPath, minCompactionBytes, Durability.DATA);
+    }
+
+    /**
+     * @param snapshotPath the snapshot file, the journal is kept next to it
+     * @param minCompactionBytes the journal is not compacted until it reaches this size
+     * @param durability how far the snapshots and the journal records are forced to disk,
+     *                   defaults to {@link Durability#DATA}
+     */
+    public UserPropertiesJournalPersistence(final Path snapshotPath, final long minCompactionBytes,
+                                            final Durability durability) {
+        this.snapshotPath = snapshotPath;
+        this.journalPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + JOURNAL_SUFFIX);
+        this.minCompactionBytes = minCompactionBytes;
+        this.durability = durability;
+        this.journalBytes = journalPath.toFile().length();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return Files.newInputStream(snapshotPath);
+    }
+
+    /**
+     * The properties written to the stream replace the snapshot, and the journal, when it is closed
+     */
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return new ByteArrayOutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    writeSnapshot(toByteArray());
+                }
+            }
+        };
+    }
+
+    @Override
+    public void discard(final OutputStream out) throws IOException {
+        // nothing is written until the stream is closed
+    }
+
+    @Override
+    public boolean exists() {
+        return snapshotPath.toFile().exists() || journalPath.toFile().exists();
+    }
+
+    @Override
+    public Map<String, UserProperty> replay(final UserPropertyCodec codec) throws IOException {
+        final Map<String, UserProperty> properties;
+        if (snapshotPath.toFile().exists()) {
+            final byte[] snapshot = Files.readAllBytes(snapshotPath);
+            stamp(snapshot);
+            properties = codec.read(new ByteArrayInputStream(snapshot));
+        } else {
+            snapshotLength = NO_SNAPSHOT;
+            snapshotCrc = 0;
+            stamped = true;
+            properties = new TreeMap<>();
+        }
+
+        if (!journalPath.toFile().exists()) {
+            journalBytes = 0;
+            return properties;
+        }
+
+        final ByteBuffer journal = ByteBuffer.wrap(Files.readAllBytes(journalPath));
+        if (journal.remaining() >= 4 && journal.getInt(0) == JOURNAL_MAGIC) {
+            if (journal.remaining() < JOURNAL_HEADER_BYTES
+                    || journal.getLong(4) != snapshotLength || journal.getInt(12) != snapshotCrc) {
+                log.warn(String.format("Discarding journal %s, it does not follow the snapshot %s",
+                        journalPath, snapshotPath));
+                Files.delete(journalPath);
+                journalBytes = 0;
+                return properties;
+            }
+            journal.position(JOURNAL_HEADER_BYTES);
+        }
+
+        final CRC32 crc = new CRC32();
+        int records = 0;
+        while (journal.remaining() >= HEADER_BYTES) {
+            final int start = journal.position();
+            final int length = journal.getInt();
+            final int checksum = journal.getInt();
+            if (length < 0 || length > journal.remaining()) {
+                journal.position(start);
+                break;
+            }
+
+            crc.reset();
+            crc.update(journal.array(), journal.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                journal.position(start);
+                break;
+            }
+
+            properties.putAll(codec.read(new ByteArrayInputStream(journal.array(), journal.position(), length)));
+            journal.position(journal.position() + length);
+            records++;
+        }
+
+        if (journal.hasRemaining()) {
+            log.warn(String.format("Discarding %d bytes of incomplete journal records from %s",
+                    journal.remaining(), journalPath));
+            try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+                channel.truncate(journal.position());
+            }
+        }
+        journalBytes = journal.position();
+        log.debug(String.format("Replayed %d journal records from %s", records, journalPath));
+
+        return properties;
+    }
+
+    @Override
+    public void append(final Collection<UserProperty> changed, final UserPropertyCodec codec) throws IOException {
+        final Map<String, UserProperty> record = new LinkedHashMap<>();
+        for (UserProperty property : changed) {
+            record.put(property.getName(), property);
+        }
+
+        // a new journal starts with the stamp of the snapshot it follows
+        final int start = journalBytes == 0 ? JOURNAL_HEADER_BYTES : 0;
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payload.write(new byte[start + HEADER_BYTES]);
+        codec.write(payload, record);
+
+        final ByteBuffer buffer = ByteBuffer.wrap(payload.toByteArray());
+        final int length = buffer.limit() - start - HEADER_BYTES;
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), start + HEADER_BYTES, length);
+        if (start > 0) {
+            if (!stamped) {
+                stamp(snapshotPath.toFile().exists() ? Files.readAllBytes(snapshotPath) : null);
+            }
+            buffer.putInt(0, JOURNAL_MAGIC);
+            buffer.putLong(4, snapshotLength);
+            buffer.putInt(12, snapshotCrc);
+        }
+        buffer.putInt(start, length);
+        buffer.putInt(start + 4, (int) crc.getValue());
+
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                start > 0 ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (durability != Durability.NONE) {
+                channel.force(durability == Durability.FULL);
+            }
+        }
+        journalBytes += buffer.limit();
+    }
+
+    @Override
+    public boolean needsCompaction() {
+        return journalBytes >= minCompactionBytes && journalBytes > snapshotPath.toFile().length();
+    }
+
+    @Override
+    public void snapshot(final Map<String, UserProperty> properties, final UserPropertyCodec codec) throws IOException {
+        final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        codec.write(encoded, properties);
+        writeSnapshot(encoded.toByteArray());
+    }
+
+    /**
+     * Replaces the snapshot and then deletes the journal.  A crash between the two leaves a journal
+     * stamped with the previous snapshot, which is ignored on load.  Only when the new snapshot is
+     * identical to the previous one would the stamp still match, so then the journal is deleted first,
+     * losing nothing as the snapshot already holds the values.
+     */
+    private void writeSnapshot(final byte[] snapshot) throws IOException {
+        if (!stamped) {
+            stamp(snapshotPath.toFile().exists() ? Files.readAllBytes(snapshotPath) : null);
+        }
+        final long previousLength = snapshotLength;
+        final int previousCrc = snapshotCrc;
+        stamp(snapshot);
+        if (snapshotLength == previousLength && snapshotCrc == previousCrc) {
+            Files.deleteIfExists(journalPath);
+            journalBytes = 0;
+        }
+
+        final AtomicFileOutputStream out = new AtomicFileOutputStream(snapshotPath, durability);
+        try {
+            out.write(snapshot);
+        } catch (IOException | RuntimeException e) {
+            out.discard();
+            snapshotLength = previousLength;
+            snapshotCrc = previousCrc;
+            throw e;
+        }
+        try {
+            out.close();
+        } catch (IOException | RuntimeException e) {
+            snapshotLength = previousLength;
+            snapshotCrc = previousCrc;
+            throw e;
+        }
+
+        Files.deleteIfExists(journalPath);
+        journalBytes = 0;
+    }
+
+    /**
+     * Records the length and CRC32 of the snapshot, the stamp written at the start of the journal
+     *
+     * @param snapshot the contents of the snapshot, <code>null</code> if there is none
+     */
+    private void stamp(final byte[] snapshot) {
+        if (snapshot == null) {
+            snapshotLength = NO_SNAPSHOT;
+            snapshotCrc = 0;
+        } else {
+            final CRC32 crc = new CRC32();
+            crc.update(snapshot, 0, snapshot.length);
+            snapshotLength = snapshot.length;
+            snapshotCrc = (int) crc.getValue();
+        }
+        stamped = true;
+    }
+
+    public Path getJournalPath() {
+        return journalPath;
+    }
+}
@@ -0,0 +1,675 @@
+package com.kerrybarnes.utilities.persistence;
+
+import com.kerrybarnes.utilities.FormatDetectingUserPropertyCodec;
+import com.kerrybarnes.utilities.IndexedUserPropertyJournal;
+import com.kerrybarnes.utilities.UserPropertiesIndex;
+import com.kerrybarnes.utilities.UserProperty;
+import com.kerrybarnes.utilities.UserPropertyCodec;
+import com.kerrybarnes.utilities.UserPropertyFactory;
+import com.kerrybarnes.utilities.json.JsonUserPropertyCodec;
+import com.kerrybarnes.utilities.persistence.AtomicFileOutputStream.Durability;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Binary persistence for large stores, the properties are kept in a memory mapped file rather than
+ * being encoded by the {@link UserPropertyCodec}, which is ignored.  The file is a 16 byte header,
+ * <code>magic, version, end, garbage</code>, followed by length prefixed records up to <code>end</code>:
+ *
+ * <pre>
+ *     entry:  [tag=1][type][short key length][key UTF-8][8 byte slot]
+ *     string: [tag=2][int capacity][UTF-8 or raw bytes]
+ * </pre>
+ *
+ * The slot holds the Integer, Double, Long, Float or Boolean value, or for a String or binary value the
+ * offset and length of a string record, which holds the UTF-8 or the raw bytes.  Numeric and Boolean
+ * changes are written in place, a String or binary value is written in place when it fits in its
+ * current record, otherwise a new string record is appended and the old one becomes garbage.  Entries
+ * are only appended for new keys, or when the type of a key changes and the old entry is tagged dead.
+ * New records are written before <code>end</code> is advanced so a crash part way through an append
+ * leaves them unreferenced.  The changes written in place are not crash safe: a String rewritten in its
+ * record has its bytes written before its length, and neither a slot nor a value spanning pages is written
+ * atomically, so a crash part way through an append may leave a changed value torn, or lose a key whose type
+ * changed.  The records themselves stay readable, a file whose records or offsets do not fit is rejected
+ * with an {@link IOException} when it is loaded or a value is read.  Use a journal or atomic file persistence
+ * where a torn value is not acceptable.
+ *
+ * Loading only walks the entries to find the keys, with {@link
+ * com.kerrybarnes.utilities.UserProperties.Builder#lazy(boolean)} the values are then read straight out of
+ * the mapped file the first time each is used.  Changes only dirty the pages they touch, which are the only
+ * pages the operating system writes back when the mapping is forced, according to the {@link Durability}.
+ * Once the garbage exceeds half of the file, and the minimum compaction size, the live records are rewritten
+ * into a new file that atomically replaces the old one.  A file is unmapped as soon as it is no longer used,
+ * rather than when the buffer is collected, as Windows does not allow a mapped file to be replaced.
+ *
+ * {@link com.kerrybarnes.utilities.UserProperties} uses the {@link IndexedUserPropertyJournal} methods, the
+ * {@link UserPropertyCodec} they are passed is ignored.  The streams are for copying the properties to or from
+ * another persistence layer, they are encoded by the codec given to the constructor.
+ */
+public class UserPropertiesMappedPersistence implements IndexedUserPropertyJournal {
+    private static Logger log = LogManager.getLogger(UserPropertiesMappedPersistence.class);
+
+    public final static long DEFAULT_MIN_COMPACTION_BYTES = 1024 * 1024;
+
+    private final static int MAGIC = 0x55504D42;
+    private final static int VERSION = 1;
+    private final static int HEADER_BYTES = 16;
+    private final static int END_OFFSET = 8;
+    private final static int GARBAGE_OFFSET = 12;
+    private final static int INITIAL_CAPACITY = 64 * 1024;
+
+    private final static byte ENTRY = 1;
+    private final static byte STRING = 2;
+    private final static byte DEAD_ENTRY = 3;
+
+    private final static byte TYPE_INTEGER = 1;
+    private final static byte TYPE_DOUBLE = 2;
+    private final static byte TYPE_LONG = 3;
+    private final static byte TYPE_STRING = 4;
+    private final static byte TYPE_FLOAT = 5;
+    private final static byte TYPE_BOOLEAN = 6;
+    private final static byte TYPE_BYTES = 7;
+
+    private final static int ENTRY_HEADER_BYTES = 4;
+    private final static int SLOT_BYTES = 8;
+    private final static int STRING_HEADER_BYTES = 5;
+
+    private final Path filePath;
+    private final Durability durability;
+    private final long minCompactionBytes;
+    private final UserPropertyCodec codec;
+
+    private final Map<String, Integer> entries = new HashMap<>();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int end;
+    private int garbage;
+
+    public UserPropertiesMappedPersistence() {
+        this(Paths.get(System.getProperty("user.home"),
+                String.format(".%s.local.properties.bin", System.getProperty("user.name"))));
+    }
+
+    /**
+     * @param filePath the properties file
+     */
+    public UserPropertiesMappedPersistence(final Path filePath) {
+        this(filePath, Durability.NONE, DEFAULT_MIN_COMPACTION_BYTES);
+    }
+
+    /**
+     * @param filePath the properties file
+     * @param durability {@link Durability#NONE} leaves writing the dirty pages to the operating
+     *                   system, otherwise the mapping is forced after each append
+     * @param minCompactionBytes the file is not compacted until it holds this much garbage
+     */
+    public UserPropertiesMappedPersistence(final Path filePath, final Durability durability,
+                                           final long minCompactionBytes) {
+        this(filePath, durability, minCompactionBytes, new JsonUserPropertyCodec());
+    }
+
+    /**
+     * @param filePath the properties file
+     * @param durability {@link Durability#NONE} leaves writing the dirty pages to the operating
+     *                   system, otherwise the mapping is forced after each append
+     * @param minCompactionBytes the file is not compacted until it holds this much garbage
+     * @param codec the {@link UserPropertyCodec} that encodes the streams, any known format can be
+     *              written to the output stream
+     */
+    public UserPropertiesMappedPersistence(final Path filePath, final Durability durability,
+                                           final long minCompactionBytes, final UserPropertyCodec codec) {
+        this.filePath = filePath;
+        this.durability = durability;
+        this.minCompactionBytes = minCompactionBytes;
+        this.codec = codec;
+    }
+
+    /**
+     * The mapped properties encoded by the codec given to the constructor
+     */
+    @Override
+    public synchronized InputStream getInputStream() throws IOException {
+        if (buffer == null && !exists()) {
+            throw new NoSuchFileException(filePath.toString());
+        }
+        ensureOpen();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(out, properties());
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    /**
+     * The properties written to the stream replace the mapped properties when it is closed
+     */
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return new ByteArrayOutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    final UserPropertyCodec reader = new FormatDetectingUserPropertyCodec(codec);
+                    snapshot(reader.read(new ByteArrayInputStream(toByteArray())), reader);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void discard(final OutputStream out) throws IOException {
+        // nothing is written until the stream is closed
+    }
+
+    @Override
+    public boolean exists() {
+        return filePath.toFile().exists();
+    }
+
+    @Override
+    public synchronized Map<String, UserProperty> replay(final UserPropertyCodec codec) throws IOException {
+        open(filePath);
+        scan();
+        return properties();
+    }
+
+    /**
+     * Indexes the keys of the mapped entries, each value is read from the mapped file when it is decoded.  The
+     * value is found by its key rather than the offset in the index, so the index is still valid after the file
+     * has been compacted.
+     */
+    @Override
+    public synchronized UserPropertiesIndex index(final UserPropertyCodec codec) throws IOException {
+        open(filePath);
+        scan();
+        final String[] keys = entries.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        final int[] offsets = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            offsets[i] = entries.get(keys[i]);
+        }
+        return new UserPropertiesIndex(null, keys, offsets, keys.length, (data, offset, key) -> read(key));
+    }
+
+    @Override
+    public synchronized void append(final Collection<UserProperty> changed, final UserPropertyCodec codec)
+            throws IOException {
+        ensureOpen();
+
+        for (UserProperty property : changed) {
+            final String key = property.getName();
+            final byte type = typeOf(property);
+            final Integer offset = entries.get(key);
+            if (offset != null && buffer.get(offset + 1) == type) {
+                writeSlot(slotOffset(offset), type, property);
+            } else {
+                if (offset != null) {
+                    kill(offset);
+                }
+                appendEntry(key, type, property);
+            }
+        }
+
+        buffer.putInt(GARBAGE_OFFSET, garbage);
+        buffer.putInt(END_OFFSET, end);
+        if (durability != Durability.NONE) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized boolean needsCompaction() {
+        return garbage >= minCompactionBytes && garbage > (end - HEADER_BYTES) / 2;
+    }
+
+    @Override
+    public synchronized void snapshot(final Map<String, UserProperty> properties, final UserPropertyCodec codec)
+            throws IOException {
+        final Path temp = Files.createTempFile(filePath.toAbsolutePath().getParent(), "." + filePath.getFileName(), ".tmp");
+        close();
+        try {
+            open(temp);
+            for (UserProperty property : properties.values()) {
+                appendEntry(property.getName(), typeOf(property), property);
+            }
+            buffer.putInt(GARBAGE_OFFSET, garbage);
+            buffer.putInt(END_OFFSET, end);
+            buffer.force();
+            close();
+            try {
+                Files.move(temp, filePath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, filePath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            Files.deleteIfExists(temp);
+            if (exists()) {
+                open(filePath);
+                scan();
+            }
+            throw e;
+        }
+
+        // the offsets recorded while writing the new file are still valid
+        map(filePath);
+    }
+
+    /**
+     * @return the number of bytes in use, including garbage
+     */
+    public synchronized int usedBytes() {
+        return end;
+    }
+
+    /**
+     * @return the number of bytes used by dead entries and replaced strings
+     */
+    public synchronized int garbageBytes() {
+        return garbage;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (buffer == null) {
+            open(filePath);
+            scan();
+        }
+    }
+
+    private void open(final Path path) throws IOException {
+        close();
+        final boolean created = !path.toFile().exists() || path.toFile().length() == 0;
+        map(path);
+        entries.clear();
+        if (created) {
+            ensureCapacity(HEADER_BYTES);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            end = HEADER_BYTES;
+            garbage = 0;
+            buffer.putInt(END_OFFSET, end);
+            buffer.putInt(GARBAGE_OFFSET, garbage);
+        } else {
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IOException(String.format("%s is not a mapped properties file", path));
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException(String.format("Unsupported mapped properties version %d in %s", buffer.getInt(4), path));
+            }
+            end = buffer.getInt(END_OFFSET);
+            garbage = buffer.getInt(GARBAGE_OFFSET);
+            if (end < HEADER_BYTES || end > buffer.limit() || garbage < 0 || garbage > end) {
+                throw new IOException(String.format("Corrupt header, end %d and garbage %d, in %s", end, garbage, path));
+            }
+        }
+    }
+
+    private void map(final Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), INITIAL_CAPACITY));
+    }
+
+    private void close() throws IOException {
+        if (buffer != null) {
+            unmap(buffer);
+            buffer = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Releases a mapping now rather than when the buffer is collected.  There is no public API for this, so the
+     * cleaner is called reflectively, through <code>Unsafe.invokeCleaner</code> from Java 9 or the cleaner of the
+     * buffer on Java 8.  The buffer must not be used again, if it cannot be unmapped it is left to the collector.
+     */
+    private static void unmap(final MappedByteBuffer mapped) {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = null;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                // Java 8, the buffer has the cleaner
+            }
+
+            if (invokeCleaner != null) {
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), mapped);
+            } else {
+                final Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(mapped);
+                if (cleaner != null) {
+                    final Method clean = cleaner.getClass().getMethod("clean");
+                    clean.setAccessible(true);
+                    clean.invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug(String.format("Unable to unmap the properties file, reason: %s", e.toString()));
+        }
+    }
+
+    /**
+     * Walks the records building the key to entry index, each record must fit before <code>end</code>
+     */
+    private void scan() throws IOException {
+        int position = HEADER_BYTES;
+        while (position < end) {
+            final byte tag = buffer.get(position);
+            final long next;
+            switch (tag) {
+                case ENTRY:
+                case DEAD_ENTRY:
+                    if (position + ENTRY_HEADER_BYTES > end) {
+                        throw corrupt(position);
+                    }
+                    final int keyLength = buffer.getShort(position + 2) & 0xFFFF;
+                    next = (long) position + ENTRY_HEADER_BYTES + keyLength + SLOT_BYTES;
+                    if (next > end) {
+                        throw corrupt(position);
+                    }
+                    if (tag == ENTRY) {
+                        entries.put(decode(position + ENTRY_HEADER_BYTES, keyLength), position);
+                    }
+                    break;
+                case STRING:
+                    if (position + STRING_HEADER_BYTES > end) {
+                        throw corrupt(position);
+                    }
+                    final int capacity = buffer.getInt(position + 1);
+                    next = (long) position + STRING_HEADER_BYTES + capacity;
+                    if (capacity < 0 || next > end) {
+                        throw corrupt(position);
+                    }
+                    break;
+                default:
+                    throw corrupt(position);
+            }
+            position = (int) next;
+        }
+        log.debug(String.format("Mapped %d properties from %s", entries.size(), filePath));
+    }
+
+    /**
+     * @return a new {@link UserProperty} for each mapped entry
+     */
+    private Map<String, UserProperty> properties() throws IOException {
+        final Map<String, UserProperty> properties = new TreeMap<>();
+        for (Map.Entry<String, Integer> entry : entries.entrySet()) {
+            final int offset = entry.getValue();
+            properties.put(entry.getKey(), readSlot(entry.getKey(), buffer.get(offset + 1), slotOffset(offset)));
+        }
+        return properties;
+    }
+
+    /**
+     * Reads the current value of a key for the {@link UserPropertiesIndex}
+     */
+    private synchronized UserProperty read(final String key) throws IOException {
+        ensureOpen();
+        final Integer offset = entries.get(key);
+        if (offset == null) {
+            throw new IOException(String.format("Property %s is no longer in %s", key, filePath));
+        }
+        return readSlot(key, buffer.get(offset + 1), slotOffset(offset));
+    }
+
+    private UserProperty readSlot(final String key, final byte type, final int slot) throws IOException {
+        switch (type) {
+            case TYPE_INTEGER:
+                return UserPropertyFactory.createInt(key, buffer.getInt(slot));
+            case TYPE_DOUBLE:
+                return UserPropertyFactory.createDouble(key, buffer.getDouble(slot));
+            case TYPE_LONG:
+                return UserPropertyFactory.createLong(key, buffer.getLong(slot));
+            case TYPE_FLOAT:
+                return UserPropertyFactory.createFloat(key, buffer.getFloat(slot));
+            case TYPE_BOOLEAN:
+                return UserPropertyFactory.createBoolean(key, buffer.get(slot) != 0);
+            case TYPE_STRING:
+                final int offset = stringRecord(slot);
+                return UserPropertyFactory.createString(key,
+                        offset < 0 ? null : decode(offset + STRING_HEADER_BYTES, buffer.getInt(slot + 4)));
+            case TYPE_BYTES:
+                final int record = stringRecord(slot);
+                return UserPropertyFactory.createBytes(key,
+                        record < 0 ? null : get(record + STRING_HEADER_BYTES, buffer.getInt(slot + 4)));
+            default:
+                throw new IOException(String.format("Unexpected type %d for %s in %s", type, key, filePath));
+        }
+    }
+
+    private void writeSlot(final int slot, final byte type, final UserProperty property) throws IOException {
+        switch (type) {
+            case TYPE_INTEGER:
+                buffer.putInt(slot, property instanceof UserProperty.OfInt
+                        ? ((UserProperty.OfInt) property).get()
+                        : (Integer) property.getValue());
+                break;
+            case TYPE_DOUBLE:
+                buffer.putDouble(slot, property instanceof UserProperty.OfDouble
+                        ? ((UserProperty.OfDouble) property).get()
+                        : (Double) property.getValue());
+                break;
+            case TYPE_LONG:
+                buffer.putLong(slot, property instanceof UserProperty.OfLong
+                        ? ((UserProperty.OfLong) property).get()
+                        : (Long) property.getValue());
+                break;
+            case TYPE_FLOAT:
+                buffer.putFloat(slot, property instanceof UserProperty.OfFloat
+                        ? ((UserProperty.OfFloat) property).get()
+                        : (Float) property.getValue());
+                break;
+            case TYPE_BOOLEAN:
+                buffer.put(slot, (byte) ((property instanceof UserProperty.OfBoolean
+                        ? ((UserProperty.OfBoolean) property).get()
+                        : (Boolean) property.getValue()) ? 1 : 0));
+                break;
+            case TYPE_BYTES:
+                writeString(slot, (byte[]) property.getValue());
+                break;
+            default:
+                final String value = (String) property.getValue();
+                writeString(slot, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+                break;
+        }
+    }
+
+    /**
+     * @return the offset of the string record the slot refers to, or -1 for a null value
+     * @throws IOException if the record is not a string record before <code>end</code>, or the length does not
+     *                     fit in it
+     */
+    private int stringRecord(final int slot) throws IOException {
+        final int offset = buffer.getInt(slot);
+        if (offset < 0) {
+            return -1;
+        }
+        final int length = buffer.getInt(slot + 4);
+        if (offset < HEADER_BYTES || offset > end - STRING_HEADER_BYTES || buffer.get(offset) != STRING
+                || length < 0 || length > buffer.getInt(offset + 1)
+                || (long) offset + STRING_HEADER_BYTES + length > end) {
+            throw corrupt(slot);
+        }
+        return offset;
+    }
+
+    private IOException corrupt(final int offset) {
+        return new IOException(String.format("Corrupt record at offset %d of %s", offset, filePath));
+    }
+
+    /**
+     * Rewrites the bytes in place when they fit in the current record, which is not crash safe, see the class
+     * documentation, otherwise appends a new record
+     */
+    private void writeString(final int slot, final byte[] bytes) throws IOException {
+        final int offset = stringRecord(slot);
+        if (bytes == null) {
+            if (offset >= 0) {
+                garbage += STRING_HEADER_BYTES + buffer.getInt(offset + 1);
+            }
+            buffer.putInt(slot, -1);
+            buffer.putInt(slot + 4, 0);
+            return;
+        }
+
+        if (offset >= 0 && bytes.length <= buffer.getInt(offset + 1)) {
+            put(offset + STRING_HEADER_BYTES, bytes);
+            buffer.putInt(slot + 4, bytes.length);
+            return;
+        }
+
+        if (offset >= 0) {
+            garbage += STRING_HEADER_BYTES + buffer.getInt(offset + 1);
+        }
+        final int record = appendString(bytes);
+        buffer.putInt(slot, record);
+        buffer.putInt(slot + 4, bytes.length);
+    }
+
+    private int appendString(final byte[] bytes) throws IOException {
+        ensureCapacity(STRING_HEADER_BYTES + bytes.length);
+        final int record = end;
+        buffer.put(record, STRING);
+        buffer.putInt(record + 1, bytes.length);
+        put(record + STRING_HEADER_BYTES, bytes);
+        end += STRING_HEADER_BYTES + bytes.length;
+        return record;
+    }
+
+    private void appendEntry(final String key, final byte type, final UserProperty property) throws IOException {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IOException("Property key is too long: " + key);
+        }
+
+        final int entrySize = ENTRY_HEADER_BYTES + keyBytes.length + SLOT_BYTES;
+        ensureCapacity(entrySize);
+        final int entry = end;
+        buffer.put(entry, ENTRY);
+        buffer.put(entry + 1, type);
+        buffer.putShort(entry + 2, (short) keyBytes.length);
+        put(entry + ENTRY_HEADER_BYTES, keyBytes);
+        end += entrySize;
+
+        final int slot = slotOffset(entry);
+        if (type == TYPE_STRING || type == TYPE_BYTES) {
+            buffer.putInt(slot, -1);
+        }
+        writeSlot(slot, type, property);
+        entries.put(key, entry);
+    }
+
+    private void kill(final int entry) throws IOException {
+        final int slot = slotOffset(entry);
+        final byte type = buffer.get(entry + 1);
+        final int record = type == TYPE_STRING || type == TYPE_BYTES ? stringRecord(slot) : -1;
+        if (record >= 0) {
+            garbage += STRING_HEADER_BYTES + buffer.getInt(record + 1);
+        }
+        garbage += slot + SLOT_BYTES - entry;
+        buffer.put(entry, DEAD_ENTRY);
+    }
+
+    private int slotOffset(final int entry) {
+        return entry + ENTRY_HEADER_BYTES + (buffer.getShort(entry + 2) & 0xFFFF);
+    }
+
+    private void ensureCapacity(final int needed) throws IOException {
+        if ((long) end + needed <= buffer.capacity()) {
+            return;
+        }
+
+        final long capacity = Math.max((long) buffer.capacity() * 2, (long) end + needed);
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("Mapped properties file is limited to 2GB: " + filePath);
+        }
+        final MappedByteBuffer previous = buffer;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        unmap(previous);
+    }
+
+    private String decode(final int offset, final int length) {
+        final ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return StandardCharsets.UTF_8.decode(view).toString();
+    }
+
+    private byte[] get(final int offset, final int length) {
+        final byte[] bytes = new byte[length];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return bytes;
+    }
+
+    private void put(final int offset, final byte[] bytes) {
+        final ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.put(bytes);
+    }
+
+    private static byte typeOf(final UserProperty property) throws IOException {
+        if (property instanceof UserProperty.OfInt) {
+            return TYPE_INTEGER;
+        } else if (property instanceof UserProperty.OfDouble) {
+            return TYPE_DOUBLE;
+        } else if (property instanceof UserProperty.OfLong) {
+            return TYPE_LONG;
+        } else if (property instanceof UserProperty.OfFloat) {
+            return TYPE_FLOAT;
+        } else if (property instanceof UserProperty.OfBoolean) {
+            return TYPE_BOOLEAN;
+        }
+
+        final Object value = property.getValue();
+        if (value instanceof Integer) {
+            return TYPE_INTEGER;
+        } else if (value instanceof Double) {
+            return TYPE_DOUBLE;
+        } else if (value instanceof Long) {
+            return TYPE_LONG;
+        } else if (value instanceof Float) {
+            return TYPE_FLOAT;
+        } else if (value instanceof Boolean) {
+            return TYPE_BOOLEAN;
+        } else if (value instanceof byte[]) {
+            return TYPE_BYTES;
+        } else if (value == null || value instanceof String) {
+            return TYPE_STRING;
+        }
+        throw new IOException("Found Unexpected Data Type: " + value.getClass().getSimpleName());
+    }
+}
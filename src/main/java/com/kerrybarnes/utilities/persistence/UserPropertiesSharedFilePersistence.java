@@ -0,0 +1,165 @@
+package com.kerrybarnes.utilities.persistence;
+
+import com.kerrybarnes.utilities.SharedUserPropertyPersistence;
+import com.kerrybarnes.utilities.persistence.AtomicFileOutputStream.Durability;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * File based persistence for a properties file shared by several processes, by default the same
+ * <code>~/.${user.name}.local.properties</code> as {@link UserPropertiesFileBasedPersistence}.
+ *
+ * A lock file next to the properties file, <code>${file}.lock</code>, is locked with a {@link FileLock} for the
+ * duration of each read-modify-write and holds a counter which is incremented by every write.  The stamp combines
+ * the counter with the modification time of the properties file, so checking for changes reads eight bytes and the
+ * file attributes rather than the file itself.  Writes replace the file atomically, see {@link AtomicFileOutputStream}.
+ */
+public class UserPropertiesSharedFilePersistence implements SharedUserPropertyPersistence {
+    /**
+     * A {@link FileLock} is held by the whole JVM, two instances in the same JVM must also be kept apart
+     */
+    private static final ConcurrentMap<Path, ReentrantLock> localLocks = new ConcurrentHashMap<>();
+
+    private final Path filePath;
+    private final Path lockPath;
+    private final Durability durability;
+    private final ReentrantLock localLock;
+    private FileChannel lockChannel;
+
+    public UserPropertiesSharedFilePersistence() {
+        this(Paths.get(System.getProperty("user.home"),
+                String.format(".%s.local.properties", System.getProperty("user.name"))));
+    }
+
+    /**
+     * @param filePath the properties file
+     */
+    public UserPropertiesSharedFilePersistence(final Path filePath) {
+        this(filePath, Durability.DATA);
+    }
+
+    /**
+     * @param filePath the properties file
+     * @param durability how far each write is forced to disk before it replaces the file
+     */
+    public UserPropertiesSharedFilePersistence(final Path filePath, final Durability durability) {
+        this.filePath = filePath;
+        this.lockPath = filePath.resolveSibling(filePath.getFileName() + ".lock").toAbsolutePath().normalize();
+        this.durability = durability;
+        this.localLock = localLocks.computeIfAbsent(lockPath, p -> new ReentrantLock());
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return Files.newInputStream(filePath);
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return new StampingOutputStream(new AtomicFileOutputStream(filePath, durability));
+    }
+
+    @Override
+    public void discard(final OutputStream out) throws IOException {
+        ((StampingOutputStream) out).discard();
+    }
+
+    @Override
+    public boolean exists() {
+        return filePath.toFile().exists();
+    }
+
+    @Override
+    public Closeable lock() throws IOException {
+        localLock.lock();
+        try {
+            final FileLock fileLock = channel().lock();
+            return () -> {
+                try {
+                    fileLock.release();
+                } finally {
+                    localLock.unlock();
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            localLock.unlock();
+            throw e;
+        }
+    }
+
+    @Override
+    public long stamp() throws IOException {
+        long modified;
+        try {
+            modified = Files.getLastModifiedTime(filePath).toMillis();
+        } catch (NoSuchFileException e) {
+            modified = 0;
+        }
+        return readCounter() * 31 + modified;
+    }
+
+    private synchronized FileChannel channel() throws IOException {
+        if (lockChannel == null) {
+            lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return lockChannel;
+    }
+
+    private long readCounter() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        final FileChannel channel = channel();
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // read until the counter is complete or the file ends
+        }
+        return buffer.hasRemaining() ? 0 : buffer.getLong(0);
+    }
+
+    private void incrementCounter() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        buffer.putLong(0, readCounter() + 1);
+        final FileChannel channel = channel();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+
+    /**
+     * Increments the counter once the file has been replaced, which should be while holding the lock
+     */
+    private class StampingOutputStream extends FilterOutputStream {
+        StampingOutputStream(final AtomicFileOutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+            incrementCounter();
+        }
+
+        void discard() throws IOException {
+            ((AtomicFileOutputStream) out).discard();
+        }
+    }
+}
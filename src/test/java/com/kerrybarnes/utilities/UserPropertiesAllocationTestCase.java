@@ -0,0 +1,150 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class UserPropertiesAllocationTestCase {
+    private final static int ITERATIONS = 200_000;
+    private final static long ALLOWED_BYTES = 16 * 1024;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private UserProperties props;
+
+    @Before
+    public void setupTest() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        // a long debounce keeps the writer scheduled once, leaving only the get/set path to measure
+        props = UserProperties.builder()
+                .persistence(new UserPropertiesByteArrayPersistence())
+                .writeBehind(10, 10, TimeUnit.MINUTES)
+                .build();
+    }
+
+    @After
+    public void reset() {
+        if (props != null) {
+            props.shutdown();
+        }
+    }
+
+    private long allocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void testIntPropertyIsAllocationFree() throws Exception {
+        final String key = "alloc.int.value";
+        props.setIntProperty(key, 1000);
+
+        long sum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            props.setIntProperty(key, 1000 + i);
+            sum += props.getIntProperty(key);
+        }
+
+        final long before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            props.setIntProperty(key, 1000 + i);
+            sum += props.getIntProperty(key);
+        }
+        final long allocated = allocatedBytes() - before;
+
+        assertEquals(1000 + ITERATIONS - 1, props.getIntProperty(key));
+        assertTrue(sum > 0);
+        assertTrue("allocated " + allocated + " bytes", allocated < ALLOWED_BYTES);
+    }
+
+    @Test
+    public void testDoublePropertyIsAllocationFree() throws Exception {
+        final String key = "alloc.dbl.value";
+        props.setDoubleProperty(key, 1000.5);
+
+        double sum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            props.setDoubleProperty(key, 1000.5 + i);
+            sum += props.getDoubleProperty(key);
+        }
+
+        final long before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            props.setDoubleProperty(key, 1000.5 + i);
+            sum += props.getDoubleProperty(key);
+        }
+        final long allocated = allocatedBytes() - before;
+
+        assertEquals(1000.5 + ITERATIONS - 1, props.getDoubleProperty(key), .01);
+        assertTrue(sum > 0);
+        assertTrue("allocated " + allocated + " bytes", allocated < ALLOWED_BYTES);
+    }
+
+    @Test
+    public void testOtherTypesAreAllocationFree() throws Exception {
+        props.setLongProperty("alloc.long.value", 1000L);
+        props.setFloatProperty("alloc.float.value", 1000.5f);
+        props.setBooleanProperty("alloc.boolean.value", true);
+        props.setBytesProperty("alloc.bytes.value", new byte[]{1, 2, 3});
+
+        long sum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            sum += readOtherTypes(i);
+        }
+
+        final long before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sum += readOtherTypes(i);
+        }
+        final long allocated = allocatedBytes() - before;
+
+        assertEquals(1000L + ITERATIONS - 1, props.getLongProperty("alloc.long.value"));
+        assertTrue(sum > 0);
+        assertTrue("allocated " + allocated + " bytes", allocated < ALLOWED_BYTES);
+    }
+
+    @Test
+    public void testKeysAreAllocationFree() throws Exception {
+        final UserPropertyKey.OfInt intKey = props.intKey("alloc.int.key", 1000);
+        final UserPropertyKey.OfDouble doubleKey = props.doubleKey("alloc.dbl.key", 1000.5);
+
+        long sum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            intKey.set(1000 + i);
+            doubleKey.set(1000.5 + i);
+            sum += intKey.get() + (long) doubleKey.get();
+        }
+
+        final long before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            intKey.set(1000 + i);
+            doubleKey.set(1000.5 + i);
+            sum += intKey.get() + (long) doubleKey.get();
+        }
+        final long allocated = allocatedBytes() - before;
+
+        assertEquals(1000 + ITERATIONS - 1, props.getIntProperty("alloc.int.key"));
+        assertTrue(sum > 0);
+        assertTrue("allocated " + allocated + " bytes", allocated < ALLOWED_BYTES);
+    }
+
+    private long readOtherTypes(final int i) {
+        props.setLongProperty("alloc.long.value", 1000L + i);
+        props.setFloatProperty("alloc.float.value", 1000.5f + i);
+        props.setBooleanProperty("alloc.boolean.value", (i & 1) == 0);
+        return props.getLongProperty("alloc.long.value")
+                + (long) props.getFloatProperty("alloc.float.value")
+                + (props.getBooleanProperty("alloc.boolean.value") ? 1 : 0)
+                + props.getBytesProperty("alloc.bytes.value").length;
+    }
+}
@@ -0,0 +1,140 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UserPropertiesAsyncTestCase {
+
+    /**
+     * Records the thread of each write and can hold the writes until released
+     */
+    private static class RecordingPersistence extends UserPropertiesByteArrayPersistence {
+        private final List<Thread> writers = new ArrayList<>();
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+        private volatile boolean failing = false;
+
+        @Override
+        public OutputStream getOutputStream() {
+            try {
+                gate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (writers) {
+                writers.add(Thread.currentThread());
+            }
+            if (failing) {
+                throw new IllegalStateException("disk full");
+            }
+            return super.getOutputStream();
+        }
+    }
+
+    @Test
+    public void testWrittenOffTheCallingThread() throws Exception {
+        final RecordingPersistence persistence = new RecordingPersistence();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final UserProperties props = UserProperties.builder().persistence(persistence).async(executor).build();
+
+        final CompletableFuture<String> first = props.async().setProperty("async.string", "first");
+        assertEquals("first", props.getProperty("async.string"));
+        assertEquals(null, first.get(10, TimeUnit.SECONDS));
+        assertEquals("first", props.async().setProperty("async.string", "second").get(10, TimeUnit.SECONDS));
+        assertEquals(1, (int) props.async().setIntProperty("async.int", 1).thenApply(v -> v + 1).get(10, TimeUnit.SECONDS));
+
+        assertTrue(new String(persistence.getBytes()).contains("second"));
+        for (Thread writer : persistence.writers) {
+            assertNotEquals(Thread.currentThread(), writer);
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testWritesCoalesce() throws Exception {
+        final RecordingPersistence persistence = new RecordingPersistence();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final UserProperties props = UserProperties.builder().persistence(persistence).async(executor).build();
+
+        persistence.gate = new CountDownLatch(1);
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(props.async().setIntProperty("async.int", i));
+        }
+        persistence.gate.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        assertTrue(persistence.getWriteCount() <= 2);
+        assertTrue(new String(persistence.getBytes()).contains("\"value\" : \"99\""));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testRejectedWriteOnCallingThread() throws Exception {
+        final RecordingPersistence persistence = new RecordingPersistence();
+        final Executor saturated = r -> {
+            throw new RejectedExecutionException("saturated");
+        };
+        final UserProperties props = UserProperties.builder().persistence(persistence).async(saturated).build();
+
+        final CompletableFuture<Double> future = props.async().setDoubleProperty("async.double", 1.5);
+        assertTrue(future.isDone());
+        assertEquals(Thread.currentThread(), persistence.writers.get(0));
+    }
+
+    @Test
+    public void testFailedWrite() throws Exception {
+        final RecordingPersistence persistence = new RecordingPersistence();
+        final UserProperties props = UserProperties.builder().persistence(persistence).concurrent(true).build();
+        persistence.failing = true;
+
+        try {
+            props.async().setProperty("async.string", "lost").get(10, TimeUnit.SECONDS);
+            fail("the write should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        persistence.failing = false;
+        props.async().flush().get(10, TimeUnit.SECONDS);
+        assertTrue(new String(persistence.getBytes()).contains("lost"));
+    }
+
+    @Test
+    public void testWriteBehind() throws Exception {
+        final RecordingPersistence persistence = new RecordingPersistence();
+        final UserProperties props = UserProperties.builder()
+                .persistence(persistence)
+                .writeBehind(1, 1, TimeUnit.HOURS)
+                .build();
+
+        final CompletableFuture<Boolean> future = props.async().setBooleanProperty("async.boolean", true);
+        assertFalse(future.isDone());
+        props.flush();
+        assertFalse(future.get(10, TimeUnit.SECONDS));
+        props.shutdown();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRequiresConcurrent() throws IOException {
+        UserProperties.builder().persistence(new UserPropertiesByteArrayPersistence()).build().async();
+    }
+}
@@ -0,0 +1,141 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UserPropertiesBatchTestCase {
+    private FailingPersistence persistence;
+    private UserProperties props;
+
+    @Before
+    public void setupTest() {
+        persistence = new FailingPersistence();
+        props = UserProperties.builder().persistence(persistence).build();
+    }
+
+    @Test
+    public void testSingleWrite() throws Exception {
+        props.setIntProperty("batch.existing", 1);
+        final AtomicInteger notifications = new AtomicInteger();
+        props.property("batch.existing", Integer.class).addListener(property -> notifications.incrementAndGet());
+        persistence.reset();
+
+        props.batch(tx -> {
+            for (int i = 0; i < 5000; i++) {
+                tx.setIntProperty("batch.int." + i, i);
+                tx.setProperty("batch.string." + i, "value " + i);
+            }
+            tx.setIntProperty("batch.existing", 2);
+            tx.setIntProperty("batch.existing", 3);
+        });
+
+        assertEquals(1, persistence.getWriteCount());
+        assertEquals(1, notifications.get());
+        assertEquals(3, props.getIntProperty("batch.existing"));
+        assertEquals(4999, props.getIntProperty("batch.int.4999"));
+        assertEquals("value 4999", props.getProperty("batch.string.4999"));
+        assertTrue(new String(persistence.getBytes()).contains("\"value\" : \"value 4999\""));
+    }
+
+    @Test
+    public void testRollbackOnPersistenceFailure() throws Exception {
+        props.setIntProperty("batch.existing", 1);
+        final UserProperty<Integer> existing = props.property("batch.existing", Integer.class);
+        persistence.reset();
+        persistence.failing = true;
+
+        try {
+            props.batch(tx -> tx.setIntProperty("batch.existing", 2).setProperty("batch.created", "new"));
+            fail("Expected the batch to fail");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals(1, existing.getValue().intValue());
+        assertFalse(props.propertyNames().contains("batch.created"));
+
+        persistence.failing = false;
+        existing.setValue(5);
+        assertTrue(new String(persistence.getBytes()).contains("\"value\" : \"5\""));
+        assertFalse(new String(persistence.getBytes()).contains("batch.created"));
+    }
+
+    @Test
+    public void testTypeMismatchAppliesNothing() throws Exception {
+        props.setProperty("batch.string", "text");
+        persistence.reset();
+
+        try {
+            props.batch(tx -> tx.setIntProperty("batch.first", 1).setIntProperty("batch.string", 2));
+            fail("Expected a ClassCastException");
+        } catch (ClassCastException e) {
+            // expected
+        }
+
+        assertFalse(props.propertyNames().contains("batch.first"));
+        assertEquals("text", props.getProperty("batch.string"));
+        assertEquals(0, persistence.getWriteCount());
+    }
+
+    @Test
+    public void testConcurrentSetterOfTheSameKey() throws Exception {
+        final UserProperties concurrent = UserProperties.builder().persistence(persistence).concurrent(true).build();
+        concurrent.setIntProperty("batch.raced", 0);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> batches = executor.submit(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    final int value = i;
+                    concurrent.batch(tx -> tx.setIntProperty("batch.raced", value).setIntProperty("batch.other", value));
+                }
+                return null;
+            });
+            final Future<?> setters = executor.submit(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    concurrent.setIntProperty("batch.raced", -i);
+                }
+            });
+
+            // a deadlock between the two leaves them waiting forever
+            batches.get(30, TimeUnit.SECONDS);
+            setters.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final int last = concurrent.getIntProperty("batch.raced");
+        assertTrue(new String(persistence.getBytes()).contains("\"value\" : \"" + last + "\""));
+        assertEquals(1999, concurrent.snapshot().getValue("batch.other"));
+    }
+
+    private static class FailingPersistence extends UserPropertiesByteArrayPersistence {
+        private volatile boolean failing = false;
+
+        @Override
+        public OutputStream getOutputStream() {
+            if (failing) {
+                return new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        throw new IOException("Simulated write failure");
+                    }
+                };
+            }
+            return super.getOutputStream();
+        }
+    }
+}
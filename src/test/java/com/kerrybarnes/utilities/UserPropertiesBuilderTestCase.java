@@ -0,0 +1,83 @@
+package com.kerrybarnes.utilities;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kerrybarnes.utilities.json.JsonUserPropertyCodec;
+import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
+import com.kerrybarnes.utilities.persistence.UserPropertiesInitialLoader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UserPropertiesBuilderTestCase {
+    private ScheduledExecutorService executor;
+
+    @Before
+    public void setupTest() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void reset() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testIndependentStores() throws Exception {
+        final UserPropertyCodec codec = new JsonUserPropertyCodec(new ObjectMapper());
+        final UserPropertiesByteArrayPersistence firstPersistence = new UserPropertiesByteArrayPersistence();
+        final UserPropertiesByteArrayPersistence secondPersistence = new UserPropertiesByteArrayPersistence();
+
+        final UserProperties first = UserProperties.builder().persistence(firstPersistence).codec(codec).build();
+        final UserProperties second = UserProperties.builder().persistence(secondPersistence).codec(codec).build();
+        assertSame(firstPersistence, first.getPersistence());
+        assertSame(secondPersistence, second.getPersistence());
+
+        first.setProperty("store.name", "first");
+        second.setProperty("store.name", "second");
+        assertEquals("first", first.getProperty("store.name"));
+        assertEquals("second", second.getProperty("store.name"));
+        assertTrue(new String(firstPersistence.getBytes()).contains("\"value\" : \"first\""));
+        assertTrue(new String(secondPersistence.getBytes()).contains("\"value\" : \"second\""));
+    }
+
+    @Test
+    public void testSharedWriteExecutor() throws Exception {
+        final UserPropertiesByteArrayPersistence firstPersistence = new UserPropertiesByteArrayPersistence();
+        final UserPropertiesByteArrayPersistence secondPersistence = new UserPropertiesByteArrayPersistence();
+        final UserProperties first = UserProperties.builder().persistence(firstPersistence).writeExecutor(executor).build();
+        final UserProperties second = UserProperties.builder().persistence(secondPersistence).writeExecutor(executor).build();
+
+        first.setIntProperty("shared.executor", 1);
+        second.setIntProperty("shared.executor", 2);
+        assertTrue(first.awaitPersisted(10, TimeUnit.SECONDS));
+        assertTrue(second.awaitPersisted(10, TimeUnit.SECONDS));
+        assertTrue(new String(firstPersistence.getBytes()).contains("\"value\" : \"1\""));
+        assertTrue(new String(secondPersistence.getBytes()).contains("\"value\" : \"2\""));
+
+        first.shutdown();
+        assertFalse(executor.isShutdown());
+        second.shutdown();
+    }
+
+    @Test
+    public void testMapImplementation() throws Exception {
+        final UserProperties props = UserProperties.builder()
+                .persistence(new UserPropertiesInitialLoader())
+                .map(ConcurrentSkipListMap::new)
+                .build();
+
+        assertEquals("initial value", props.getProperty("string.property"));
+        assertEquals(10, props.getIntProperty("int.property"));
+        assertEquals(100.0, props.getDoubleProperty("double.property"), .01);
+    }
+}
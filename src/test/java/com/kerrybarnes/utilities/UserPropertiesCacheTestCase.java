@@ -0,0 +1,151 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.persistence.AtomicFileOutputStream.Durability;
+import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
+import com.kerrybarnes.utilities.persistence.UserPropertiesSharedFilePersistence;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UserPropertiesCacheTestCase {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private UserPropertiesByteArrayPersistence persistence;
+    private UserProperties props;
+
+    @Before
+    public void setupTest() {
+        persistence = new UserPropertiesByteArrayPersistence();
+        props = UserProperties.builder().persistence(persistence).cache(50).build();
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            props.setIntProperty("cache.int." + i, i);
+            props.setProperty("cache.string." + i, "value " + i);
+        }
+
+        assertTrue(props.livePropertyCount() <= 50);
+        assertEquals(600, props.propertyNames().size());
+        for (int i = 0; i < 300; i++) {
+            assertEquals(i, props.getIntProperty("cache.int." + i));
+            assertEquals("value " + i, props.getProperty("cache.string." + i));
+        }
+        assertTrue(props.livePropertyCount() <= 50);
+
+        final String json = new String(persistence.getBytes());
+        assertTrue(json.contains("\"cache.int.0\""));
+        assertTrue(json.contains("\"value\" : \"value 299\""));
+    }
+
+    @Test
+    public void testBoundPropertiesAreNotEvicted() throws Exception {
+        props.setIntProperty("cache.bound", 1);
+        final UserProperty<Number> property = props.property("cache.bound", Number.class);
+        final AtomicInteger view = new AtomicInteger();
+        property.addListener(changed -> view.set(((Number) changed.getValue()).intValue()));
+
+        for (int i = 0; i < 300; i++) {
+            props.setIntProperty("cache.filler." + i, i);
+        }
+
+        assertSame(property, props.property("cache.bound", Number.class));
+        props.setIntProperty("cache.bound", 42);
+        assertEquals(42, view.get());
+    }
+
+    @Test
+    public void testEvictedValuesKeepTheirType() throws Exception {
+        props.setLongProperty("cache.long", Long.MAX_VALUE);
+        props.setDoubleProperty("cache.double", Double.NaN);
+        props.setFloatProperty("cache.float", -1.5f);
+        props.setBooleanProperty("cache.boolean", true);
+        props.setBytesProperty("cache.bytes", new byte[] {1, 2, 3});
+        for (int i = 0; i < 300; i++) {
+            props.setIntProperty("cache.filler." + i, -i);
+        }
+
+        assertEquals(Long.class, props.snapshot().getValue("cache.long").getClass());
+        assertEquals(Long.MAX_VALUE, props.getLongProperty("cache.long"));
+        assertTrue(Double.isNaN(props.getDoubleProperty("cache.double")));
+        assertEquals(-1.5f, props.getFloatProperty("cache.float"), 0.0f);
+        assertTrue(props.getBooleanProperty("cache.boolean"));
+        assertArrayEquals(new byte[] {1, 2, 3}, props.getBytesProperty("cache.bytes"));
+        assertEquals(Float.class, props.getType("cache.float"));
+        for (int i = 299; i >= 0; i--) {
+            assertEquals(-i, props.getIntProperty("cache.filler." + i));
+        }
+        assertEquals(305, props.propertyNames().size());
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < 3; round++) {
+                        for (int i = 0; i < 100; i++) {
+                            props.setIntProperty("cache.thread" + thread + "." + i, round * 1000 + i);
+                            props.getIntProperty("cache.thread" + ((thread + 1) % 4) + "." + i);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int t = 0; t < 4; t++) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(2000 + i, props.getIntProperty("cache.thread" + t + "." + i));
+            }
+        }
+    }
+
+    @Test
+    public void testEvictionDeferredWhileMerging() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("shared.json");
+        final UserProperties cached = UserProperties.builder()
+                .persistence(new UserPropertiesSharedFilePersistence(file, Durability.NONE))
+                .cache(5)
+                .build();
+        final UserProperties other = UserProperties.builder()
+                .persistence(new UserPropertiesSharedFilePersistence(file, Durability.NONE))
+                .build();
+        other.batch(tx -> {
+            for (int i = 0; i < 20; i++) {
+                tx.setIntProperty("cache.merged." + i, i);
+            }
+        });
+
+        // the merged keys are added while the persist lock is held, they are evicted by the next lookup
+        assertTrue(cached.refresh());
+        assertEquals(19, cached.getIntProperty("cache.merged.19"));
+        assertTrue(cached.livePropertyCount() <= 5);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, cached.getIntProperty("cache.merged." + i));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UserPropertiesChangeTrackingTestCase {
+    private UserPropertiesByteArrayPersistence persistence;
+
+    @Before
+    public void setupTest() {
+        persistence = new UserPropertiesByteArrayPersistence();
+    }
+
+    @Test
+    public void testEachChangeWrittenOnce() {
+        final UserProperties props = UserProperties.builder().persistence(persistence).build();
+
+        props.setIntProperty("tracking.int", 1);
+        props.setIntProperty("tracking.int", 2);
+        props.setDoubleProperty("tracking.double", 1.5);
+        props.setDoubleProperty("tracking.double", 2.5);
+        props.setProperty("tracking.string", "first");
+        props.setProperty("tracking.string", "second");
+        assertEquals(6, persistence.getWriteCount());
+        assertEquals(6, props.getVersion());
+    }
+
+    @Test
+    public void testNoOpSetsSkipped() {
+        final UserProperties props = UserProperties.builder().persistence(persistence).build();
+        props.setIntProperty("tracking.int", 1);
+        props.setDoubleProperty("tracking.double", 1.5);
+        props.setProperty("tracking.string", "value");
+        persistence.reset();
+        final long version = props.getVersion();
+
+        assertEquals(1, props.setIntProperty("tracking.int", 1));
+        assertEquals(1.5, props.setDoubleProperty("tracking.double", 1.5), 0.0);
+        assertEquals("value", props.setProperty("tracking.string", new String("value")));
+        props.property("tracking.int", Number.class).setValue(1);
+        assertEquals(0, persistence.getWriteCount());
+        assertEquals(version, props.getVersion());
+    }
+
+    @Test
+    public void testDefaultsWithNextWrite() {
+        final UserProperties props = UserProperties.builder().persistence(persistence).build();
+
+        assertEquals(5, props.getIntProperty("tracking.default", 5));
+        assertEquals(0, persistence.getWriteCount());
+        props.setIntProperty("tracking.int", 1);
+        assertTrue(new String(persistence.getBytes()).contains("tracking.default"));
+    }
+
+    @Test
+    public void testDefaultsImmediate() {
+        final UserProperties props = UserProperties.builder()
+                .persistence(persistence)
+                .defaults(UserProperties.DefaultsPolicy.IMMEDIATE)
+                .build();
+
+        assertEquals(5, props.getIntProperty("tracking.default", 5));
+        assertEquals(1, persistence.getWriteCount());
+        assertTrue(new String(persistence.getBytes()).contains("tracking.default"));
+        props.getIntProperty("tracking.default", 6);
+        assertEquals(1, persistence.getWriteCount());
+    }
+
+    @Test
+    public void testDefaultsNever() {
+        final UserProperties props = UserProperties.builder()
+                .persistence(persistence)
+                .defaults(UserProperties.DefaultsPolicy.NEVER)
+                .build();
+
+        assertEquals("default", props.getProperty("tracking.default", "default"));
+        assertNull(persistence.getBytes());
+        props.setIntProperty("tracking.int", 1);
+        assertFalse(new String(persistence.getBytes()).contains("tracking.default"));
+
+        props.setProperty("tracking.default", "chosen");
+        assertTrue(new String(persistence.getBytes()).contains("\"value\" : \"chosen\""));
+    }
+}
@@ -0,0 +1,130 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.json.JsonUserPropertyCodec;
+import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UserPropertiesConcurrencyTestCase {
+    private final static int THREADS = 8;
+    private final static int ITERATIONS = 2000;
+
+    private UserProperties props = null;
+    private UserPropertiesByteArrayPersistence testPersistence = null;
+    private ExecutorService pool = null;
+
+    @Before
+    public void setupTest() {
+        testPersistence = new UserPropertiesByteArrayPersistence();
+        props = UserProperties.builder()
+                .persistence(testPersistence)
+                .writeBehind(5, 50, TimeUnit.MILLISECONDS)
+                .build();
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void reset() {
+        pool.shutdownNow();
+        props.shutdown();
+    }
+
+    private <T> List<T> runAll(final List<Callable<T>> tasks) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<T>> futures = new ArrayList<>();
+        for (Callable<T> task : tasks) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+
+        final List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(future.get(60, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    @Test
+    public void testDefaultsAreCreatedOnce() throws Exception {
+        final List<Callable<int[]>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            tasks.add(() -> {
+                final int[] seen = new int[ITERATIONS];
+                for (int i = 0; i < ITERATIONS; i++) {
+                    seen[i] = props.getIntProperty("shared." + i, thread);
+                }
+                return seen;
+            });
+        }
+
+        final List<int[]> results = runAll(tasks);
+        for (int i = 0; i < ITERATIONS; i++) {
+            final int expected = props.getIntProperty("shared." + i);
+            for (int[] seen : results) {
+                assertEquals(expected, seen[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testNoLostUpdates() throws Exception {
+        final String key = "swapped.value";
+        final List<Callable<List<Integer>>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            tasks.add(() -> {
+                final List<Integer> previous = new ArrayList<>();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    previous.add(props.setIntProperty(key, thread * ITERATIONS + i + 1));
+                    props.setIntProperty("thread." + thread + "." + i, i);
+                }
+                return previous;
+            });
+        }
+
+        // every value written must be handed back exactly once as a previous value,
+        // except the one that is left in the property
+        final Set<Integer> returned = new HashSet<>();
+        for (List<Integer> previous : runAll(tasks)) {
+            for (Integer value : previous) {
+                assertTrue("value returned twice: " + value, returned.add(value));
+            }
+        }
+        assertTrue(returned.add(props.getIntProperty(key)));
+        assertEquals(THREADS * ITERATIONS + 1, returned.size());
+        for (int value = 0; value <= THREADS * ITERATIONS; value++) {
+            assertTrue(returned.contains(value));
+        }
+
+        props.flush();
+        final Map<String, UserProperty> persisted = new JsonUserPropertyCodec()
+                .read(new ByteArrayInputStream(testPersistence.getBytes()));
+        assertEquals(THREADS * ITERATIONS + 1, persisted.size());
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < ITERATIONS; i++) {
+                assertEquals(i, persisted.get("thread." + t + "." + i).getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UserPropertiesDefaultsTestCase {
+    private final static UserPropertiesDefaults DEFAULTS = UserPropertiesDefaults.load("/user-properties-defaults.json");
+
+    private UserPropertiesByteArrayPersistence persistence;
+
+    @Before
+    public void setupTest() {
+        persistence = new UserPropertiesByteArrayPersistence();
+    }
+
+    private String persisted() {
+        final byte[] bytes = persistence.getBytes();
+        return bytes == null ? "" : new String(bytes);
+    }
+
+    @Test
+    public void testResolvedFromDefaults() {
+        final UserProperties props = UserProperties.builder().persistence(persistence).defaultsLayer(DEFAULTS).build();
+        assertEquals(150, props.getIntProperty("ui.zoom", 100));
+        assertEquals("light", props.getProperty("ui.theme"));
+        assertEquals(1.25, props.getDoubleProperty("ui.scale"), 0.0);
+        assertEquals(30000L, props.getLongProperty("net.timeout"));
+        assertTrue(props.getBooleanProperty("net.retry"));
+        assertEquals(Integer.class, props.getType("ui.zoom"));
+        assertEquals(0, props.livePropertyCount());
+        assertTrue(props.propertyNames().contains("ui.zoom"));
+        assertEquals(3, props.propertyNames("ui.").size());
+
+        assertEquals("light", props.setProperty("ui.theme", "dark"));
+        assertEquals(150, props.setIntProperty("ui.zoom", 150));
+        assertTrue(persisted().contains("\"ui.theme\""));
+        assertFalse(persisted().contains("\"ui.zoom\""));
+        assertFalse(persisted().contains("\"ui.scale\""));
+
+        final int writes = persistence.getWriteCount();
+        props.setProperty("ui.theme", "light");
+        assertEquals(writes + 1, persistence.getWriteCount());
+        assertFalse(persisted().contains("\"ui.theme\""));
+        assertEquals("light", props.getProperty("ui.theme"));
+    }
+
+    @Test
+    public void testUnknownKeysKeepCodeDefaults() {
+        final UserProperties props = UserProperties.builder()
+                .persistence(persistence)
+                .defaultsLayer(DEFAULTS)
+                .defaults(UserProperties.DefaultsPolicy.IMMEDIATE)
+                .build();
+        assertEquals(7, props.getIntProperty("ui.columns", 7));
+        assertTrue(persisted().contains("\"ui.columns\""));
+        assertEquals(1, props.livePropertyCount());
+    }
+
+    @Test
+    public void testBoundDefault() {
+        final UserProperties props = UserProperties.builder()
+                .persistence(persistence)
+                .defaultsLayer(DEFAULTS)
+                .concurrent(true)
+                .build();
+        final UserProperty<Number> zoom = props.property("ui.zoom", Number.class);
+        assertEquals(150, zoom.getValue());
+        final UserPropertyKey.OfDouble scale = props.doubleKey("ui.scale", 1.0);
+        assertEquals(1.25, scale.get(), 0.0);
+        assertNull(persistence.getBytes());
+
+        zoom.setValue(175);
+        assertEquals(175, props.getIntProperty("ui.zoom"));
+        assertTrue(persisted().contains("\"ui.zoom\""));
+        assertFalse(persisted().contains("\"ui.scale\""));
+
+        final UserPropertiesSnapshot snapshot = props.snapshot();
+        assertEquals(5, snapshot.size());
+        assertEquals(175, snapshot.getValue("ui.zoom"));
+        assertEquals("light", snapshot.getValue("ui.theme"));
+    }
+
+    @Test
+    public void testSetOfWrongTypeLeavesDefault() {
+        final UserProperties props = UserProperties.builder().persistence(persistence).defaultsLayer(DEFAULTS).build();
+        try {
+            props.setProperty("ui.zoom", "large");
+            fail("Expected a ClassCastException setting an Integer default to a String");
+        } catch (ClassCastException e) {
+            // expected
+        }
+        assertEquals(0, props.livePropertyCount());
+        assertEquals(150, props.getIntProperty("ui.zoom"));
+        assertEquals(Integer.class, props.getType("ui.zoom"));
+        assertNull(persistence.getBytes());
+    }
+
+    @Test
+    public void testLookup() {
+        final Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            values.put("key." + i, i);
+        }
+        final UserPropertiesDefaults defaults = UserPropertiesDefaults.of(values);
+        assertEquals(10000, defaults.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, defaults.getValue("key." + i));
+        }
+        assertFalse(defaults.contains("key.10000"));
+        assertNull(defaults.getValue("key"));
+        assertEquals("key.0", defaults.propertyNames().iterator().next());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testMissingResource() {
+        UserPropertiesDefaults.load("/missing-defaults.json");
+    }
+}
@@ -0,0 +1,130 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
+import com.kerrybarnes.utilities.persistence.UserPropertiesSharedFilePersistence;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UserPropertiesEventsTestCase {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Runnable> queued = new ArrayList<>();
+    private final Executor queue = queued::add;
+    private final List<UserPropertiesChange> changes = new ArrayList<>();
+
+    private UserProperties props;
+
+    @Before
+    public void setupTest() {
+        props = UserProperties.builder().persistence(new UserPropertiesByteArrayPersistence()).build();
+    }
+
+    private void runQueued() {
+        while (!queued.isEmpty()) {
+            queued.remove(0).run();
+        }
+    }
+
+    @Test
+    public void testCoalesced() {
+        props.events().subscribe("ui.", queue, changes::add);
+        for (int i = 0; i < 100; i++) {
+            props.setIntProperty("ui.zoom", i);
+        }
+        props.setProperty("ui.theme", "dark");
+        props.setProperty("net.proxy", "none");
+
+        assertEquals(1, queued.size());
+        runQueued();
+        assertEquals(1, changes.size());
+        assertEquals(Arrays.asList("ui.theme", "ui.zoom"), new ArrayList<>(changes.get(0).getKeys()));
+        assertEquals(99, changes.get(0).getValue("ui.zoom"));
+        assertEquals("dark", changes.get(0).getSnapshot().getProperty("ui.theme"));
+
+        props.setIntProperty("ui.zoom", 100);
+        runQueued();
+        assertEquals(2, changes.size());
+        assertEquals(Arrays.asList("ui.zoom"), new ArrayList<>(changes.get(1).getKeys()));
+    }
+
+    @Test
+    public void testChangedWhileNotifying() {
+        props.events().subscribe("", queue, change -> {
+            changes.add(change);
+            if (changes.size() == 1) {
+                props.setIntProperty("second", 2);
+            }
+        });
+        props.setIntProperty("first", 1);
+        queued.remove(0).run();
+
+        assertEquals(1, queued.size());
+        runQueued();
+        assertEquals(2, changes.size());
+        assertEquals(Arrays.asList("second"), new ArrayList<>(changes.get(1).getKeys()));
+    }
+
+    @Test
+    public void testClosed() {
+        final UserPropertiesEvents.Subscription subscription = props.events().subscribe("ui.", queue, changes::add);
+        props.setIntProperty("ui.zoom", 1);
+        subscription.close();
+        props.setIntProperty("ui.zoom", 2);
+        runQueued();
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void testTick() throws Exception {
+        final BlockingQueue<UserPropertiesChange> delivered = new LinkedBlockingQueue<>();
+        final UserProperties concurrent = UserProperties.builder()
+                .persistence(new UserPropertiesByteArrayPersistence())
+                .concurrent(true)
+                .build();
+        concurrent.events().subscribe("ui.", 200, TimeUnit.MILLISECONDS, Runnable::run, delivered::add);
+        for (int i = 0; i < 10; i++) {
+            concurrent.setIntProperty("ui.value" + i, i);
+        }
+
+        final UserPropertiesChange change = delivered.poll(10, TimeUnit.SECONDS);
+        assertEquals(10, change.getKeys().size());
+        assertNull(delivered.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testMergeIsOneNotification() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("test.properties");
+        final UserProperties first = UserProperties.builder().persistence(new UserPropertiesSharedFilePersistence(file)).build();
+        first.setIntProperty("ui.value0", 0);
+        final UserProperties second = UserProperties.builder().persistence(new UserPropertiesSharedFilePersistence(file)).build();
+        second.events().subscribe("ui.", queue, changes::add);
+
+        first.batch(tx -> {
+            for (int i = 0; i < 500; i++) {
+                tx.setIntProperty("ui.value" + i, i + 1);
+            }
+        });
+        assertTrue(second.refresh());
+
+        assertEquals(1, queued.size());
+        runQueued();
+        assertEquals(500, changes.get(0).getKeys().size());
+        assertEquals(1, changes.get(0).getValue("ui.value0"));
+    }
+}
@@ -0,0 +1,109 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.binary.BinaryUserPropertyCodec;
+import com.kerrybarnes.utilities.json.JsonUserPropertyCodec;
+import com.kerrybarnes.utilities.persistence.UserPropertiesInitialLoader;
+import com.kerrybarnes.utilities.persistence.UserPropertiesMappedPersistence;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UserPropertiesLazyTestCase {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testJsonIndex() throws Exception {
+        final UserPropertiesInitialLoader persistence = new UserPropertiesInitialLoader();
+        final UserProperties props = UserProperties.builder().persistence(persistence).lazy(true).build();
+
+        assertEquals(3, props.propertyNames().size());
+        assertTrue(props.propertyNames().contains("double.property"));
+        assertEquals("initial value", props.getProperty("string.property"));
+        assertSame(props.property("string.property", String.class), props.property("string.property", String.class));
+        assertNull(props.property("missing.property", String.class));
+
+        props.setIntProperty("int.property", 12);
+        assertTrue(new String(persistence.getBytes()).contains("\"value\" : \"12\""));
+        assertTrue(new String(persistence.getBytes()).contains("\"value\" : \"100.0\""));
+        assertEquals(100.0, props.getDoubleProperty("double.property"), 0.0);
+    }
+
+    @Test
+    public void testBinaryIndex() throws Exception {
+        final Map<String, UserProperty> properties = new TreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            properties.put("lazy.int." + i, UserPropertyFactory.createInt("lazy.int." + i, i));
+            properties.put("lazy.string." + i, UserPropertyFactory.createString("lazy.string." + i, "value " + i));
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryUserPropertyCodec().write(out, properties);
+
+        final BytePersistence persistence = new BytePersistence(out.toByteArray());
+        final UserProperties props = UserProperties.builder()
+                .persistence(persistence)
+                .codec(new BinaryUserPropertyCodec())
+                .lazy(true)
+                .build();
+
+        assertEquals(2000, props.propertyNames().size());
+        assertEquals(999, props.getIntProperty("lazy.int.999"));
+        assertEquals("value 5", props.getProperty("lazy.string.5"));
+        props.setIntProperty("lazy.new", 7);
+        assertEquals(2001, props.propertyNames().size());
+
+        final UserProperties reloaded = UserProperties.builder()
+                .persistence(persistence)
+                .codec(new BinaryUserPropertyCodec())
+                .build();
+        assertEquals(2001, reloaded.propertyNames().size());
+        assertEquals("value 999", reloaded.getProperty("lazy.string.999"));
+        assertFalse(new JsonUserPropertyCodec().recognizes(persistence.getBytes(), persistence.getBytes().length));
+    }
+
+    @Test
+    public void testMappedIndex() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("lazy.properties.bin");
+        final UserProperties written = UserProperties.builder()
+                .persistence(new UserPropertiesMappedPersistence(file))
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            written.setIntProperty("lazy.int." + i, i);
+        }
+
+        final UserProperties props = UserProperties.builder()
+                .persistence(new UserPropertiesMappedPersistence(file))
+                .lazy(true)
+                .build();
+        assertEquals(1000, props.propertyNames().size());
+        assertEquals(0, props.livePropertyCount());
+        assertEquals(999, props.getIntProperty("lazy.int.999"));
+        assertEquals(1, props.livePropertyCount());
+
+        props.setIntProperty("lazy.int.999", -1);
+        assertEquals(1000, props.snapshot().size());
+        final UserProperties reloaded = UserProperties.builder()
+                .persistence(new UserPropertiesMappedPersistence(file))
+                .build();
+        assertEquals(-1, reloaded.getIntProperty("lazy.int.999"));
+        assertEquals(500, reloaded.getIntProperty("lazy.int.500"));
+    }
+
+    private static class BytePersistence extends UserPropertiesInitialLoader {
+        private BytePersistence(final byte[] data) throws Exception {
+            baos = new ByteArrayOutputStream();
+            baos.write(data);
+        }
+    }
+}
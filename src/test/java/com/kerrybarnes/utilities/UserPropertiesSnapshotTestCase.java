@@ -0,0 +1,204 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.persistence.UserPropertiesAtomicFilePersistence;
+import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UserPropertiesSnapshotTestCase {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPointInTime() {
+        final UserProperties props = UserProperties.builder().persistence(new UserPropertiesByteArrayPersistence()).build();
+        props.setIntProperty("snap.int", 1);
+        props.setProperty("snap.string", "first");
+        props.setBytesProperty("snap.bytes", new byte[]{1, 2});
+
+        final UserPropertiesSnapshot first = props.snapshot();
+        assertSame(first, props.snapshot());
+        assertEquals(props.getVersion(), first.getVersion());
+
+        props.setIntProperty("snap.int", 2);
+        props.setLongProperty("snap.added", 5L);
+        props.clear();
+        props.setProperty("snap.string", "second");
+
+        assertEquals(3, first.size());
+        assertEquals(1, first.getIntProperty("snap.int", 0));
+        assertEquals("first", first.getProperty("snap.string"));
+        assertArrayEquals(new byte[]{1, 2}, first.getBytesProperty("snap.bytes", null));
+        assertFalse(first.contains("snap.added"));
+
+        final UserPropertiesSnapshot second = props.snapshot();
+        assertEquals(Arrays.asList("snap.string"), new ArrayList<>(second.propertyNames()));
+        assertEquals("second", second.getProperty("snap.string"));
+        assertNull(second.getType("snap.int"));
+        assertEquals(7, second.getIntProperty("snap.int", 7));
+    }
+
+    @Test
+    public void testIncremental() {
+        final UserProperties props = UserProperties.builder().persistence(new UserPropertiesByteArrayPersistence()).build();
+        for (int i = 0; i < 10; i++) {
+            props.setIntProperty(String.format("snap.group%d.value", i), i);
+        }
+        final UserPropertiesSnapshot first = props.snapshot();
+
+        props.setIntProperty("snap.group3.value", 30);
+        props.setProperty("snap.group3.name", "three");
+        props.getDoubleProperty("snap.group9.scale", 1.5);
+
+        final UserPropertiesSnapshot second = props.snapshot();
+        assertEquals(3, first.getIntProperty("snap.group3.value", 0));
+        assertEquals(30, second.getIntProperty("snap.group3.value", 0));
+        assertEquals(1.5, second.getDoubleProperty("snap.group9.scale", 0.0), 0.0);
+        assertEquals(Arrays.asList("snap.group3.name", "snap.group3.value"),
+                new ArrayList<>(second.propertyNames("snap.group3.")));
+        assertTrue(second.propertyNames("snap.group9.").contains("snap.group9.scale"));
+        assertEquals(12, second.size());
+    }
+
+    @Test
+    public void testIterateWhileWriting() throws Exception {
+        final UserProperties props = UserProperties.builder()
+                .persistence(new UserPropertiesByteArrayPersistence())
+                .concurrent(true)
+                .build();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; running.get(); i++) {
+                    props.batch(tx -> tx.setIntProperty("snap.left", tx.hashCode()).setIntProperty("snap.right", tx.hashCode()));
+                    props.setIntProperty(String.format("snap.key%05d", i % 5000), i);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        writer.start();
+
+        try {
+            for (int i = 0; i < 2000; i++) {
+                final UserPropertiesSnapshot snapshot = props.snapshot();
+                int count = 0;
+                String last = "";
+                for (String name : snapshot.propertyNames()) {
+                    assertTrue(name.compareTo(last) > 0);
+                    last = name;
+                    count++;
+                }
+                assertEquals(snapshot.size(), count);
+                assertEquals(snapshot.getIntProperty("snap.left", 0), snapshot.getIntProperty("snap.right", 0));
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void testLazyIsNotMadeLive() {
+        final Path file = folder.getRoot().toPath().resolve("test.properties");
+        final UserProperties props = UserProperties.builder()
+                .persistence(new UserPropertiesAtomicFilePersistence(file))
+                .build();
+        for (int i = 0; i < 100; i++) {
+            props.setIntProperty(String.format("snap.value%02d", i), i);
+        }
+
+        final UserProperties lazy = UserProperties.builder()
+                .persistence(new UserPropertiesAtomicFilePersistence(file))
+                .lazy(true)
+                .build();
+        lazy.setIntProperty("snap.value00", -1);
+        final UserPropertiesSnapshot snapshot = lazy.snapshot();
+        assertEquals(100, snapshot.size());
+        assertEquals(-1, snapshot.getIntProperty("snap.value00", 0));
+        assertEquals(99, snapshot.getIntProperty("snap.value99", 0));
+        assertEquals(1, lazy.livePropertyCount());
+
+        final UserProperties reloaded = UserProperties.builder()
+                .persistence(new UserPropertiesAtomicFilePersistence(file))
+                .build();
+        assertEquals(-1, reloaded.getIntProperty("snap.value00"));
+        assertEquals(50, reloaded.getIntProperty("snap.value50"));
+    }
+
+    /**
+     * Applies random changes, mostly to a few keys so most chunks are shared, and compares each snapshot, and the
+     * one before it, with a {@link TreeMap}
+     */
+    @Test
+    public void testChunksMatchSortedMap() {
+        final Random random = new Random(20261017L);
+        final TreeMap<String, Object> expected = new TreeMap<>();
+        UserPropertiesSnapshot snapshot = new UserPropertiesSnapshot(new String[0], new Object[0], 0);
+        for (int round = 1; round <= 200; round++) {
+            final TreeMap<String, Object> changes = new TreeMap<>();
+            final int count = round == 1 ? 2000 : random.nextInt(20);
+            for (int i = 0; i < count; i++) {
+                final String key = String.format("snap.group%d.value%d", random.nextInt(30), random.nextInt(100));
+                changes.put(key, random.nextInt(4) == 0 ? null : random.nextInt());
+            }
+
+            final List<String> keys = new ArrayList<>(changes.keySet());
+            final UserPropertiesSnapshot previous = snapshot;
+            final Map<String, Object> before = new TreeMap<>(expected);
+            snapshot = snapshot.with(keys, changes.values().toArray(), round);
+            for (Map.Entry<String, Object> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    expected.remove(change.getKey());
+                } else {
+                    expected.put(change.getKey(), change.getValue());
+                }
+            }
+
+            assertMatches(before, previous);
+            assertMatches(expected, snapshot);
+        }
+    }
+
+    private static void assertMatches(final Map<String, Object> expected, final UserPropertiesSnapshot snapshot) {
+        assertEquals(expected.size(), snapshot.size());
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(snapshot.propertyNames()));
+        for (Map.Entry<String, Object> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), snapshot.getValue(entry.getKey()));
+        }
+        assertFalse(snapshot.contains("snap.missing"));
+
+        final List<String> group = new ArrayList<>();
+        for (String key : expected.keySet()) {
+            if (key.startsWith("snap.group7.")) {
+                group.add(key);
+            }
+        }
+        assertEquals(group, new ArrayList<>(snapshot.propertyNames("snap.group7.")));
+        assertEquals(group.size(), snapshot.propertyNames("snap.group7.").size());
+
+        final List<String> written = new ArrayList<>(snapshot.properties(Collections.emptySet(), null).keySet());
+        assertEquals(new ArrayList<>(expected.keySet()), written);
+    }
+}
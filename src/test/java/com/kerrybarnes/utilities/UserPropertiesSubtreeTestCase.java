@@ -0,0 +1,92 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.persistence.UserPropertiesAtomicFilePersistence;
+import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.NavigableSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UserPropertiesSubtreeTestCase {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private UserPropertiesByteArrayPersistence persistence;
+
+    @Before
+    public void setupTest() {
+        persistence = new UserPropertiesByteArrayPersistence();
+    }
+
+    @Test
+    public void testPrefixRange() {
+        final UserProperties props = UserProperties.builder().persistence(persistence).build();
+        props.setIntProperty("ui.window.width", 800);
+        props.setIntProperty("ui.window.height", 600);
+        props.setProperty("ui.windowTitle", "title");
+        props.setProperty("ui.theme", "dark");
+        props.setProperty("net.proxy", "none");
+
+        final NavigableSet<String> window = props.propertyNames("ui.window.");
+        assertEquals(Arrays.asList("ui.window.height", "ui.window.width"), new ArrayList<>(window));
+        assertEquals(4, props.propertyNames("ui.").size());
+        assertEquals("net.proxy", props.propertyNames().iterator().next());
+
+        props.setIntProperty("ui.window.x", 10);
+        assertEquals(3, window.size());
+    }
+
+    @Test
+    public void testView() {
+        final UserProperties props = UserProperties.builder().persistence(persistence).build();
+        final UserPropertiesView window = props.subtree("ui.window.");
+        assertEquals("ui.window", window.getPath());
+
+        window.setIntProperty("width", 800);
+        window.setDoubleProperty("scale", 1.5);
+        window.subtree("title").setProperty("text", "main");
+        props.setProperty("ui.windowTitle", "outside");
+
+        assertEquals(800, props.getIntProperty("ui.window.width"));
+        assertEquals(1.5, window.getDoubleProperty("scale"), 0.0);
+        assertEquals("main", props.getProperty("ui.window.title.text"));
+        assertEquals(Integer.class, window.getType("width"));
+        assertEquals(800, window.property("width", Number.class).getValue().intValue());
+
+        final Set<String> names = window.propertyNames();
+        assertEquals(Arrays.asList("scale", "title.text", "width"), new ArrayList<>(names));
+        assertTrue(names.contains("width"));
+        assertFalse(names.contains("ui.window.width"));
+        assertEquals(Arrays.asList("text"), new ArrayList<>(window.subtree("title").propertyNames()));
+    }
+
+    @Test
+    public void testSortedWhenLazy() {
+        final Path file = folder.getRoot().toPath().resolve("test.properties");
+        final UserProperties props = UserProperties.builder()
+                .persistence(new UserPropertiesAtomicFilePersistence(file))
+                .build();
+        for (int i = 0; i < 100; i++) {
+            props.setIntProperty(String.format("group%d.value%02d", i % 4, i), i);
+        }
+
+        final UserProperties reloaded = UserProperties.builder()
+                .persistence(new UserPropertiesAtomicFilePersistence(file))
+                .lazy(true)
+                .build();
+        assertEquals(25, reloaded.subtree("group1").propertyNames().size());
+        reloaded.subtree("group1").setIntProperty("added", 1);
+        assertEquals("added", reloaded.subtree("group1").propertyNames().iterator().next());
+        assertEquals(101, reloaded.propertyNames().size());
+    }
+}
@@ -1,14 +1,12 @@
 package com.kerrybarnes.utilities;
 
 import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
-import javafx.beans.property.Property;
-import javafx.beans.value.ChangeListener;
-import javafx.beans.value.ObservableValue;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -148,13 +146,13 @@ public class UserPropertiesTestCase {
         final String propName = "string.example";
 
         props.setProperty(propName, "first");
-        final Property<String> stringProperty = props.property(propName, String.class);
+        final UserProperty<String> stringProperty = props.property(propName, String.class);
         assertNotNull(stringProperty);
 
         stringProperty.setValue("second");
         assertEquals("second", props.getProperty(propName));
 
-        final ChangeListener<String> listener = new TestListener<>("second","third");
+        final UserProperty.Listener listener = new TestListener<>("second","third");
         stringProperty.addListener(listener);
         props.setProperty(propName, "third");
         assertTrue(((TestListener) listener).wasCalled());
@@ -165,7 +163,7 @@ public class UserPropertiesTestCase {
         final String propName = "string.example";
 
         props.setProperty(propName, "first");
-        final Property<String> stringProperty = props.property(propName, String.class);
+        final UserProperty<String> stringProperty = props.property(propName, String.class);
         assertNotNull(stringProperty);
 
         assertEquals("first", props.getProperty(propName));
@@ -179,13 +177,13 @@ public class UserPropertiesTestCase {
         final String propName = "int.example";
 
         props.setIntProperty(propName, 42);
-        final Property<Integer> intProperty = props.property(propName, Integer.class);
+        final UserProperty<Integer> intProperty = props.property(propName, Integer.class);
         assertNotNull(intProperty);
 
         intProperty.setValue(404);
         assertEquals(404, props.getIntProperty(propName));
 
-        final ChangeListener<Integer> listener = new TestListener<>(404,200);
+        final UserProperty.Listener listener = new TestListener<>(404,200);
         intProperty.addListener(listener);
         props.setIntProperty(propName, 200);
         assertTrue(((TestListener) listener).wasCalled());
@@ -196,7 +194,7 @@ public class UserPropertiesTestCase {
         final String propName = "int.example";
 
         props.setIntProperty(propName, 100);
-        final Property<Integer> intProperty = props.property(propName, Integer.class);
+        final UserProperty<Integer> intProperty = props.property(propName, Integer.class);
         assertNotNull(intProperty);
 
         assertEquals(100, props.getIntProperty(propName));
@@ -210,13 +208,13 @@ public class UserPropertiesTestCase {
         final String propName = "double.example";
 
         props.setDoubleProperty(propName, 42.0);
-        final Property<Double> dblProperty = props.property(propName, Double.class);
+        final UserProperty<Double> dblProperty = props.property(propName, Double.class);
         assertNotNull(dblProperty);
 
         dblProperty.setValue(404.0);
         assertEquals(404.0, props.getDoubleProperty(propName),.01);
 
-        final ChangeListener<Double> listener = new TestListener<>(404.0,200.0);
+        final UserProperty.Listener listener = new TestListener<>(404.0,200.0);
         dblProperty.addListener(listener);
         props.setDoubleProperty(propName, 200.0);
         assertTrue(((TestListener) listener).wasCalled());
@@ -227,7 +225,7 @@ public class UserPropertiesTestCase {
         final String propName = "dbl.example";
 
         props.setDoubleProperty(propName, 100.0);
-        final Property<Double> dblProperty = props.property(propName, Double.class);
+        final UserProperty<Double> dblProperty = props.property(propName, Double.class);
         assertNotNull(dblProperty);
 
         assertEquals(100.0, props.getDoubleProperty(propName), .01);
@@ -238,7 +236,7 @@ public class UserPropertiesTestCase {
 
 }
 
-class TestListener<T> implements ChangeListener<T> {
+class TestListener<T> implements UserProperty.Listener {
     private boolean wasCalled = false;
 
     private final T before;
@@ -250,10 +248,10 @@ class TestListener<T> implements ChangeListener<T> {
     }
 
     @Override
-    public void changed(ObservableValue<? extends T> observable, T oldValue, T newValue) {
+    public void changed(final UserProperty<?> property) {
         wasCalled = true;
-        assertTrue(oldValue.equals(before));
-        assertTrue(newValue.equals(after));
+        assertFalse(property.getValue().equals(before));
+        assertTrue(property.getValue().equals(after));
     }
 
     boolean wasCalled() {
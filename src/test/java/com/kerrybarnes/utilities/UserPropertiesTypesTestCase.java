@@ -0,0 +1,122 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.binary.BinaryUserPropertyCodec;
+import com.kerrybarnes.utilities.json.JsonUserPropertyCodec;
+import com.kerrybarnes.utilities.persistence.UserPropertiesAtomicFilePersistence;
+import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
+import com.kerrybarnes.utilities.persistence.UserPropertiesMappedPersistence;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UserPropertiesTypesTestCase {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final byte[] BLOB = {0, 1, 2, (byte) 0xff, 'x'};
+
+    private void setAll(final UserProperties props) {
+        props.setLongProperty("types.long", Long.MAX_VALUE);
+        props.setFloatProperty("types.float", 1.25f);
+        props.setBooleanProperty("types.boolean", true);
+        props.setBytesProperty("types.bytes", BLOB);
+        props.setBytesProperty("types.empty", new byte[0]);
+        props.setIntProperty("types.int", 7);
+    }
+
+    private void assertAll(final UserProperties props) {
+        assertEquals(Long.MAX_VALUE, props.getLongProperty("types.long"));
+        assertEquals(1.25f, props.getFloatProperty("types.float"), 0.0f);
+        assertTrue(props.getBooleanProperty("types.boolean"));
+        assertArrayEquals(BLOB, props.getBytesProperty("types.bytes"));
+        assertArrayEquals(new byte[0], props.getBytesProperty("types.empty"));
+        assertEquals(7, props.getIntProperty("types.int"));
+        assertEquals(Long.class, props.getType("types.long"));
+        assertEquals(byte[].class, props.getType("types.bytes"));
+    }
+
+    private void assertRoundTrip(final Supplier<UserProperties.Builder> builder) {
+        final UserProperties props = builder.get().build();
+        setAll(props);
+        assertAll(props);
+        assertAll(builder.get().build());
+    }
+
+    @Test
+    public void testCodecs() throws Exception {
+        final Path json = folder.getRoot().toPath().resolve("test.json");
+        assertRoundTrip(() -> UserProperties.builder().persistence(new UserPropertiesAtomicFilePersistence(json)));
+
+        final Path compact = folder.getRoot().toPath().resolve("test.compact");
+        assertRoundTrip(() -> UserProperties.builder()
+                .persistence(new UserPropertiesAtomicFilePersistence(compact))
+                .codec(JsonUserPropertyCodec.compact()));
+
+        final Path binary = folder.getRoot().toPath().resolve("test.bin");
+        assertRoundTrip(() -> UserProperties.builder()
+                .persistence(new UserPropertiesAtomicFilePersistence(binary))
+                .codec(new BinaryUserPropertyCodec()));
+
+        final Path mapped = folder.getRoot().toPath().resolve("test.mapped");
+        assertRoundTrip(() -> UserProperties.builder().persistence(new UserPropertiesMappedPersistence(mapped)));
+
+        final UserProperties lazy = UserProperties.builder()
+                .persistence(new UserPropertiesAtomicFilePersistence(binary))
+                .codec(new BinaryUserPropertyCodec())
+                .lazy(true)
+                .build();
+        assertAll(lazy);
+    }
+
+    @Test
+    public void testSetAndDefaults() {
+        final UserPropertiesByteArrayPersistence persistence = new UserPropertiesByteArrayPersistence();
+        final UserProperties props = UserProperties.builder().persistence(persistence).build();
+
+        assertEquals(5L, props.getLongProperty("types.long", 5L));
+        assertEquals(5L, props.setLongProperty("types.long", 6L));
+        assertEquals(0.0f, props.setFloatProperty("types.float", 2.5f), 0.0f);
+        assertFalse(props.getBooleanProperty("types.boolean"));
+        assertFalse(props.setBooleanProperty("types.boolean", true));
+        assertNull(props.setBytesProperty("types.bytes", BLOB));
+
+        final byte[] stored = props.getBytesProperty("types.bytes");
+        assertSame(stored, props.getBytesProperty("types.bytes"));
+        final int writes = persistence.getWriteCount();
+        props.setBytesProperty("types.bytes", BLOB.clone());
+        props.setBooleanProperty("types.boolean", true);
+        assertEquals(writes, persistence.getWriteCount());
+
+        final byte[] source = {1, 2, 3};
+        props.setBytesProperty("types.copied", source);
+        source[0] = 9;
+        assertEquals(1, props.getBytesProperty("types.copied")[0]);
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        final UserProperties props = UserProperties.builder()
+                .persistence(new UserPropertiesByteArrayPersistence())
+                .build();
+        props.batch(tx -> tx.setLongProperty("types.long", 1L)
+                .setFloatProperty("types.float", 1.5f)
+                .setBooleanProperty("types.boolean", true)
+                .setBytesProperty("types.bytes", BLOB));
+
+        assertEquals(1L, props.getLongProperty("types.long"));
+        assertEquals(1.5f, props.getFloatProperty("types.float"), 0.0f);
+        assertTrue(props.getBooleanProperty("types.boolean"));
+        assertArrayEquals(BLOB, props.getBytesProperty("types.bytes"));
+        assertEquals(1L, props.subtree("types").getLongProperty("long"));
+    }
+}
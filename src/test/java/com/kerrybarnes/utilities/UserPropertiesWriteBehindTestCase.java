@@ -0,0 +1,106 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UserPropertiesWriteBehindTestCase {
+    private UserProperties props = null;
+    private UserPropertiesByteArrayPersistence testPersistence = null;
+
+    private void create(final long debounceMillis, final long maxStalenessMillis) {
+        System.setProperty(UserProperties.PERSISTENCE_KEY, UserPropertiesByteArrayPersistence.class.getName());
+        props = new UserProperties(false, debounceMillis, maxStalenessMillis);
+        testPersistence = (UserPropertiesByteArrayPersistence)props.getPersistence();
+    }
+
+    @After
+    public void reset() {
+        if (props != null) {
+            props.shutdown();
+        }
+    }
+
+    @Test
+    public void testBurstIsCoalescedIntoOneWrite() throws Exception {
+        create(TimeUnit.MINUTES.toMillis(10), TimeUnit.MINUTES.toMillis(10));
+
+        for (int i = 0; i < 100; i++) {
+            props.setIntProperty("burst.value", i);
+        }
+        assertEquals(0, testPersistence.getWriteCount());
+
+        props.flush();
+        assertEquals(1, testPersistence.getWriteCount());
+        assertTrue(new String(testPersistence.getBytes()).contains("\"value\" : \"99\""));
+        assertTrue(props.awaitPersisted(0, TimeUnit.MILLISECONDS));
+
+        props.flush();
+        assertEquals(1, testPersistence.getWriteCount());
+    }
+
+    @Test
+    public void testDebounceWritesInBackground() throws Exception {
+        create(20, TimeUnit.MINUTES.toMillis(10));
+
+        props.setProperty("debounce.value", "first");
+        props.setProperty("debounce.value", "second");
+        assertTrue(props.awaitPersisted(10, TimeUnit.SECONDS));
+        assertEquals(1, testPersistence.getWriteCount());
+        assertTrue(new String(testPersistence.getBytes()).contains("\"value\" : \"second\""));
+    }
+
+    @Test
+    public void testMaxStalenessBoundsTheDelay() throws Exception {
+        create(TimeUnit.MINUTES.toMillis(10), 20);
+
+        props.setDoubleProperty("stale.value", 1.0);
+        assertTrue(props.awaitPersisted(10, TimeUnit.SECONDS));
+        assertEquals(1, testPersistence.getWriteCount());
+    }
+
+    @Test
+    public void testShutdownWritesPendingChanges() throws Exception {
+        create(TimeUnit.MINUTES.toMillis(10), TimeUnit.MINUTES.toMillis(10));
+
+        props.setProperty("shutdown.value", "pending");
+        assertEquals(0, testPersistence.getWriteCount());
+
+        props.shutdown();
+        assertEquals(1, testPersistence.getWriteCount());
+        assertTrue(new String(testPersistence.getBytes()).contains("\"value\" : \"pending\""));
+
+        props.setProperty("shutdown.other.value", "after");
+        assertEquals(2, testPersistence.getWriteCount());
+    }
+
+    @Test
+    public void testDroppedInstanceIsCollected() throws Exception {
+        UserProperties dropped = UserProperties.builder()
+                .persistence(new UserPropertiesByteArrayPersistence())
+                .writeBehind(20, 100, TimeUnit.MILLISECONDS)
+                .concurrent(true)
+                .checkpoint(20, TimeUnit.MILLISECONDS)
+                .build();
+        dropped.setProperty("dropped.value", "written");
+        dropped.longCounter("dropped.count").increment();
+        assertTrue(dropped.awaitPersisted(10, TimeUnit.SECONDS));
+        final WeakReference<UserProperties> reference = new WeakReference<>(dropped);
+        dropped = null;
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (reference.get() != null && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(reference.get());
+    }
+}
@@ -0,0 +1,155 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UserPropertyCounterTestCase {
+    private final static int THREADS = 8;
+    private final static int ITERATIONS = 10000;
+
+    private UserPropertiesByteArrayPersistence persistence;
+    private ExecutorService pool;
+
+    @Before
+    public void setupTest() {
+        persistence = new UserPropertiesByteArrayPersistence();
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void reset() {
+        pool.shutdownNow();
+    }
+
+    private void runAll(final Runnable task) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                task.run();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+    }
+
+    private String persisted() {
+        final byte[] bytes = persistence.getBytes();
+        return bytes == null ? "" : new String(bytes);
+    }
+
+    @Test
+    public void testAtomicKeys() throws Exception {
+        final UserProperties props = UserProperties.builder().persistence(persistence).concurrent(true).build();
+        final UserPropertyKey.OfInt count = props.intKey("stats.count", 0);
+        final UserPropertyKey.OfLong total = props.longKey("stats.total", 0L);
+        final UserPropertyKey.OfDouble max = props.doubleKey("stats.max", 0.0);
+
+        runAll(() -> {
+            for (int i = 0; i < ITERATIONS / 10; i++) {
+                count.incrementAndGet();
+                total.addAndGet(i);
+                max.accumulateAndGet(i, Math::max);
+            }
+        });
+        assertEquals(THREADS * ITERATIONS / 10, props.getIntProperty("stats.count"));
+        assertEquals(THREADS * (long) (ITERATIONS / 10) * (ITERATIONS / 10 - 1) / 2, props.getLongProperty("stats.total"));
+        assertEquals(ITERATIONS / 10 - 1, props.getDoubleProperty("stats.max"), 0.0);
+
+        assertFalse(count.compareAndSet(0, 5));
+        assertTrue(count.compareAndSet(THREADS * ITERATIONS / 10, 5));
+        assertEquals(5, props.getIntProperty("stats.count"));
+        max.set(Double.NaN);
+        assertTrue(max.compareAndSet(Double.NaN, 1.0));
+        assertEquals(1.0, max.get(), 0.0);
+    }
+
+    @Test
+    public void testCheckpointedOnFlush() throws Exception {
+        final UserProperties props = UserProperties.builder()
+                .persistence(persistence)
+                .concurrent(true)
+                .checkpoint(0, TimeUnit.MILLISECONDS)
+                .build();
+        props.setLongProperty("stats.requests", 100L);
+        final UserPropertyCounter.OfLong requests = props.longCounter("stats.requests");
+        final UserPropertyCounter.OfDouble seconds = props.subtree("stats").doubleCounter("seconds");
+        final int writes = persistence.getWriteCount();
+
+        runAll(() -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                requests.increment();
+                seconds.add(0.5);
+            }
+        });
+        assertEquals(100L + THREADS * ITERATIONS, requests.get());
+        assertEquals(THREADS * ITERATIONS * 0.5, seconds.get(), 0.0);
+        assertEquals(100L, props.getLongProperty("stats.requests"));
+        assertEquals(writes, persistence.getWriteCount());
+
+        props.flush();
+        assertEquals(writes + 1, persistence.getWriteCount());
+        assertEquals(100L + THREADS * ITERATIONS, props.getLongProperty("stats.requests"));
+        assertEquals(THREADS * ITERATIONS * 0.5, props.getDoubleProperty("stats.seconds"), 0.0);
+        assertEquals(100L + THREADS * ITERATIONS, requests.get());
+
+        props.flush();
+        assertEquals(writes + 1, persistence.getWriteCount());
+        props.setLongProperty("stats.requests", 0L);
+        requests.add(2L);
+        assertEquals(2L, requests.get());
+        props.shutdown();
+        assertEquals(2L, props.getLongProperty("stats.requests"));
+    }
+
+    @Test
+    public void testPeriodicCheckpoint() throws Exception {
+        final UserProperties props = UserProperties.builder()
+                .persistence(persistence)
+                .concurrent(true)
+                .checkpoint(20, TimeUnit.MILLISECONDS)
+                .build();
+        final UserPropertyCounter.OfInt opened = props.intCounter("stats.opened");
+        opened.add(3);
+        opened.increment();
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!persisted().contains("\"value\" : \"4\"") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(persisted().contains("\"value\" : \"4\""));
+        assertEquals(4, props.getIntProperty("stats.opened"));
+        props.shutdown();
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void testSameCounter() {
+        final UserProperties props = UserProperties.builder().persistence(persistence).concurrent(true).build();
+        assertSame(props.longCounter("stats.count"), props.longCounter("stats.count"));
+        props.doubleCounter("stats.count");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRequiresConcurrent() {
+        UserProperties.builder().persistence(persistence).build().longCounter("stats.count");
+    }
+}
@@ -0,0 +1,96 @@
+package com.kerrybarnes.utilities;
+
+import com.kerrybarnes.utilities.persistence.UserPropertiesByteArrayPersistence;
+import com.kerrybarnes.utilities.persistence.UserPropertiesSharedFilePersistence;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UserPropertyKeyTestCase {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testGetAndSet() {
+        final UserPropertiesByteArrayPersistence persistence = new UserPropertiesByteArrayPersistence();
+        final UserProperties props = UserProperties.builder().persistence(persistence).build();
+        props.setIntProperty("ui.zoom", 150);
+
+        final UserPropertyKey.OfInt zoom = props.intKey("ui.zoom", 100);
+        final UserPropertyKey.OfBoolean grid = props.booleanKey("ui.grid", true);
+        final UserPropertyKey.OfString theme = props.subtree("ui").stringKey("theme", "light");
+        assertEquals(150, zoom.get());
+        assertTrue(grid.get());
+        assertEquals("light", props.getProperty("ui.theme"));
+
+        final AtomicInteger notified = new AtomicInteger();
+        props.property("ui.zoom", Number.class).addListener(property -> notified.incrementAndGet());
+        final int writes = persistence.getWriteCount();
+        assertEquals(150, zoom.set(200));
+        assertEquals(200, props.getIntProperty("ui.zoom"));
+        assertEquals(1, notified.get());
+        assertEquals(writes + 1, persistence.getWriteCount());
+
+        props.setIntProperty("ui.zoom", 250);
+        assertEquals(250, zoom.get());
+        assertEquals("light", theme.setValue("dark"));
+        assertEquals("dark", props.getProperty("ui.theme"));
+        assertEquals(Double.valueOf(1.5), props.doubleKey("ui.scale", 1.5).getValue());
+        assertEquals(7L, props.longKey("ui.count", 7L).set(8L));
+        assertEquals(0.5f, props.floatKey("ui.alpha", 0.5f).get(), 0.0f);
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void testWrongType() {
+        final UserProperties props = UserProperties.builder().persistence(new UserPropertiesByteArrayPersistence()).build();
+        props.setProperty("ui.zoom", "large");
+        props.intKey("ui.zoom", 100);
+    }
+
+    @Test
+    public void testValidAfterClear() {
+        final UserProperties props = UserProperties.builder().persistence(new UserPropertiesByteArrayPersistence()).build();
+        final UserPropertyKey.OfInt zoom = props.intKey("ui.zoom", 100);
+        zoom.set(150);
+        props.clear();
+
+        assertEquals(100, zoom.get());
+        zoom.set(175);
+        assertEquals(175, props.getIntProperty("ui.zoom"));
+    }
+
+    @Test
+    public void testValidAfterRefresh() {
+        final Path file = folder.getRoot().toPath().resolve("test.properties");
+        final UserProperties first = UserProperties.builder().persistence(new UserPropertiesSharedFilePersistence(file)).build();
+        first.setDoubleProperty("ui.scale", 1.5);
+        final UserProperties second = UserProperties.builder().persistence(new UserPropertiesSharedFilePersistence(file)).build();
+        final UserPropertyKey.OfDouble scale = second.doubleKey("ui.scale", 1.0);
+
+        first.setDoubleProperty("ui.scale", 2.0);
+        assertTrue(second.refresh());
+        assertEquals(2.0, scale.get(), 0.0);
+    }
+
+    @Test
+    public void testPinnedInCache() {
+        final UserPropertiesByteArrayPersistence persistence = new UserPropertiesByteArrayPersistence();
+        final UserProperties props = UserProperties.builder().persistence(persistence).cache(4).build();
+        final UserPropertyKey.OfInt zoom = props.intKey("ui.zoom", 100);
+        for (int i = 0; i < 50; i++) {
+            props.setIntProperty(String.format("other.value%02d", i), i);
+        }
+
+        assertEquals(100, zoom.set(125));
+        assertEquals(125, props.getIntProperty("ui.zoom"));
+        assertTrue(new String(persistence.getBytes()).contains("\"value\" : \"125\""));
+        assertFalse(props.livePropertyCount() > 5);
+    }
+}
@@ -1,7 +1,6 @@
 package com.kerrybarnes.utilities;
 
 import com.kerrybarnes.utilities.persistence.UserPropertiesInitialLoader;
-import javafx.beans.property.Property;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -79,17 +78,17 @@ public class UserPropertyLoaderTestCase {
     @Test
     public void testLoadedStringPropertyHasListeners() throws Exception {
 
-        final Property<String> stringProperty = props.property("string.property", String.class);
+        final UserProperty<String> stringProperty = props.property("string.property", String.class);
         assertNotNull(stringProperty);
         stringProperty.setValue("updated using listener");
         assertEquals(new String(loader.getBytes()), AFTER_STRING_UPDATE);
 
-        final Property<Integer> intProperty = props.property("int.property", Integer.class);
+        final UserProperty<Integer> intProperty = props.property("int.property", Integer.class);
         assertNotNull(intProperty);
         intProperty.setValue(12);
         assertEquals(new String(loader.getBytes()), AFTER_INT_UPDATE);
 
-        final Property<Double> doubleProperty = props.property("double.property", Double.class);
+        final UserProperty<Double> doubleProperty = props.property("double.property", Double.class);
         assertNotNull(doubleProperty);
         doubleProperty.setValue(400.0);
         assertEquals(new String(loader.getBytes()), AFTER_DOUBLE_UPDATE);
@@ -0,0 +1,84 @@
+package com.kerrybarnes.utilities.binary;
+
+import com.kerrybarnes.utilities.UserProperties;
+import com.kerrybarnes.utilities.UserProperty;
+import com.kerrybarnes.utilities.UserPropertyFactory;
+import com.kerrybarnes.utilities.json.JsonUserPropertyCodec;
+import com.kerrybarnes.utilities.persistence.UserPropertiesInitialLoader;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryUserPropertyCodecTestCase {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final Map<String, UserProperty> properties = new TreeMap<>();
+        properties.put("int.property", UserPropertyFactory.createInt("int.property", -42));
+        properties.put("double.property", UserPropertyFactory.createDouble("double.property", 1.5e300));
+        properties.put("string.property", UserPropertyFactory.createString("string.property", "caf\u00e9"));
+        properties.put("empty.property", UserPropertyFactory.createString("empty.property", ""));
+
+        final BinaryUserPropertyCodec codec = new BinaryUserPropertyCodec();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(out, properties);
+        final byte[] data = out.toByteArray();
+        assertTrue(codec.recognizes(data, data.length));
+        assertFalse(new JsonUserPropertyCodec().recognizes(data, data.length));
+
+        final Map<String, UserProperty> loaded = codec.read(new ByteArrayInputStream(data));
+        assertEquals(properties.keySet(), loaded.keySet());
+        assertTrue(loaded.get("int.property") instanceof UserProperty.OfInt);
+        assertTrue(loaded.get("double.property") instanceof UserProperty.OfDouble);
+        for (Map.Entry<String, UserProperty> entry : properties.entrySet()) {
+            assertEquals(entry.getKey(), loaded.get(entry.getKey()).getName());
+            assertEquals(entry.getValue().getValue(), loaded.get(entry.getKey()).getValue());
+        }
+    }
+
+    @Test
+    public void testJsonMigratedToBinary() throws Exception {
+        final UserPropertiesInitialLoader persistence = new UserPropertiesInitialLoader();
+        final UserProperties props = UserProperties.builder()
+                .persistence(persistence)
+                .codec(new BinaryUserPropertyCodec())
+                .build();
+
+        final byte[] migrated = persistence.getBytes();
+        assertEquals(BinaryUserPropertyCodec.MAGIC, ByteBuffer.wrap(migrated).getInt());
+        assertEquals("initial value", props.getProperty("string.property"));
+
+        props.setIntProperty("int.property", 12);
+        final UserProperties reloaded = UserProperties.builder().persistence(persistence).build();
+        assertEquals(12, reloaded.getIntProperty("int.property"));
+        assertEquals(100.0, reloaded.getDoubleProperty("double.property"), 0.0);
+        assertEquals('{', persistence.getBytes()[0]);
+    }
+
+    @Test
+    public void testCompactJson() throws Exception {
+        final UserPropertiesInitialLoader persistence = new UserPropertiesInitialLoader();
+        final UserProperties props = UserProperties.builder()
+                .persistence(persistence)
+                .codec(JsonUserPropertyCodec.compact())
+                .build();
+
+        props.setDoubleProperty("double.property", 2.5);
+        assertEquals("{\"double.property\":{\"type\":\"Double\",\"value\":2.5}," +
+                        "\"int.property\":{\"type\":\"Integer\",\"value\":10}," +
+                        "\"string.property\":{\"type\":\"String\",\"value\":\"initial value\"}}",
+                new String(persistence.getBytes()));
+
+        final UserProperties reloaded = UserProperties.builder().persistence(persistence).build();
+        assertEquals(2.5, reloaded.getDoubleProperty("double.property"), 0.0);
+        assertEquals(10, reloaded.getIntProperty("int.property"));
+    }
+}
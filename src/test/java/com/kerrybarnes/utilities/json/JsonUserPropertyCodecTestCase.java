@@ -0,0 +1,77 @@
+package com.kerrybarnes.utilities.json;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kerrybarnes.utilities.UserProperty;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonUserPropertyCodecTestCase {
+    private static final String NATIVE_VALUES = "{\n" +
+            "  \"int.property\" : { \"value\" : 10, \"type\" : \"Integer\" },\n" +
+            "  \"double.property\" : { \"type\" : \"Double\", \"value\" : 100.5, \"comment\" : { \"ignored\" : [1, 2] } },\n" +
+            "  \"whole.double\" : { \"type\" : \"Double\", \"value\" : 3 },\n" +
+            "  \"string.property\" : { \"key\" : \"string.property\", \"type\" : \"String\", \"value\" : \"text\" }\n" +
+            "}";
+
+    @Test
+    public void testReadsNativeNumbersWithoutKeys() throws Exception {
+        final Map<String, UserProperty> properties = new JsonUserPropertyCodec()
+                .read(new ByteArrayInputStream(NATIVE_VALUES.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(4, properties.size());
+        assertTrue(properties.get("int.property") instanceof UserProperty.OfInt);
+        assertEquals("int.property", properties.get("int.property").getName());
+        assertEquals(10, properties.get("int.property").getValue());
+        assertTrue(properties.get("double.property") instanceof UserProperty.OfDouble);
+        assertEquals(100.5, properties.get("double.property").getValue());
+        assertEquals(3.0, properties.get("whole.double").getValue());
+        assertEquals("text", properties.get("string.property").getValue());
+    }
+
+    @Test
+    public void testWithoutKeyRoundTrip() throws Exception {
+        final JsonUserPropertyCodec codec = new JsonUserPropertyCodec(new ObjectMapper(), false);
+        final Map<String, UserProperty> properties = new JsonUserPropertyCodec()
+                .read(new ByteArrayInputStream(NATIVE_VALUES.getBytes(StandardCharsets.UTF_8)));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(out, properties);
+        final String json = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertFalse(json.contains("\"key\""));
+
+        final Map<String, UserProperty> reloaded = codec.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(properties.keySet(), reloaded.keySet());
+        for (Map.Entry<String, UserProperty> entry : properties.entrySet()) {
+            assertEquals(entry.getKey(), reloaded.get(entry.getKey()).getName());
+            assertEquals(entry.getValue().getValue(), reloaded.get(entry.getKey()).getValue());
+        }
+    }
+
+    private static void assertMalformed(final String json, final String message) throws Exception {
+        try {
+            new JsonUserPropertyCodec().read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+            fail("Expected a JsonParseException reading " + json);
+        } catch (JsonParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void testMalformedProperties() throws Exception {
+        assertMalformed("{ \"no.type\" : { \"value\" : 1 } }", "no.type");
+        assertMalformed("{ \"bad.type\" : { \"type\" : \"Short\", \"value\" : 1 } }", "bad.type");
+        assertMalformed("{ \"big.int\" : { \"type\" : \"Integer\", \"value\" : 4294967296 } }", "big.int");
+        assertMalformed("{ \"no.value\" : { \"type\" : \"Double\" } }", "no.value");
+        assertMalformed("{ \"null.value\" : { \"type\" : \"Long\", \"value\" : null } }", "null.value");
+    }
+}
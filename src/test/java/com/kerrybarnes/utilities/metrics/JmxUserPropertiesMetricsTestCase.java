@@ -0,0 +1,79 @@
+package com.kerrybarnes.utilities.metrics;
+
+import com.kerrybarnes.utilities.UserProperties;
+import com.kerrybarnes.utilities.persistence.UserPropertiesInitialLoader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JmxUserPropertiesMetricsTestCase {
+    private JmxUserPropertiesMetrics metrics;
+    private UserPropertiesInitialLoader persistence;
+    private UserProperties props;
+
+    @Before
+    public void setupTest() {
+        metrics = new JmxUserPropertiesMetrics().register("test");
+        persistence = new UserPropertiesInitialLoader();
+        props = UserProperties.builder().persistence(persistence).metrics(metrics).build();
+    }
+
+    @After
+    public void reset() {
+        metrics.unregister();
+    }
+
+    @Test
+    public void testCounters() throws Exception {
+        assertEquals(3, metrics.getLoadedProperties());
+
+        assertEquals(10, props.getIntProperty("int.property"));
+        props.getIntProperty("missing.int", 5);
+        props.getDoubleProperty("double.property");
+        props.setProperty("string.property", "changed");
+        props.setIntProperty("int.property", 11);
+
+        assertEquals(2, metrics.getIntReads());
+        assertEquals(1, metrics.getDoubleReads());
+        assertEquals(1, metrics.getStringWrites());
+        assertEquals(1, metrics.getIntWrites());
+        assertEquals(1, metrics.getDefaultsCreated());
+        assertTrue(metrics.getFlushes() > 0);
+        assertTrue(metrics.getChanges() >= metrics.getFlushes());
+        assertEquals(persistence.getBytes().length, metrics.getLastBytesWritten());
+        assertEquals(metrics.getFlushes(), metrics.getSerializeHistogram().getCount());
+        assertEquals(metrics.getFlushes(), metrics.getStreamCloseHistogram().getCount());
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        props.setIntProperty("int.property", 11);
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertTrue(server.isRegistered(metrics.getObjectName()));
+        assertEquals(metrics.getFlushes(), server.getAttribute(metrics.getObjectName(), "Flushes"));
+        assertEquals(1L, server.getAttribute(metrics.getObjectName(), "IntWrites"));
+
+        server.invoke(metrics.getObjectName(), "reset", null, null);
+        assertEquals(0L, metrics.getIntWrites());
+    }
+
+    @Test
+    public void testHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50500, histogram.getMean());
+        assertEquals(100000, histogram.getMax());
+        assertTrue(histogram.getPercentile(50) >= 50000 && histogram.getPercentile(50) < 100000);
+        assertEquals(100000, histogram.getPercentile(99));
+    }
+}
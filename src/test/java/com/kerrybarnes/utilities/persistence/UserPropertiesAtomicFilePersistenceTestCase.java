@@ -0,0 +1,86 @@
+package com.kerrybarnes.utilities.persistence;
+
+import com.kerrybarnes.utilities.UserProperties;
+import com.kerrybarnes.utilities.UserProperty;
+import com.kerrybarnes.utilities.UserPropertyCodec;
+import com.kerrybarnes.utilities.json.JsonUserPropertyCodec;
+import com.kerrybarnes.utilities.persistence.AtomicFileOutputStream.Durability;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class UserPropertiesAtomicFilePersistenceTestCase {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setupTest() throws Exception {
+        file = folder.getRoot().toPath().resolve("test.properties");
+    }
+
+    @Test
+    public void testWriteAndReload() throws Exception {
+        for (Durability durability : Durability.values()) {
+            final UserProperties props = UserProperties.builder()
+                    .persistence(new UserPropertiesAtomicFilePersistence(file, durability))
+                    .build();
+            props.setProperty("atomic.string", durability.name());
+            props.setIntProperty("atomic.int", durability.ordinal());
+
+            final UserProperties reloaded = UserProperties.builder()
+                    .persistence(new UserPropertiesAtomicFilePersistence(file, durability))
+                    .build();
+            assertEquals(durability.name(), reloaded.getProperty("atomic.string"));
+            assertEquals(durability.ordinal(), reloaded.getIntProperty("atomic.int"));
+            assertEquals(1, Files.list(folder.getRoot().toPath()).count());
+        }
+    }
+
+    @Test
+    public void testFailedWriteKeepsPreviousFile() throws Exception {
+        final FailingCodec codec = new FailingCodec();
+        final UserProperties props = UserProperties.builder()
+                .persistence(new UserPropertiesAtomicFilePersistence(file))
+                .codec(codec)
+                .build();
+        props.setProperty("atomic.string", "kept");
+        final byte[] before = Files.readAllBytes(file);
+
+        codec.fail = true;
+        props.setProperty("atomic.string", "lost");
+        assertArrayEquals(before, Files.readAllBytes(file));
+        assertEquals(1, Files.list(folder.getRoot().toPath()).count());
+    }
+
+    private static class FailingCodec implements UserPropertyCodec {
+        private final UserPropertyCodec delegate = new JsonUserPropertyCodec();
+        private boolean fail = false;
+
+        @Override
+        public Map<String, UserProperty> read(InputStream in) throws IOException {
+            return delegate.read(in);
+        }
+
+        @Override
+        public void write(OutputStream out, Map<String, UserProperty> properties) throws IOException {
+            if (fail) {
+                out.write("{ \"partial".getBytes());
+                throw new IOException("simulated failure");
+            }
+            delegate.write(out, properties);
+        }
+    }
+}
@@ -10,6 +10,7 @@ import java.io.OutputStream;
 public class UserPropertiesByteArrayPersistence implements UserPropertyPersistence {
 
     private ByteArrayOutputStream baos;
+    private int writeCount = 0;
 
     public UserPropertiesByteArrayPersistence() {
 
@@ -22,6 +23,7 @@ public class UserPropertiesByteArrayPersistence implements UserPropertyPersisten
 
     @Override
     public OutputStream getOutputStream() {
+        writeCount++;
         baos = new ByteArrayOutputStream();
         return baos;
     }
@@ -39,7 +41,12 @@ public class UserPropertiesByteArrayPersistence implements UserPropertyPersisten
         return baos.toByteArray();
     }
 
+    public int getWriteCount() {
+        return writeCount;
+    }
+
     public void reset() {
         baos = null;
+        writeCount = 0;
     }
 }
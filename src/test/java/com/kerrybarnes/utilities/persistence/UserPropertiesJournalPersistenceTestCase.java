@@ -0,0 +1,126 @@
+package com.kerrybarnes.utilities.persistence;
+
+import com.kerrybarnes.utilities.UserProperties;
+import com.kerrybarnes.utilities.UserPropertyFactory;
+import com.kerrybarnes.utilities.json.JsonUserPropertyCodec;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UserPropertiesJournalPersistenceTestCase {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path snapshot;
+
+    @Before
+    public void setupTest() throws Exception {
+        snapshot = folder.getRoot().toPath().resolve("test.properties");
+    }
+
+    private UserProperties open(final long minCompactionBytes) {
+        return UserProperties.builder()
+                .persistence(new UserPropertiesJournalPersistence(snapshot, minCompactionBytes))
+                .build();
+    }
+
+    @Test
+    public void testChangesAreAppended() throws Exception {
+        final UserProperties props = open(Long.MAX_VALUE);
+        final UserPropertiesJournalPersistence persistence = new UserPropertiesJournalPersistence(snapshot);
+
+        props.setProperty("journal.string", "first");
+        final long firstRecord = Files.size(persistence.getJournalPath());
+        props.setIntProperty("journal.int", 42);
+        props.setDoubleProperty("journal.dbl", 4.2);
+        final long threeRecords = Files.size(persistence.getJournalPath());
+
+        // each change appends a record of about the same size rather than rewriting the store
+        for (int i = 0; i < 100; i++) {
+            props.setIntProperty("journal.int", i);
+        }
+        final long growth = (Files.size(persistence.getJournalPath()) - threeRecords) / 100;
+        assertTrue(growth < firstRecord * 2);
+        assertFalse(Files.exists(snapshot));
+
+        final UserProperties reloaded = open(Long.MAX_VALUE);
+        assertEquals("first", reloaded.getProperty("journal.string"));
+        assertEquals(99, reloaded.getIntProperty("journal.int"));
+        assertEquals(4.2, reloaded.getDoubleProperty("journal.dbl"), .01);
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        final UserProperties props = open(1024);
+        final UserPropertiesJournalPersistence persistence = new UserPropertiesJournalPersistence(snapshot);
+
+        for (int i = 0; i < 50; i++) {
+            props.setIntProperty("compact." + (i % 5), i);
+        }
+        assertTrue(Files.exists(snapshot));
+        assertTrue(Files.size(persistence.getJournalPath()) < 1024 + Files.size(snapshot));
+
+        final UserProperties reloaded = open(1024);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(45 + i, reloaded.getIntProperty("compact." + i));
+        }
+        assertEquals(5, reloaded.propertyNames().size());
+    }
+
+    @Test
+    public void testTornRecordIsDiscarded() throws Exception {
+        final UserProperties props = open(Long.MAX_VALUE);
+        final UserPropertiesJournalPersistence persistence = new UserPropertiesJournalPersistence(snapshot);
+
+        props.setProperty("torn.value", "complete");
+        final long complete = Files.size(persistence.getJournalPath());
+        props.setProperty("torn.value", "torn");
+        try (FileChannel channel = FileChannel.open(persistence.getJournalPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(complete + (channel.size() - complete) / 2);
+        }
+
+        final UserProperties reloaded = open(Long.MAX_VALUE);
+        assertEquals("complete", reloaded.getProperty("torn.value"));
+        assertEquals(complete, Files.size(persistence.getJournalPath()));
+
+        reloaded.setProperty("torn.value", "appended");
+        assertEquals("appended", open(Long.MAX_VALUE).getProperty("torn.value"));
+    }
+
+    @Test
+    public void testStaleJournalIsIgnored() throws Exception {
+        final JsonUserPropertyCodec codec = new JsonUserPropertyCodec();
+        final UserPropertiesJournalPersistence persistence = new UserPropertiesJournalPersistence(snapshot);
+        persistence.replay(codec);
+        persistence.append(Collections.singletonList(UserPropertyFactory.createString("stale.value", "old")), codec);
+        final Path saved = folder.getRoot().toPath().resolve("saved.journal");
+        Files.copy(persistence.getJournalPath(), saved);
+
+        // a crash after the snapshot is written but before the journal is deleted
+        persistence.snapshot(Collections.singletonMap("fresh.value",
+                UserPropertyFactory.createString("fresh.value", "new")), codec);
+        assertFalse(Files.exists(persistence.getJournalPath()));
+        Files.copy(saved, persistence.getJournalPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        final UserPropertiesJournalPersistence reopened = new UserPropertiesJournalPersistence(snapshot);
+        final Map<?, ?> properties = reopened.replay(codec);
+        assertEquals(Collections.singleton("fresh.value"), properties.keySet());
+        assertFalse(Files.exists(reopened.getJournalPath()));
+
+        reopened.append(Collections.singletonList(UserPropertyFactory.createString("fresh.value", "appended")), codec);
+        assertEquals("appended", open(Long.MAX_VALUE).getProperty("fresh.value"));
+    }
+}
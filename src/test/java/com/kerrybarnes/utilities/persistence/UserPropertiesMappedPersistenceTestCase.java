@@ -0,0 +1,188 @@
+package com.kerrybarnes.utilities.persistence;
+
+import com.kerrybarnes.utilities.UserProperties;
+import com.kerrybarnes.utilities.UserProperty;
+import com.kerrybarnes.utilities.UserPropertyFactory;
+import com.kerrybarnes.utilities.binary.BinaryUserPropertyCodec;
+import com.kerrybarnes.utilities.json.JsonUserPropertyCodec;
+import com.kerrybarnes.utilities.persistence.AtomicFileOutputStream.Durability;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UserPropertiesMappedPersistenceTestCase {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setupTest() throws Exception {
+        file = folder.getRoot().toPath().resolve("test.properties.bin");
+    }
+
+    private UserProperties open(final UserPropertiesMappedPersistence persistence) {
+        return UserProperties.builder().persistence(persistence).build();
+    }
+
+    @Test
+    public void testWriteAndReload() throws Exception {
+        final UserProperties props = open(new UserPropertiesMappedPersistence(file));
+        props.setProperty("mapped.string", "first");
+        props.setIntProperty("mapped.int", 42);
+        props.setDoubleProperty("mapped.dbl", 4.2);
+        props.setProperty("mapped.unicode", "\u00e9t\u00e9");
+
+        final UserProperties reloaded = open(new UserPropertiesMappedPersistence(file));
+        assertEquals("first", reloaded.getProperty("mapped.string"));
+        assertEquals(42, reloaded.getIntProperty("mapped.int"));
+        assertEquals(4.2, reloaded.getDoubleProperty("mapped.dbl"), .01);
+        assertEquals("\u00e9t\u00e9", reloaded.getProperty("mapped.unicode"));
+    }
+
+    @Test
+    public void testNumericUpdatesAreInPlace() throws Exception {
+        final UserPropertiesMappedPersistence persistence = new UserPropertiesMappedPersistence(file);
+        final UserProperties props = open(persistence);
+        props.setIntProperty("mapped.int", 0);
+        props.setDoubleProperty("mapped.dbl", 0.0);
+        props.setProperty("mapped.string", "a longer value");
+        final int used = persistence.usedBytes();
+
+        for (int i = 1; i <= 1000; i++) {
+            props.setIntProperty("mapped.int", i);
+            props.setDoubleProperty("mapped.dbl", i / 2.0);
+            props.setProperty("mapped.string", "short " + (i % 10));
+        }
+        assertEquals(used, persistence.usedBytes());
+        assertEquals(0, persistence.garbageBytes());
+
+        final UserProperties reloaded = open(new UserPropertiesMappedPersistence(file));
+        assertEquals(1000, reloaded.getIntProperty("mapped.int"));
+        assertEquals(500.0, reloaded.getDoubleProperty("mapped.dbl"), .01);
+        assertEquals("short 0", reloaded.getProperty("mapped.string"));
+    }
+
+    @Test
+    public void testGrowingStringsAreCompacted() throws Exception {
+        final UserPropertiesMappedPersistence persistence =
+                new UserPropertiesMappedPersistence(file, Durability.DATA, 4096);
+        final UserProperties props = open(persistence);
+        props.setIntProperty("mapped.int", 7);
+
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            value.append('x');
+            props.setProperty("mapped.growing", value.toString());
+        }
+        assertTrue(persistence.garbageBytes() < 4096 + persistence.usedBytes() / 2);
+        assertTrue(persistence.usedBytes() < 3 * 4096);
+
+        final UserProperties reloaded = open(new UserPropertiesMappedPersistence(file));
+        assertEquals(value.toString(), reloaded.getProperty("mapped.growing"));
+        assertEquals(7, reloaded.getIntProperty("mapped.int"));
+        assertEquals(2, reloaded.propertyNames().size());
+    }
+
+    @Test
+    public void testStreamsUseTheCodec() throws Exception {
+        final UserPropertiesMappedPersistence persistence =
+                new UserPropertiesMappedPersistence(file, Durability.NONE, 4096, new BinaryUserPropertyCodec());
+        assertFalse(persistence.exists());
+
+        final Map<String, UserProperty> properties = new TreeMap<>();
+        properties.put("stream.string", UserPropertyFactory.createString("stream.string", "streamed"));
+        properties.put("stream.int", UserPropertyFactory.createInt("stream.int", 12));
+        try (OutputStream out = persistence.getOutputStream()) {
+            new JsonUserPropertyCodec().write(out, properties);
+        }
+
+        final UserProperties props = open(new UserPropertiesMappedPersistence(file));
+        assertEquals("streamed", props.getProperty("stream.string"));
+        assertEquals(12, props.getIntProperty("stream.int"));
+        props.setIntProperty("stream.int", 13);
+
+        final Map<String, UserProperty> read;
+        try (InputStream in = persistence.getInputStream()) {
+            read = new BinaryUserPropertyCodec().read(in);
+        }
+        assertEquals(2, read.size());
+        assertEquals("streamed", read.get("stream.string").getValue());
+        assertEquals(13, read.get("stream.int").getValue());
+    }
+
+    @Test
+    public void testLazyValuesSurviveCompaction() throws Exception {
+        final UserProperties props = open(new UserPropertiesMappedPersistence(file));
+        for (int i = 0; i < 100; i++) {
+            props.setIntProperty("mapped.int." + i, i);
+        }
+
+        final UserPropertiesMappedPersistence persistence =
+                new UserPropertiesMappedPersistence(file, Durability.NONE, 1024);
+        final UserProperties lazy = UserProperties.builder().persistence(persistence).lazy(true).build();
+        assertEquals(100, lazy.propertyNames().size());
+        assertEquals(5, lazy.getIntProperty("mapped.int.5"));
+
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            value.append('x');
+            lazy.setProperty("mapped.growing", value.toString());
+        }
+        assertTrue(persistence.garbageBytes() < persistence.usedBytes());
+        assertEquals(99, lazy.getIntProperty("mapped.int.99"));
+
+        final UserProperties reloaded = open(new UserPropertiesMappedPersistence(file));
+        assertEquals(101, reloaded.propertyNames().size());
+        assertEquals(value.toString(), reloaded.getProperty("mapped.growing"));
+    }
+
+    /**
+     * Writes one String property, the entry is at offset 16 with its slot at 21, followed by the string
+     * record at 29 with its capacity at 30, then overwrites an int and expects the load to fail
+     */
+    private void assertCorrupt(final int offset, final int value) throws Exception {
+        Files.deleteIfExists(file);
+        final UserProperties props = open(new UserPropertiesMappedPersistence(file));
+        props.setProperty("k", "value");
+
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(offset);
+            raf.writeInt(value);
+        }
+
+        try {
+            new UserPropertiesMappedPersistence(file).replay(null);
+            fail(String.format("Expected an IOException with %d at offset %d", value, offset));
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(file.toString()));
+        }
+    }
+
+    @Test
+    public void testCorruptFilesAreRejected() throws Exception {
+        assertCorrupt(8, Integer.MAX_VALUE);
+        assertCorrupt(8, 4);
+        assertCorrupt(12, -1);
+        assertCorrupt(30, 1 << 30);
+        assertCorrupt(30, -2);
+        assertCorrupt(21, 1 << 20);
+        assertCorrupt(21, 16);
+        assertCorrupt(25, 6);
+    }
+}
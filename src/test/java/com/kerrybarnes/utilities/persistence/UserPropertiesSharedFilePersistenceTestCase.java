@@ -0,0 +1,133 @@
+package com.kerrybarnes.utilities.persistence;
+
+import com.kerrybarnes.utilities.UserProperties;
+import com.kerrybarnes.utilities.UserProperty;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UserPropertiesSharedFilePersistenceTestCase {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setupTest() throws Exception {
+        file = folder.getRoot().toPath().resolve("test.properties");
+    }
+
+    private UserProperties create() {
+        return UserProperties.builder()
+                .persistence(new UserPropertiesSharedFilePersistence(file))
+                .build();
+    }
+
+    @Test
+    public void testWritesMergeOtherChanges() throws Exception {
+        final UserProperties first = create();
+        final UserProperties second = create();
+
+        first.setProperty("shared.first", "one");
+        second.setProperty("shared.second", "two");
+        first.setIntProperty("shared.int", 1);
+
+        final UserProperties reloaded = create();
+        assertEquals("one", reloaded.getProperty("shared.first"));
+        assertEquals("two", reloaded.getProperty("shared.second"));
+        assertEquals(1, reloaded.getIntProperty("shared.int"));
+    }
+
+    @Test
+    public void testRefreshNotifiesListeners() throws Exception {
+        final UserProperties first = create();
+        first.setIntProperty("shared.int", 1);
+        first.setProperty("shared.string", "before");
+        final UserProperties second = create();
+
+        final UserProperty<Number> intProperty = second.property("shared.int", Number.class);
+        final AtomicInteger notified = new AtomicInteger();
+        intProperty.addListener(property -> notified.incrementAndGet());
+        assertFalse(second.refresh());
+
+        first.setIntProperty("shared.int", 2);
+        first.setProperty("shared.added", "new");
+        assertTrue(second.refresh());
+        assertEquals(2, intProperty.getValue().intValue());
+        assertEquals(1, notified.get());
+        assertEquals("before", second.getProperty("shared.string"));
+        assertEquals("new", second.getProperty("shared.added"));
+        assertFalse(second.refresh());
+
+        second.setIntProperty("shared.int", 3);
+        assertFalse(second.refresh());
+        assertTrue(first.refresh());
+        assertEquals(3, first.getIntProperty("shared.int"));
+    }
+
+    @Test
+    public void testLocalChangeKept() throws Exception {
+        final UserProperties first = create();
+        final UserProperties second = UserProperties.builder()
+                .persistence(new UserPropertiesSharedFilePersistence(file))
+                .writeBehind(1, 1, TimeUnit.HOURS)
+                .build();
+
+        second.setProperty("shared.string", "second");
+        first.setProperty("shared.string", "first");
+        first.setProperty("shared.other", "first");
+        assertTrue(second.refresh());
+        assertEquals("second", second.getProperty("shared.string"));
+        assertEquals("first", second.getProperty("shared.other"));
+
+        second.flush();
+        assertTrue(first.refresh());
+        assertEquals("second", first.getProperty("shared.string"));
+        second.shutdown();
+    }
+
+    @Test
+    public void testLazyRefresh() throws Exception {
+        final UserProperties first = create();
+        first.setProperty("shared.live", "before");
+        first.setProperty("shared.unused", "before");
+        final UserProperties second = UserProperties.builder()
+                .persistence(new UserPropertiesSharedFilePersistence(file))
+                .lazy(true)
+                .build();
+        assertEquals("before", second.getProperty("shared.live"));
+
+        first.setProperty("shared.live", "after");
+        first.setProperty("shared.unused", "after");
+        assertTrue(second.refresh());
+        assertEquals("after", second.getProperty("shared.live"));
+        assertEquals("after", second.getProperty("shared.unused"));
+    }
+
+    @Test
+    public void testPolling() throws Exception {
+        final UserProperties first = create();
+        first.setProperty("shared.string", "before");
+        final UserProperties second = UserProperties.builder()
+                .persistence(new UserPropertiesSharedFilePersistence(file))
+                .refresh(10, TimeUnit.MILLISECONDS)
+                .build();
+
+        final CountDownLatch changed = new CountDownLatch(1);
+        second.property("shared.string", String.class).addListener(property -> changed.countDown());
+        first.setProperty("shared.string", "after");
+        assertTrue(changed.await(10, TimeUnit.SECONDS));
+        assertEquals("after", second.getProperty("shared.string"));
+        second.shutdown();
+    }
+}